@@ -30,7 +30,10 @@ import org.apache.reef.driver.context.ActiveContext;
 import org.apache.reef.driver.task.TaskConfiguration;
 import org.apache.reef.io.network.group.api.driver.CommunicationGroupDriver;
 import org.apache.reef.io.network.group.impl.config.BroadcastOperatorSpec;
+import org.apache.reef.io.network.group.impl.config.GatherOperatorSpec;
 import org.apache.reef.io.network.group.impl.config.ReduceOperatorSpec;
+import org.apache.reef.io.network.group.impl.config.ScatterOperatorSpec;
+import org.apache.reef.io.network.group.impl.driver.TreeTopology;
 import org.apache.reef.io.serialization.SerializableCodec;
 import org.apache.reef.task.Task;
 import org.apache.reef.tang.Configuration;
@@ -43,6 +46,14 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Task group of one master and one worker per data partition that communicate through
+ * broadcast (from the master) and reduce (to the master) operators.
+ * With the tree topology (-comm_fanout > 0), the tasks form a tree with the master at the root:
+ * each task reduces the data of its children with its own before sending it up, and forwards
+ * the broadcast data to its children. Then each task, including the master, sends and receives
+ * at most fan-out + 1 messages per operation, no matter how many partitions there are.
+ */
 @DriverSide
 public final class BroadcastReduceTaskGroup implements TaskGroup {
 
@@ -58,13 +69,24 @@ public final class BroadcastReduceTaskGroup implements TaskGroup {
   private final CommunicationGroupDriver commGroup;
 
   public BroadcastReduceTaskGroup(final DriverEnvironment env, final TaskGroupDescriptor tg) {
+    this(env, tg, false);
+  }
+
+  /**
+   * @param scatterGather if true, also add the scatter and gather operators of the task group.
+   */
+  public BroadcastReduceTaskGroup(final DriverEnvironment env, final TaskGroupDescriptor tg,
+                                  final boolean scatterGather) {
 
     this.env = env;
     this.tg = tg;
 
     final int numTasks = this.env.numPartitions + 1;
 
-    this.commGroup = this.env.groupCommDriver.newCommunicationGroup(tg.getCommGroupIdClass(), numTasks);
+    this.commGroup = this.env.fanOut > 0
+        ? this.env.groupCommDriver.newCommunicationGroup(
+            tg.getCommGroupIdClass(), TreeTopology.class, numTasks, this.env.fanOut)
+        : this.env.groupCommDriver.newCommunicationGroup(tg.getCommGroupIdClass(), numTasks);
 
     this.commGroup
         .addBroadcast(tg.getBroadcastIdClass(),
@@ -77,8 +99,24 @@ public final class BroadcastReduceTaskGroup implements TaskGroup {
                 .setReceiverId(tg.getMasterTaskId())
                 .setDataCodecClass(SerializableCodec.class)
                 .setReduceFunctionClass(tg.getReducerClass())
-                .build())
-        .finalise();
+                .build());
+
+    if (scatterGather) {
+      assert(tg.getScatterIdClass() != null && tg.getGatherIdClass() != null);
+      this.commGroup
+          .addScatter(tg.getScatterIdClass(),
+              ScatterOperatorSpec.newBuilder()
+                  .setSenderId(tg.getMasterTaskId())
+                  .setDataCodecClass(SerializableCodec.class)
+                  .build())
+          .addGather(tg.getGatherIdClass(),
+              GatherOperatorSpec.newBuilder()
+                  .setReceiverId(tg.getMasterTaskId())
+                  .setDataCodecClass(SerializableCodec.class)
+                  .build());
+    }
+
+    this.commGroup.finalise();
 
     this.workerContexts = Collections.synchronizedList(new ArrayList<ActiveContext>(numTasks));
     this.numContextsLeft = new AtomicInteger(numTasks);
@@ -27,7 +27,12 @@ import com.microsoft.canberra.tf.task.als.AlsTaskGroupDescriptor;
 import com.microsoft.canberra.tf.task.m1.M1TaskGroupDescriptor;
 import com.microsoft.canberra.tf.task.m3.M3TaskGroupDescriptor;
 import com.microsoft.canberra.tf.task.unwhiten.UnwhitenTaskGroupDescriptor;
+import com.microsoft.canberra.tf.task.vocab.VocabTaskGroupDescriptor;
+import com.microsoft.canberra.tf.task.whiten.KrylovTaskGroupDescriptor;
+import com.microsoft.canberra.tf.task.whiten.SketchTaskGroupDescriptor;
 import com.microsoft.canberra.tf.task.whiten.WhitenTaskGroupDescriptor;
+import com.microsoft.canberra.tf.taskgroup.TaskGroup;
+import com.microsoft.canberra.tf.taskgroup.TaskGroupDescriptor;
 import com.microsoft.canberra.tf.taskgroup.TaskGroupSequence;
 import org.apache.reef.annotations.audience.DriverSide;
 import org.apache.reef.driver.context.ActiveContext;
@@ -39,6 +44,8 @@ import org.apache.reef.tang.annotations.Unit;
 import org.apache.reef.wake.EventHandler;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -54,10 +61,31 @@ public final class Driver {
   @Inject
   public Driver(final DataLoadingService dataLoadingService,
                 final GroupCommDriver groupCommDriver,
+                final @Parameter(Launch.CorpusStorage.class) String corpusStorage,
+                final @Parameter(Launch.SpillDir.class) String spillDir,
+                final @Parameter(Launch.Streaming.class) boolean streaming,
+                final @Parameter(Launch.WorkerThreads.class) int workerThreads,
+                final @Parameter(Launch.WhitenKernel.class) String whitenKernel,
+                final @Parameter(Launch.CommFanOut.class) int commFanOut,
                 final @Parameter(Launch.Output.class) String outputPath,
+                final @Parameter(Launch.OutputFormat.class) String outputFormat,
+                final @Parameter(Launch.OutputDataType.class) String outputDataType,
+                final @Parameter(Launch.OutputDeflate.class) boolean outputDeflate,
                 final @Parameter(Launch.DimD.class) int dimD,
+                final @Parameter(Launch.Vocab.class) boolean vocab,
+                final @Parameter(Launch.MinDf.class) int minDf,
+                final @Parameter(Launch.MaxDf.class) double maxDf,
                 final @Parameter(Launch.DimK.class) int dimK,
                 final @Parameter(Launch.DimKPrime.class) int dimKprime,
+                final @Parameter(Launch.WhitenMethod.class) String whitenMethod,
+                final @Parameter(Launch.SketchSize.class) int sketchSize,
+                final @Parameter(Launch.WhitenIterations.class) int whitenIterations,
+                final @Parameter(Launch.WhitenTolerance.class) double whitenTolerance,
+                final @Parameter(Launch.OmegaType.class) String omegaType,
+                final @Parameter(Launch.LocalVocab.class) boolean localVocab,
+                final @Parameter(Launch.WhitenDataType.class) String whitenDataType,
+                final @Parameter(Launch.FuseM1.class) boolean fuseM1,
+                final @Parameter(Launch.WcStorage.class) String wcStorage,
                 final @Parameter(Launch.Alpha0.class) double alpha0,
                 final @Parameter(Launch.Rho.class) double rho,
                 final @Parameter(Launch.Tolerance.class) Double tolerance,
@@ -66,17 +94,46 @@ public final class Driver {
     this.dataLoadingService = dataLoadingService;
 
     final DriverEnvironment env = new DriverEnvironment(
-        groupCommDriver, dataLoadingService.getNumberOfPartitions());
-
-    this.taskGroups = new TaskGroupSequence(
-        new SharedContextTaskGroup(env, "TF-Environment-",
-            outputPath, dimD, dimK, dimKprime, alpha0, rho, tolerance, maxIterations),
-        new GroupCommTaskGroup(env),
-        new BroadcastReduceTaskGroup(env, WhitenTaskGroupDescriptor.INSTANCE),
-        new BroadcastReduceTaskGroup(env, M1TaskGroupDescriptor.INSTANCE),
-        new BroadcastReduceTaskGroup(env, M3TaskGroupDescriptor.INSTANCE),
-        new BroadcastReduceTaskGroup(env, AlsTaskGroupDescriptor.INSTANCE),
-        new BroadcastReduceTaskGroup(env, UnwhitenTaskGroupDescriptor.INSTANCE));
+        groupCommDriver, dataLoadingService.getNumberOfPartitions(), commFanOut);
+
+    final List<TaskGroup> taskGroupList = new ArrayList<>();
+
+    taskGroupList.add(new SharedContextTaskGroup(env, "TF-Environment-",
+        corpusStorage, spillDir, streaming, workerThreads, whitenKernel,
+        outputPath, outputFormat, outputDataType, outputDeflate,
+        dimD, minDf, maxDf, dimK, dimKprime, sketchSize, whitenIterations, whitenTolerance, omegaType, localVocab,
+        whitenDataType, fuseM1, wcStorage, alpha0, rho, tolerance, maxIterations));
+    taskGroupList.add(new GroupCommTaskGroup(env));
+
+    if (vocab) {
+      taskGroupList.add(new BroadcastReduceTaskGroup(env, VocabTaskGroupDescriptor.INSTANCE));
+    }
+
+    taskGroupList.add(new BroadcastReduceTaskGroup(env, getWhitenDescriptor(whitenMethod), localVocab));
+
+    // With -fuse_m1, the whitening task group also computes M1.
+    if (!fuseM1) {
+      taskGroupList.add(new BroadcastReduceTaskGroup(env, M1TaskGroupDescriptor.INSTANCE));
+    }
+
+    taskGroupList.add(new BroadcastReduceTaskGroup(env, M3TaskGroupDescriptor.INSTANCE));
+    taskGroupList.add(new BroadcastReduceTaskGroup(env, AlsTaskGroupDescriptor.INSTANCE));
+    taskGroupList.add(new BroadcastReduceTaskGroup(env, UnwhitenTaskGroupDescriptor.INSTANCE));
+
+    this.taskGroups = new TaskGroupSequence(taskGroupList.toArray(new TaskGroup[taskGroupList.size()]));
+  }
+
+  private static TaskGroupDescriptor getWhitenDescriptor(final String method) {
+    switch (method) {
+    case "subspace":
+      return WhitenTaskGroupDescriptor.INSTANCE;
+    case "krylov":
+      return KrylovTaskGroupDescriptor.INSTANCE;
+    case "sketch":
+      return SketchTaskGroupDescriptor.INSTANCE;
+    default:
+      throw new IllegalArgumentException("Unknown whitening method: " + method);
+    }
   }
 
   public class ContextActiveHandler implements EventHandler<ActiveContext> {
@@ -32,8 +32,12 @@ public final class DriverEnvironment {
   public final GroupCommDriver groupCommDriver;
   public final int numPartitions;
 
-  public DriverEnvironment(final GroupCommDriver groupCommDriver, final int numPartitions) {
+  /** Fan-out of the tree topology of the communication groups, or 0 for the flat topology. */
+  public final int fanOut;
+
+  public DriverEnvironment(final GroupCommDriver groupCommDriver, final int numPartitions, final int fanOut) {
     this.groupCommDriver = groupCommDriver;
     this.numPartitions = numPartitions;
+    this.fanOut = fanOut;
   }
 }
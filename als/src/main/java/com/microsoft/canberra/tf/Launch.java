@@ -23,8 +23,13 @@
  */
 package com.microsoft.canberra.tf;
 
+import com.microsoft.canberra.tf.task.Document;
+import com.microsoft.canberra.tf.util.CsrCorpusInputFormat;
 import com.microsoft.canberra.tf.util.SparseVectorInputFormat;
 
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapred.InputFormat;
+
 import org.apache.reef.annotations.audience.ClientSide;
 import org.apache.reef.client.DriverConfiguration;
 import org.apache.reef.client.DriverLauncher;
@@ -61,10 +66,62 @@ public class Launch {
   public static final class Input implements Name<String> {
   }
 
+  @NamedParameter(short_name = "input_format", default_value = "text",
+      doc = "Format of the input data: text (id:frequency pairs) or csr (binary, see CsrCorpusConverter)")
+  public static final class InputFormatName implements Name<String> {
+  }
+
+  @NamedParameter(short_name = "corpus_storage", default_value = "heap",
+      doc = "How workers keep the documents: heap, compressed (varint-encoded on heap),"
+          + " or mapped (local memory-mapped files)")
+  public static final class CorpusStorage implements Name<String> {
+  }
+
+  @NamedParameter(short_name = "spill_dir", default_value = "",
+      doc = "Local directory on the workers for the mapped corpus files; default is java.io.tmpdir")
+  public static final class SpillDir implements Name<String> {
+  }
+
+  @NamedParameter(short_name = "streaming", default_value = "false",
+      doc = "Accumulate the first whitening iteration while the workers load the data")
+  public static final class Streaming implements Name<Boolean> {
+  }
+
+  @NamedParameter(short_name = "worker_threads", default_value = "1",
+      doc = "Number of threads in each worker task")
+  public static final class WorkerThreads implements Name<Integer> {
+  }
+
+  @NamedParameter(short_name = "whiten_kernel", default_value = "spmm",
+      doc = "Whitening kernel: spmm (blocked sparse-dense matrix products) or rows (one token at a time)")
+  public static final class WhitenKernel implements Name<String> {
+  }
+
+  @NamedParameter(short_name = "comm_fanout", default_value = "0",
+      doc = "Fan-out of the tree in which the tasks reduce and broadcast their data;"
+          + " 0 for the flat topology, where the master talks to every worker directly")
+  public static final class CommFanOut implements Name<Integer> {
+  }
+
   @NamedParameter(short_name = "output", doc = "Output path")
   public static final class Output implements Name<String> {
   }
 
+  @NamedParameter(short_name = "output_format", default_value = "binary",
+      doc = "Format of the output matrices: binary (see DoubleMatrixBinaryIO) or text")
+  public static final class OutputFormat implements Name<String> {
+  }
+
+  @NamedParameter(short_name = "output_dtype", default_value = "float64",
+      doc = "Binary output: element type of the matrices, float64 or float32")
+  public static final class OutputDataType implements Name<String> {
+  }
+
+  @NamedParameter(short_name = "output_deflate", default_value = "false",
+      doc = "Binary output: compress the matrices with deflate")
+  public static final class OutputDeflate implements Name<Boolean> {
+  }
+
   @NamedParameter(short_name = "partitions", doc = "Number of partitions")
   public static final class NumPartitions implements Name<Integer> {
   }
@@ -79,10 +136,28 @@ public class Launch {
   public static final class MemWorker implements Name<Integer> {
   }
 
-  @NamedParameter(short_name = "d", doc = "Vocabulary size")
+  @NamedParameter(short_name = "d", default_value = "0",
+      doc = "Vocabulary size (max. word ID + 1). Not required with -vocab")
   public static final class DimD implements Name<Integer> {
   }
 
+  @NamedParameter(short_name = "vocab", default_value = "false",
+      doc = "Run the vocabulary pass: prune words by document frequency and renumber them densely;"
+          + " word IDs must be non-negative, and less than -d if it is given;"
+          + " without -d they can be sparse, e.g. hashed, up to the max. int")
+  public static final class Vocab implements Name<Boolean> {
+  }
+
+  @NamedParameter(short_name = "min_df", default_value = "1",
+      doc = "Vocabulary pass: min. number of documents a word must appear in")
+  public static final class MinDf implements Name<Integer> {
+  }
+
+  @NamedParameter(short_name = "max_df", default_value = "1.0",
+      doc = "Vocabulary pass: max. fraction of documents a word can appear in")
+  public static final class MaxDf implements Name<Double> {
+  }
+
   @NamedParameter(short_name = "k", doc = "Final number of topics")
   public static final class DimK implements Name<Integer> {
   }
@@ -91,6 +166,59 @@ public class Launch {
   public static final class DimKPrime implements Name<Integer> {
   }
 
+  @NamedParameter(short_name = "whiten_method", default_value = "subspace",
+      doc = "Whitening method: subspace (randomized subspace iteration), krylov (block Krylov),"
+          + " or sketch (one pass with a Frequent Directions sketch of -sketch_size rows)")
+  public static final class WhitenMethod implements Name<String> {
+  }
+
+  @NamedParameter(short_name = "sketch_size", default_value = "0",
+      doc = "Number of rows of the Frequent Directions sketch of -whiten_method sketch, at least k';"
+          + " 0 for 4 * k'")
+  public static final class SketchSize implements Name<Integer> {
+  }
+
+  @NamedParameter(short_name = "whiten_iterations", default_value = "2",
+      doc = "Max. number of whitening passes over the data, at least 2")
+  public static final class WhitenIterations implements Name<Integer> {
+  }
+
+  @NamedParameter(short_name = "whiten_tolerance", default_value = "0",
+      doc = "Stop whitening when the subspace change between passes (subspace) or the eigenpair residual (krylov)"
+          + " is below that; 0 to always do all passes")
+  public static final class WhitenTolerance implements Name<Double> {
+  }
+
+  @NamedParameter(short_name = "omega_type", default_value = "gaussian",
+      doc = "Random projection for the first whitening pass: gaussian (dense), sign (sparse sign, 8 nonzeros per row),"
+          + " or countsketch (one nonzero per row)")
+  public static final class OmegaType implements Name<String> {
+  }
+
+  @NamedParameter(short_name = "local_vocab", default_value = "false",
+      doc = "Workers renumber the words of their partition densely and get only their rows of omega"
+          + " (subspace and krylov whitening; not with -streaming)")
+  public static final class LocalVocab implements Name<Boolean> {
+  }
+
+  @NamedParameter(short_name = "whiten_dtype", default_value = "float64",
+      doc = "Element type of omega in the worker memory and of omega, muX and Y in the messages"
+          + " of the subspace and krylov whitening: float64 or float32")
+  public static final class WhitenDataType implements Name<String> {
+  }
+
+  @NamedParameter(short_name = "fuse_m1", default_value = "false",
+      doc = "Workers compute wc, counts and M1 right after they receive the final omega,"
+          + " in the whitening task, instead of in a separate M1 task (subspace and krylov whitening)")
+  public static final class FuseM1 implements Name<Boolean> {
+  }
+
+  @NamedParameter(short_name = "wc_storage", default_value = "float64",
+      doc = "Storage of the whitened documents wc between M1 and M3 on the workers: float64 or float32 on the heap,"
+          + " or direct (float64 outside of the heap, see -XX:MaxDirectMemorySize)")
+  public static final class WcStorage implements Name<String> {
+  }
+
   @NamedParameter(short_name = "alpha0", doc = "Smoothing factor")
   public static final class Alpha0 implements Name<Double> {
   }
@@ -131,19 +259,56 @@ public class Launch {
     }
   }
 
+  /**
+   * @return Hadoop InputFormat class that reads the documents in the given format.
+   * @throws IllegalArgumentException if the format name is unknown.
+   */
+  private static Class<? extends InputFormat<LongWritable, Document>> getInputFormatClass(final String formatName) {
+    switch (formatName) {
+    case "text":
+      return SparseVectorInputFormat.class;
+    case "csr":
+      return CsrCorpusInputFormat.class;
+    default:
+      throw new IllegalArgumentException("Unknown input format: " + formatName);
+    }
+  }
+
   public static void main(final String[] args) {
 
     try {
 
       final Configuration commandLineConfig = new CommandLine()
           .registerShortNameOfClass(Input.class)
+          .registerShortNameOfClass(InputFormatName.class)
+          .registerShortNameOfClass(CorpusStorage.class)
+          .registerShortNameOfClass(SpillDir.class)
+          .registerShortNameOfClass(Streaming.class)
+          .registerShortNameOfClass(WorkerThreads.class)
+          .registerShortNameOfClass(WhitenKernel.class)
+          .registerShortNameOfClass(CommFanOut.class)
           .registerShortNameOfClass(Output.class)
+          .registerShortNameOfClass(OutputFormat.class)
+          .registerShortNameOfClass(OutputDataType.class)
+          .registerShortNameOfClass(OutputDeflate.class)
           .registerShortNameOfClass(NumPartitions.class)
           .registerShortNameOfClass(MemMaster.class)
           .registerShortNameOfClass(MemWorker.class)
           .registerShortNameOfClass(DimD.class)
+          .registerShortNameOfClass(Vocab.class)
+          .registerShortNameOfClass(MinDf.class)
+          .registerShortNameOfClass(MaxDf.class)
           .registerShortNameOfClass(DimK.class)
           .registerShortNameOfClass(DimKPrime.class)
+          .registerShortNameOfClass(WhitenMethod.class)
+          .registerShortNameOfClass(SketchSize.class)
+          .registerShortNameOfClass(WhitenIterations.class)
+          .registerShortNameOfClass(WhitenTolerance.class)
+          .registerShortNameOfClass(OmegaType.class)
+          .registerShortNameOfClass(LocalVocab.class)
+          .registerShortNameOfClass(WhitenDataType.class)
+          .registerShortNameOfClass(FuseM1.class)
+          .registerShortNameOfClass(WcStorage.class)
           .registerShortNameOfClass(Alpha0.class)
           .registerShortNameOfClass(Rho.class)
           .registerShortNameOfClass(Tolerance.class)
@@ -155,22 +320,68 @@ public class Launch {
       final Injector injector = Tang.Factory.getTang().newInjector(commandLineConfig);
       final boolean isLocal = injector.getNamedInstance(Local.class);
       final String inputPath = injector.getNamedInstance(Input.class);
+      final String inputFormat = injector.getNamedInstance(InputFormatName.class);
+      final String corpusStorage = injector.getNamedInstance(CorpusStorage.class);
+      final String spillDir = injector.getNamedInstance(SpillDir.class);
+      final boolean streaming = injector.getNamedInstance(Streaming.class);
+      final int workerThreads = injector.getNamedInstance(WorkerThreads.class);
+      final String whitenKernel = injector.getNamedInstance(WhitenKernel.class);
+      final int commFanOut = injector.getNamedInstance(CommFanOut.class);
       final String outputPath = injector.getNamedInstance(Output.class);
+      final String outputFormat = injector.getNamedInstance(OutputFormat.class);
+      final String outputDataType = injector.getNamedInstance(OutputDataType.class);
+      final boolean outputDeflate = injector.getNamedInstance(OutputDeflate.class);
       final int numPartitions = injector.getNamedInstance(NumPartitions.class);
       final int memMaster = injector.getNamedInstance(MemMaster.class);
       final int memWorker = injector.getNamedInstance(MemWorker.class);
       final int dimD = injector.getNamedInstance(DimD.class);
+      final boolean vocab = injector.getNamedInstance(Vocab.class);
+      final int minDf = injector.getNamedInstance(MinDf.class);
+      final double maxDf = injector.getNamedInstance(MaxDf.class);
       final int dimK = injector.getNamedInstance(DimK.class);
       final int dimKprime = injector.getNamedInstance(DimKPrime.class);
+      final String whitenMethod = injector.getNamedInstance(WhitenMethod.class);
+      final int sketchSize = injector.getNamedInstance(SketchSize.class);
+      final int whitenIterations = injector.getNamedInstance(WhitenIterations.class);
+      final double whitenTolerance = injector.getNamedInstance(WhitenTolerance.class);
+      final String omegaType = injector.getNamedInstance(OmegaType.class);
+      final boolean localVocab = injector.getNamedInstance(LocalVocab.class);
+      final String whitenDataType = injector.getNamedInstance(WhitenDataType.class);
+      final boolean fuseM1 = injector.getNamedInstance(FuseM1.class);
+      final String wcStorage = injector.getNamedInstance(WcStorage.class);
       final double alpha0 = injector.getNamedInstance(Alpha0.class);
       final double rho = injector.getNamedInstance(Rho.class);
       final double tolerance = injector.getNamedInstance(Tolerance.class);
       final int maxIterations = injector.getNamedInstance(MaxIterations.class);
 
+      if (dimD <= 0 && !vocab) {
+        throw new IllegalArgumentException("Vocabulary size -d is required unless -vocab is set");
+      }
+
+      if (whitenIterations < 2) {
+        throw new IllegalArgumentException("Whitening needs at least 2 iterations: " + whitenIterations);
+      }
+
+      if (sketchSize != 0 && sketchSize < dimKprime) {
+        throw new IllegalArgumentException("Sketch size must be 0 or at least k' = " + dimKprime + ": " + sketchSize);
+      }
+
+      if (commFanOut < 0) {
+        throw new IllegalArgumentException("Fan-out must not be negative: " + commFanOut);
+      }
+
+      if (localVocab && (streaming || whitenMethod.equals("sketch"))) {
+        throw new IllegalArgumentException("-local_vocab does not work with -streaming or -whiten_method sketch");
+      }
+
+      if (fuseM1 && whitenMethod.equals("sketch")) {
+        throw new IllegalArgumentException("-fuse_m1 does not work with -whiten_method sketch");
+      }
+
       final Configuration loaderConfig = new DataLoadingRequestBuilder()
           .setInputPath(inputPath)
           .renewFailedEvaluators(false)
-          .setInputFormatClass(SparseVectorInputFormat.class)
+          .setInputFormatClass(getInputFormatClass(inputFormat))
           .setNumberOfDesiredSplits(numPartitions)
           .loadIntoMemory(false)
           .addComputeRequest(EvaluatorRequest.newBuilder()
@@ -190,10 +401,31 @@ public class Launch {
 
       final Configuration config = Tang.Factory.getTang()
           .newConfigurationBuilder(loaderConfig, GroupCommService.getConfiguration())
+          .bindNamedParameter(CorpusStorage.class, corpusStorage)
+          .bindNamedParameter(SpillDir.class, spillDir)
+          .bindNamedParameter(Streaming.class, "" + streaming)
+          .bindNamedParameter(WorkerThreads.class, "" + workerThreads)
+          .bindNamedParameter(WhitenKernel.class, whitenKernel)
+          .bindNamedParameter(CommFanOut.class, "" + commFanOut)
           .bindNamedParameter(Output.class, outputPath)
+          .bindNamedParameter(OutputFormat.class, outputFormat)
+          .bindNamedParameter(OutputDataType.class, outputDataType)
+          .bindNamedParameter(OutputDeflate.class, "" + outputDeflate)
           .bindNamedParameter(DimD.class, "" + dimD)
+          .bindNamedParameter(Vocab.class, "" + vocab)
+          .bindNamedParameter(MinDf.class, "" + minDf)
+          .bindNamedParameter(MaxDf.class, "" + maxDf)
           .bindNamedParameter(DimK.class, "" + dimK)
           .bindNamedParameter(DimKPrime.class, "" + dimKprime)
+          .bindNamedParameter(WhitenMethod.class, whitenMethod)
+          .bindNamedParameter(SketchSize.class, "" + sketchSize)
+          .bindNamedParameter(WhitenIterations.class, "" + whitenIterations)
+          .bindNamedParameter(WhitenTolerance.class, "" + whitenTolerance)
+          .bindNamedParameter(OmegaType.class, omegaType)
+          .bindNamedParameter(LocalVocab.class, "" + localVocab)
+          .bindNamedParameter(WhitenDataType.class, whitenDataType)
+          .bindNamedParameter(FuseM1.class, "" + fuseM1)
+          .bindNamedParameter(WcStorage.class, wcStorage)
           .bindNamedParameter(Alpha0.class, "" + alpha0)
           .bindNamedParameter(Rho.class, "" + rho)
           .bindNamedParameter(Tolerance.class, "" + tolerance)
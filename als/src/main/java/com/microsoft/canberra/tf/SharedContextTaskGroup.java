@@ -25,6 +25,9 @@ package com.microsoft.canberra.tf;
 
 import com.microsoft.canberra.tf.task.TaskEnvironment;
 import com.microsoft.canberra.tf.taskgroup.TaskGroup;
+import com.microsoft.canberra.tf.util.DoubleMatrixBinaryIO;
+import com.microsoft.canberra.tf.util.DoubleMatrixIO;
+import com.microsoft.canberra.tf.util.DoubleMatrixTextIO;
 import org.apache.reef.annotations.audience.DriverSide;
 import org.apache.reef.driver.context.ActiveContext;
 import org.apache.reef.driver.context.ContextConfiguration;
@@ -48,10 +51,28 @@ public final class SharedContextTaskGroup implements TaskGroup {
 
   private final int numPartitions;
   private final String contextPrefix;
+  private final String corpusStorage;
+  private final String spillDir;
+  private final boolean streaming;
+  private final int workerThreads;
+  private final String whitenKernel;
   private final String outputPath;
+  private final Class<? extends DoubleMatrixIO> matrixIOClass;
+  private final String outputDataType;
+  private final boolean outputDeflate;
   private final int dimD;
+  private final int minDf;
+  private final double maxDf;
   private final int dimK;
   private final int dimKprime;
+  private final int sketchSize;
+  private final int whitenIterations;
+  private final double whitenTolerance;
+  private final String omegaType;
+  private final boolean localVocab;
+  private final String whitenDataType;
+  private final boolean fuseM1;
+  private final String wcStorage;
   private final double alpha0;
   private final double rho;
   private final double tolerance;
@@ -62,15 +83,38 @@ public final class SharedContextTaskGroup implements TaskGroup {
 
   public SharedContextTaskGroup(
       final DriverEnvironment env, final String contextPrefix,
-      final String outputPath, final int dimD, final int dimK, final int dimKprime,
+      final String corpusStorage, final String spillDir,
+      final boolean streaming, final int workerThreads, final String whitenKernel,
+      final String outputPath, final String outputFormat, final String outputDataType, final boolean outputDeflate,
+      final int dimD, final int minDf, final double maxDf, final int dimK, final int dimKprime,
+      final int sketchSize, final int whitenIterations, final double whitenTolerance, final String omegaType,
+      final boolean localVocab, final String whitenDataType, final boolean fuseM1, final String wcStorage,
       final double alpha0, final double rho, final double tolerance, final int maxIterations) {
 
     this.numPartitions = env.numPartitions;
     this.contextPrefix = contextPrefix;
+    this.corpusStorage = corpusStorage;
+    this.spillDir = spillDir;
+    this.streaming = streaming;
+    this.workerThreads = workerThreads;
+    this.whitenKernel = whitenKernel;
     this.outputPath = outputPath;
+    this.matrixIOClass = getMatrixIOClass(outputFormat);
+    this.outputDataType = outputDataType;
+    this.outputDeflate = outputDeflate;
     this.dimD = dimD;
+    this.minDf = minDf;
+    this.maxDf = maxDf;
     this.dimK = dimK;
     this.dimKprime = dimKprime;
+    this.sketchSize = sketchSize;
+    this.whitenIterations = whitenIterations;
+    this.whitenTolerance = whitenTolerance;
+    this.omegaType = omegaType;
+    this.localVocab = localVocab;
+    this.whitenDataType = whitenDataType;
+    this.fuseM1 = fuseM1;
+    this.wcStorage = wcStorage;
     this.alpha0 = alpha0;
     this.rho = rho;
     this.tolerance = tolerance;
@@ -113,10 +157,28 @@ public final class SharedContextTaskGroup implements TaskGroup {
         .newConfigurationBuilder(ServiceConfiguration.CONF
             .set(ServiceConfiguration.SERVICES, TaskEnvironment.class)
             .build())
+        .bindNamedParameter(Launch.CorpusStorage.class, this.corpusStorage)
+        .bindNamedParameter(Launch.SpillDir.class, this.spillDir)
+        .bindNamedParameter(Launch.Streaming.class, "" + this.streaming)
+        .bindNamedParameter(Launch.WorkerThreads.class, "" + this.workerThreads)
+        .bindNamedParameter(Launch.WhitenKernel.class, this.whitenKernel)
         .bindNamedParameter(Launch.Output.class, this.outputPath)
+        .bindImplementation(DoubleMatrixIO.class, this.matrixIOClass)
+        .bindNamedParameter(Launch.OutputDataType.class, this.outputDataType)
+        .bindNamedParameter(Launch.OutputDeflate.class, "" + this.outputDeflate)
         .bindNamedParameter(Launch.DimD.class, "" + this.dimD)
+        .bindNamedParameter(Launch.MinDf.class, "" + this.minDf)
+        .bindNamedParameter(Launch.MaxDf.class, "" + this.maxDf)
         .bindNamedParameter(Launch.DimK.class, "" + this.dimK)
         .bindNamedParameter(Launch.DimKPrime.class, "" + this.dimKprime)
+        .bindNamedParameter(Launch.SketchSize.class, "" + this.sketchSize)
+        .bindNamedParameter(Launch.WhitenIterations.class, "" + this.whitenIterations)
+        .bindNamedParameter(Launch.WhitenTolerance.class, "" + this.whitenTolerance)
+        .bindNamedParameter(Launch.OmegaType.class, this.omegaType)
+        .bindNamedParameter(Launch.LocalVocab.class, "" + this.localVocab)
+        .bindNamedParameter(Launch.WhitenDataType.class, this.whitenDataType)
+        .bindNamedParameter(Launch.FuseM1.class, "" + this.fuseM1)
+        .bindNamedParameter(Launch.WcStorage.class, this.wcStorage)
         .bindNamedParameter(StartK.class, "" + startK)
         .bindNamedParameter(EndK.class, "" + endK)
         .bindNamedParameter(Launch.Alpha0.class, "" + this.alpha0)
@@ -128,6 +190,21 @@ public final class SharedContextTaskGroup implements TaskGroup {
     context.submitContextAndService(contextConfig, serviceConfig);
   }
 
+  /**
+   * @return class that reads and writes matrices in the given output format.
+   * @throws IllegalArgumentException if the format name is unknown.
+   */
+  private static Class<? extends DoubleMatrixIO> getMatrixIOClass(final String formatName) {
+    switch (formatName) {
+    case "binary":
+      return DoubleMatrixBinaryIO.class;
+    case "text":
+      return DoubleMatrixTextIO.class;
+    default:
+      throw new IllegalArgumentException("Unknown output format: " + formatName);
+    }
+  }
+
   @Override
   public String toString() {
     return this.getClass().getSimpleName() + ":" + this.contextPrefix + "*";
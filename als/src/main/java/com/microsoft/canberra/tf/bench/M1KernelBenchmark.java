@@ -0,0 +1,183 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.bench;
+
+import com.microsoft.canberra.tf.task.Corpus;
+import com.microsoft.canberra.tf.task.WcMatrix;
+import com.microsoft.canberra.tf.task.m1.M1Accumulator;
+import com.microsoft.canberra.tf.util.TensorUtil;
+
+import org.jblas.DoubleMatrix;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Micro-benchmark of the worker side of the first moment (M1Task) on a synthetic corpus.
+ * Compares throughput (tokens/second) and allocation rate (bytes/token) of the primitive-array
+ * kernel of M1Accumulator, with each storage type of wc and on a thread pool, against the jBLAS
+ * row-based loop it replaced. Allocated bytes are measured for the current thread only,
+ * so for the thread pool run they do not include the allocations of the worker threads.
+ * Usage: M1KernelBenchmark [numDocs [tokensPerDoc [d [k [threads [rounds]]]]]]
+ */
+public final class M1KernelBenchmark {
+
+  private static final Logger LOG = Logger.getLogger(M1KernelBenchmark.class.getName());
+
+  private static final com.sun.management.ThreadMXBean THREAD_BEAN =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  /**
+   * Accumulation loop of M1Task before it was rewritten to work on primitive arrays.
+   */
+  private static double legacy(final Corpus corpus, final DoubleMatrix omega, final DoubleMatrix sigmaIn) {
+
+    final DoubleMatrix sigma = sigmaIn.dup();
+    sigma.addi(1e-6 * sigma.get(0));
+
+    final DoubleMatrix m1 = DoubleMatrix.zeros(omega.columns);
+    final DoubleMatrix wc = DoubleMatrix.zeros(corpus.size(), omega.columns);
+    final DoubleMatrix counts = DoubleMatrix.zeros(corpus.size());
+
+    int i = 0;
+    final DoubleMatrix wcRow = DoubleMatrix.zeros(omega.columns);
+    final DoubleMatrix m1Row = DoubleMatrix.zeros(omega.rows);
+
+    final Corpus.Cursor doc = corpus.cursor();
+    while (doc.next()) {
+
+      wcRow.fill(0);
+      m1Row.fill(0);
+      double totalCount = 0;
+      for (int t = 0; t < doc.size(); ++t) {
+        final int id = doc.tokenId(t);
+        final double count = doc.tokenCount(t);
+        m1Row.put(id, m1Row.get(id) + count);
+        wcRow.addi(omega.getRow(id).mul(count));
+        totalCount += count;
+      }
+
+      wcRow.divi(sigma);
+      wc.putRow(i, wcRow);
+      m1.addi(wcRow.divi(totalCount));
+      counts.put(i, totalCount);
+      ++i;
+    }
+
+    return m1.sum() + wc.sum() + counts.sum();
+  }
+
+  private static double kernel(final Corpus corpus, final DoubleMatrix omega, final DoubleMatrix sigma,
+                               final String wcStorage, final ExecutorService executor)
+      throws InterruptedException, ExecutionException {
+    final M1Accumulator acc = new M1Accumulator(omega, sigma, wcStorage);
+    final DoubleMatrix m1 = acc.addAll(corpus, executor);
+    final WcMatrix wc = acc.getWc();
+    final double[] row = new double[omega.columns];
+    double checksum = m1.sum();
+    for (int n = 0; n < wc.getRows(); ++n) {
+      wc.getRow(n, row);
+      for (final double value : row) {
+        checksum += value;
+      }
+      checksum += wc.getCount(n);
+    }
+    return checksum;
+  }
+
+  private interface Kernel {
+    double run() throws InterruptedException, ExecutionException;
+  }
+
+  private static void run(final String name, final Kernel kernel, final long numTokens, final int rounds)
+      throws InterruptedException, ExecutionException {
+
+    double checksum = kernel.run(); // warm-up
+
+    final long threadId = Thread.currentThread().getId();
+
+    long bestNanos = Long.MAX_VALUE;
+    long allocatedBytes = 0;
+    for (int i = 0; i < rounds; ++i) {
+      final long startBytes = THREAD_BEAN.getThreadAllocatedBytes(threadId);
+      final long start = System.nanoTime();
+      checksum = kernel.run();
+      bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+      allocatedBytes += THREAD_BEAN.getThreadAllocatedBytes(threadId) - startBytes;
+    }
+
+    LOG.log(Level.INFO, "{0}: {1} tokens/s, {2} bytes/token allocated (checksum {3})",
+        new Object[] { name, String.format("%.3g", numTokens * 1e9 / bestNanos),
+            String.format("%.3g", allocatedBytes / (double) rounds / numTokens), checksum });
+  }
+
+  public static void main(final String[] args) throws InterruptedException, ExecutionException {
+
+    final int numDocs = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+    final int tokensPerDoc = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+    final int dimD = args.length > 2 ? Integer.parseInt(args[2]) : 50000;
+    final int dimK = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+    final int numThreads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+    final int rounds = args.length > 5 ? Integer.parseInt(args[5]) : 5;
+
+    final Random rand = new Random(M1KernelBenchmark.class.getName().hashCode());
+
+    final Corpus corpus = WhitenKernelBenchmark.zipfCorpus(numDocs, tokensPerDoc, dimD, rand);
+    final DoubleMatrix omega = TensorUtil.gaussian(dimD, dimK, rand.nextLong());
+    final DoubleMatrix sigma = DoubleMatrix.rand(dimK).addi(1);
+
+    run("jBLAS rows", new Kernel() {
+      @Override
+      public double run() {
+        return legacy(corpus, omega, sigma);
+      }
+    }, corpus.numTokens(), rounds);
+
+    for (final String wcStorage : new String[] { "float64", "float32", "direct" }) {
+      run("primitive, wc " + wcStorage, new Kernel() {
+        @Override
+        public double run() throws InterruptedException, ExecutionException {
+          return kernel(corpus, omega, sigma, wcStorage, null);
+        }
+      }, corpus.numTokens(), rounds);
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      run("primitive, wc float64, " + numThreads + " threads", new Kernel() {
+        @Override
+        public double run() throws InterruptedException, ExecutionException {
+          return kernel(corpus, omega, sigma, "float64", executor);
+        }
+      }, corpus.numTokens(), rounds);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
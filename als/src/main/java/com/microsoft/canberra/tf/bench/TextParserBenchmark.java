@@ -0,0 +1,254 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.bench;
+
+import com.microsoft.canberra.tf.task.Document;
+import com.microsoft.canberra.tf.util.DoubleMatrixRecordReader;
+import com.microsoft.canberra.tf.util.SparseVectorRecordReader;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.RecordReader;
+import org.jblas.DoubleMatrix;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Micro-benchmark of the text corpus parsers on a synthetic in-memory corpus.
+ * Compares tokens/second of the byte-level record readers against the
+ * String.split()-based parsing they replaced.
+ * Usage: TextParserBenchmark [numDocs [tokensPerDoc [rounds]]]
+ */
+public final class TextParserBenchmark {
+
+  private static final Logger LOG = Logger.getLogger(TextParserBenchmark.class.getName());
+
+  private static final int VOCABULARY_SIZE = 100000;
+
+  /**
+   * RecordReader that replays a list of text lines held in memory.
+   */
+  private static final class InMemoryTextReader implements RecordReader<LongWritable, Text> {
+
+    private final List<Text> lines;
+    private int pos = 0;
+
+    InMemoryTextReader(final List<Text> lines) {
+      this.lines = lines;
+    }
+
+    @Override
+    public boolean next(final LongWritable key, final Text value) {
+      if (this.pos >= this.lines.size()) {
+        return false;
+      }
+      key.set(this.pos);
+      value.set(this.lines.get(this.pos++));
+      return true;
+    }
+
+    @Override
+    public LongWritable createKey() {
+      return new LongWritable();
+    }
+
+    @Override
+    public Text createValue() {
+      return new Text();
+    }
+
+    @Override
+    public long getPos() {
+      return this.pos;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public float getProgress() {
+      return this.lines.isEmpty() ? 1.0f : this.pos / (float) this.lines.size();
+    }
+  }
+
+  private static List<Text> sparseCorpus(final int numDocs, final int tokensPerDoc, final Random rand) {
+    final List<Text> lines = new ArrayList<>(numDocs);
+    final StringBuilder line = new StringBuilder();
+    for (int i = 0; i < numDocs; ++i) {
+      line.setLength(0);
+      line.append(i).append('\t').append(tokensPerDoc);
+      for (int j = 0; j < tokensPerDoc; ++j) {
+        line.append('\t').append(rand.nextInt(VOCABULARY_SIZE)).append(':').append(1 + rand.nextInt(10));
+      }
+      lines.add(new Text(line.toString()));
+    }
+    return lines;
+  }
+
+  private static List<Text> denseMatrix(final int numRows, final int numCols, final Random rand) {
+    final List<Text> lines = new ArrayList<>(numRows);
+    final StringBuilder line = new StringBuilder();
+    for (int i = 0; i < numRows; ++i) {
+      line.setLength(0);
+      line.append(i);
+      for (int j = 0; j < numCols; ++j) {
+        line.append('\t').append(String.format("%f", rand.nextGaussian()));
+      }
+      lines.add(new Text(line.toString()));
+    }
+    return lines;
+  }
+
+  /**
+   * Parsing code of SparseVectorRecordReader before it was rewritten to scan bytes.
+   */
+  private static double legacySparse(final List<Text> lines) {
+    double checksum = 0;
+    final Document data = new Document();
+    for (final Text text : lines) {
+      final String[] fields = text.toString().split("\\s+");
+      data.clearTokens(Long.parseLong(fields[0]), fields.length - 2);
+      for (int i = 2; i < fields.length; ++i) {
+        final String[] pair = fields[i].split(":", 2);
+        data.add(Integer.valueOf(pair[0]), Double.valueOf(pair[1]));
+      }
+      for (int i = 0; i < data.size(); ++i) {
+        checksum += data.tokenId(i) + data.tokenCount(i);
+      }
+    }
+    return checksum;
+  }
+
+  private static double scannerSparse(final List<Text> lines) throws IOException {
+    double checksum = 0;
+    final SparseVectorRecordReader reader = new SparseVectorRecordReader(new InMemoryTextReader(lines));
+    final LongWritable key = reader.createKey();
+    final Document data = reader.createValue();
+    while (reader.next(key, data)) {
+      for (int i = 0; i < data.size(); ++i) {
+        checksum += data.tokenId(i) + data.tokenCount(i);
+      }
+    }
+    return checksum;
+  }
+
+  /**
+   * Parsing code of DoubleMatrixRecordReader before it was rewritten to scan bytes.
+   */
+  private static double legacyDense(final List<Text> lines) {
+    double checksum = 0;
+    final DoubleMatrix matrixRow = new DoubleMatrix();
+    for (final Text text : lines) {
+      final String[] fields = text.toString().split("\\s+");
+      checksum += Integer.parseInt(fields[0]);
+      matrixRow.resize(fields.length - 1, 1);
+      for (int i = 1; i < fields.length; ++i) {
+        matrixRow.put(i - 1, Double.parseDouble(fields[i]));
+      }
+      checksum += matrixRow.sum();
+    }
+    return checksum;
+  }
+
+  private static double scannerDense(final List<Text> lines) throws IOException {
+    double checksum = 0;
+    final DoubleMatrixRecordReader reader = new DoubleMatrixRecordReader(new InMemoryTextReader(lines));
+    final IntWritable key = reader.createKey();
+    final DoubleMatrix matrixRow = reader.createValue();
+    while (reader.next(key, matrixRow)) {
+      checksum += key.get() + matrixRow.sum();
+    }
+    return checksum;
+  }
+
+  private interface Parser {
+    double parse(final List<Text> lines) throws IOException;
+  }
+
+  private static void run(final String name, final Parser parser,
+                          final List<Text> lines, final long numTokens, final int rounds) throws IOException {
+
+    double checksum = parser.parse(lines); // warm-up
+
+    long bestNanos = Long.MAX_VALUE;
+    for (int i = 0; i < rounds; ++i) {
+      final long start = System.nanoTime();
+      checksum = parser.parse(lines);
+      bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+    }
+
+    LOG.log(Level.INFO, "{0}: {1} tokens/s (checksum {2})",
+        new Object[] { name, String.format("%.3g", numTokens * 1e9 / bestNanos), checksum });
+  }
+
+  public static void main(final String[] args) throws IOException {
+
+    final int numDocs = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    final int tokensPerDoc = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+    final int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+    final Random rand = new Random(TextParserBenchmark.class.getName().hashCode());
+
+    final List<Text> sparse = sparseCorpus(numDocs, tokensPerDoc, rand);
+    final long sparseTokens = (long) numDocs * tokensPerDoc;
+
+    run("SparseVector split", new Parser() {
+      @Override
+      public double parse(final List<Text> lines) {
+        return legacySparse(lines);
+      }
+    }, sparse, sparseTokens, rounds);
+
+    run("SparseVector scanner", new Parser() {
+      @Override
+      public double parse(final List<Text> lines) throws IOException {
+        return scannerSparse(lines);
+      }
+    }, sparse, sparseTokens, rounds);
+
+    final List<Text> dense = denseMatrix(numDocs / 10, tokensPerDoc, rand);
+    final long denseTokens = (long) dense.size() * tokensPerDoc;
+
+    run("DoubleMatrix split", new Parser() {
+      @Override
+      public double parse(final List<Text> lines) {
+        return legacyDense(lines);
+      }
+    }, dense, denseTokens, rounds);
+
+    run("DoubleMatrix scanner", new Parser() {
+      @Override
+      public double parse(final List<Text> lines) throws IOException {
+        return scannerDense(lines);
+      }
+    }, dense, denseTokens, rounds);
+  }
+}
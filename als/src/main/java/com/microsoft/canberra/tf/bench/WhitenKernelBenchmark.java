@@ -0,0 +1,248 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.bench;
+
+import com.microsoft.canberra.tf.task.ArrayCorpus;
+import com.microsoft.canberra.tf.task.Corpus;
+import com.microsoft.canberra.tf.task.Document;
+import com.microsoft.canberra.tf.task.whiten.SpmmWhitenAccumulator;
+import com.microsoft.canberra.tf.task.whiten.WhitenAccumulator;
+import com.microsoft.canberra.tf.task.whiten.WhitenEngine;
+import com.microsoft.canberra.tf.util.TensorUtil;
+
+import org.jblas.DoubleMatrix;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Micro-benchmark of the worker side of the whitening iteration on a synthetic corpus.
+ * Compares throughput (tokens/second) and allocation rate (bytes/token) of the
+ * primitive-array kernels of WhitenAccumulator and of the SpMM-based SpmmWhitenAccumulator
+ * against the jBLAS row-based loop they replaced. Allocated bytes are measured for the current thread with
+ * com.sun.management.ThreadMXBean, so the benchmark needs a HotSpot-compatible JVM.
+ * Then measures the parallel scan (WhitenEngine.addAll()) of both engines on each of the
+ * given numbers of threads, and its speedup over one thread.
+ * Usage: WhitenKernelBenchmark [numDocs [tokensPerDoc [d [k' [rounds [threads]]]]]],
+ * where threads is a comma-separated list of thread counts (default: 1,4,8,16).
+ */
+public final class WhitenKernelBenchmark {
+
+  private static final Logger LOG = Logger.getLogger(WhitenKernelBenchmark.class.getName());
+
+  private static final com.sun.management.ThreadMXBean THREAD_BEAN =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  static Corpus zipfCorpus(final int numDocs, final int tokensPerDoc, final int dimD, final Random rand) {
+    final ArrayCorpus.Builder builder = new ArrayCorpus.Builder();
+    final Document doc = new Document();
+    for (int i = 0; i < numDocs; ++i) {
+      doc.clearTokens(i, tokensPerDoc);
+      for (int j = 0; j < tokensPerDoc; ++j) {
+        // Roughly Zipf-distributed word IDs, as in natural text.
+        final int id = (int) Math.min(dimD - 1, Math.exp(rand.nextDouble() * Math.log(dimD)) - 1);
+        doc.add(id, 1 + rand.nextInt(3));
+      }
+      builder.add(doc);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Accumulation loop of WhitenTask before it was rewritten to work on primitive arrays.
+   */
+  private static double legacy(final Corpus corpus, final DoubleMatrix omega) {
+
+    final DoubleMatrix muX = DoubleMatrix.zeros(omega.rows);
+    final DoubleMatrix Y = DoubleMatrix.zeros(omega.rows, omega.columns);
+    final DoubleMatrix xOmega = DoubleMatrix.zeros(omega.columns);
+
+    final Corpus.Cursor doc = corpus.cursor();
+    while (doc.next()) {
+
+      final int size = doc.size();
+
+      xOmega.fill(0);
+      double totalCount = 0;
+      for (int t = 0; t < size; ++t) {
+        final double count = doc.tokenCount(t);
+        xOmega.addi(omega.getRow(doc.tokenId(t)).mul(count));
+        totalCount += count;
+      }
+
+      if (totalCount >= 2) {
+
+        final double denom = 1.0 / (totalCount * (totalCount - 1.0));
+
+        for (int t = 0; t < size; ++t) {
+          final int id = doc.tokenId(t);
+          final double count = doc.tokenCount(t);
+          final DoubleMatrix row = Y.getRow(id);
+          row.addi(xOmega.sub(omega.getRow(id)).mul(count * denom));
+          Y.putRow(id, row);
+          muX.put(id, muX.get(id) + count / totalCount);
+        }
+      }
+    }
+
+    return muX.sum() + Y.sum();
+  }
+
+  private static double engine(final Corpus corpus, final DoubleMatrix omega, final WhitenEngine acc) {
+    acc.reset(omega);
+    final Corpus.Cursor doc = corpus.cursor();
+    while (doc.next()) {
+      acc.add(doc);
+    }
+    final DoubleMatrix[] result = acc.getResult();
+    return result[1].sum() + result[2].sum();
+  }
+
+  private static double engine(final Corpus corpus, final DoubleMatrix omega, final WhitenEngine acc,
+                               final ExecutorService executor, final int numThreads) {
+    acc.reset(omega);
+    try {
+      acc.addAll(corpus, executor, numThreads);
+    } catch (final InterruptedException | ExecutionException ex) {
+      throw new RuntimeException("Parallel scan failed", ex);
+    }
+    final DoubleMatrix[] result = acc.getResult();
+    return result[1].sum() + result[2].sum();
+  }
+
+  private interface Kernel {
+    double run();
+  }
+
+  private static void run(final String name, final Kernel kernel, final long numTokens, final int rounds) {
+
+    double checksum = kernel.run(); // warm-up
+
+    final long threadId = Thread.currentThread().getId();
+
+    long bestNanos = Long.MAX_VALUE;
+    long allocatedBytes = 0;
+    for (int i = 0; i < rounds; ++i) {
+      final long startBytes = THREAD_BEAN.getThreadAllocatedBytes(threadId);
+      final long start = System.nanoTime();
+      checksum = kernel.run();
+      bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+      allocatedBytes += THREAD_BEAN.getThreadAllocatedBytes(threadId) - startBytes;
+    }
+
+    LOG.log(Level.INFO, "{0}: {1} tokens/s, {2} bytes/token allocated (checksum {3})",
+        new Object[] { name, String.format("%.3g", numTokens * 1e9 / bestNanos),
+            String.format("%.3g", allocatedBytes / (double) rounds / numTokens), checksum });
+  }
+
+  /**
+   * Time the parallel scan of the engine on each number of threads.
+   * Allocations are not reported, because they happen on the threads of the executor.
+   */
+  private static void runParallel(final String name, final Corpus corpus, final DoubleMatrix omega,
+                                  final WhitenEngine acc, final int[] threads, final int rounds) {
+
+    double baseNanos = 0;
+
+    for (final int numThreads : threads) {
+
+      final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+      try {
+
+        double checksum = engine(corpus, omega, acc, executor, numThreads); // warm-up
+
+        long bestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; ++i) {
+          final long start = System.nanoTime();
+          checksum = engine(corpus, omega, acc, executor, numThreads);
+          bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+        }
+
+        if (baseNanos == 0) {
+          baseNanos = bestNanos;
+        }
+
+        LOG.log(Level.INFO, "{0} on {1} threads: {2} tokens/s, speedup {3} (checksum {4})",
+            new Object[] { name, numThreads, String.format("%.3g", corpus.numTokens() * 1e9 / bestNanos),
+                String.format("%.2f", baseNanos / bestNanos), checksum });
+
+      } finally {
+        executor.shutdown();
+      }
+    }
+  }
+
+  public static void main(final String[] args) {
+
+    final int numDocs = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+    final int tokensPerDoc = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+    final int dimD = args.length > 2 ? Integer.parseInt(args[2]) : 50000;
+    final int dimKprime = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+    final int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+    final String[] threadList = (args.length > 5 ? args[5] : "1,4,8,16").split(",");
+
+    final int[] threads = new int[threadList.length];
+    for (int i = 0; i < threads.length; ++i) {
+      threads[i] = Integer.parseInt(threadList[i].trim());
+    }
+
+    final Random rand = new Random(WhitenKernelBenchmark.class.getName().hashCode());
+
+    final Corpus corpus = zipfCorpus(numDocs, tokensPerDoc, dimD, rand);
+    final DoubleMatrix omega = TensorUtil.gaussian(dimD, dimKprime, rand.nextLong());
+    final WhitenEngine rows = new WhitenAccumulator(dimD, dimKprime);
+    final WhitenEngine spmm = new SpmmWhitenAccumulator(dimD, dimKprime);
+
+    run("jBLAS rows", new Kernel() {
+      @Override
+      public double run() {
+        return legacy(corpus, omega);
+      }
+    }, corpus.numTokens(), rounds);
+
+    run("rows", new Kernel() {
+      @Override
+      public double run() {
+        return engine(corpus, omega, rows);
+      }
+    }, corpus.numTokens(), rounds);
+
+    run("SpMM", new Kernel() {
+      @Override
+      public double run() {
+        return engine(corpus, omega, spmm);
+      }
+    }, corpus.numTokens(), rounds);
+
+    LOG.log(Level.INFO, "{0} processors available", Runtime.getRuntime().availableProcessors());
+
+    runParallel("rows", corpus, omega, rows, threads, rounds);
+    runParallel("SpMM", corpus, omega, spmm, threads, rounds);
+  }
+}
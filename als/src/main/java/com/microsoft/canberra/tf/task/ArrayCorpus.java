@@ -0,0 +1,169 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task;
+
+import java.util.Arrays;
+
+/**
+ * Corpus that keeps the whole partition on the heap in three flat arrays
+ * in compressed sparse row (CSR) format: document offsets, token IDs and token counts.
+ * Tokens of document n are at positions offsets[n] .. offsets[n + 1] - 1
+ * of the ids and counts arrays.
+ */
+public final class ArrayCorpus implements Corpus {
+
+  /**
+   * Appends documents one at a time and packs them into an ArrayCorpus.
+   */
+  public static final class Builder implements Corpus.Builder {
+
+    private static final int INITIAL_DOCS = 1024;
+    private static final int INITIAL_TOKENS = 64 * 1024;
+
+    private int numDocs = 0;
+    private int numTokens = 0;
+    private int[] offsets = new int[INITIAL_DOCS + 1];
+    private int[] ids = new int[INITIAL_TOKENS];
+    private float[] counts = new float[INITIAL_TOKENS];
+
+    @Override
+    public Builder add(final Document doc) {
+
+      final int size = doc.size();
+
+      if (this.numDocs + 1 >= this.offsets.length) {
+        this.offsets = Arrays.copyOf(this.offsets, grow(this.offsets.length, this.numDocs + 2));
+      }
+
+      if (this.numTokens + size > this.ids.length) {
+        if ((long) this.numTokens + size > Integer.MAX_VALUE) {
+          throw new IllegalStateException("Too many tokens in the partition: " + this.numTokens);
+        }
+        final int capacity = grow(this.ids.length, this.numTokens + size);
+        this.ids = Arrays.copyOf(this.ids, capacity);
+        this.counts = Arrays.copyOf(this.counts, capacity);
+      }
+
+      for (int i = 0; i < size; ++i) {
+        this.ids[this.numTokens] = doc.tokenId(i);
+        this.counts[this.numTokens] = doc.tokenCount(i);
+        ++this.numTokens;
+      }
+
+      ++this.numDocs;
+      this.offsets[this.numDocs] = this.numTokens;
+
+      return this;
+    }
+
+    /**
+     * Trim the arrays to their actual size and create the corpus.
+     */
+    @Override
+    public ArrayCorpus build() {
+      return new ArrayCorpus(
+          Arrays.copyOf(this.offsets, this.numDocs + 1),
+          Arrays.copyOf(this.ids, this.numTokens),
+          Arrays.copyOf(this.counts, this.numTokens));
+    }
+
+    /**
+     * Grow array capacity by 1.5x, but no less than minCapacity and no more than the max array size.
+     */
+    private static int grow(final int capacity, final int minCapacity) {
+      final long newCapacity = Math.min(Integer.MAX_VALUE - 8, capacity + (capacity >> 1));
+      return (int) Math.max(newCapacity, minCapacity);
+    }
+  }
+
+  private final class ArrayCursor implements Cursor {
+
+    private int doc;
+    private final int toDoc;
+    private int start = 0;
+    private int end = 0;
+
+    private ArrayCursor(final int fromDoc, final int toDoc) {
+      this.doc = fromDoc - 1;
+      this.toDoc = toDoc;
+    }
+
+    @Override
+    public boolean next() {
+      if (this.doc + 1 >= this.toDoc) {
+        return false;
+      }
+      ++this.doc;
+      this.start = offsets[this.doc];
+      this.end = offsets[this.doc + 1];
+      return true;
+    }
+
+    @Override
+    public int size() {
+      return this.end - this.start;
+    }
+
+    @Override
+    public int tokenId(final int i) {
+      return ids[this.start + i];
+    }
+
+    @Override
+    public float tokenCount(final int i) {
+      return counts[this.start + i];
+    }
+  }
+
+  private final int[] offsets;
+  private final int[] ids;
+  private final float[] counts;
+
+  private ArrayCorpus(final int[] offsets, final int[] ids, final float[] counts) {
+    this.offsets = offsets;
+    this.ids = ids;
+    this.counts = counts;
+  }
+
+  @Override
+  public int size() {
+    return this.offsets.length - 1;
+  }
+
+  @Override
+  public long numTokens() {
+    return this.ids.length;
+  }
+
+  @Override
+  public Cursor cursor() {
+    return new ArrayCursor(0, this.size());
+  }
+
+  @Override
+  public Cursor cursor(final int fromDoc, final int toDoc) {
+    assert(0 <= fromDoc && fromDoc <= toDoc && toDoc <= this.size());
+    return new ArrayCursor(fromDoc, toDoc);
+  }
+}
@@ -0,0 +1,297 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Corpus that keeps the partition on the heap in a compact variable-length encoding.
+ * Each document is stored as a varint header (number of tokens shifted left by one,
+ * with the lowest bit set if the counts are stored as floats) followed by the token IDs
+ * sorted in ascending order and encoded as varint deltas, and then the token counts:
+ * varints if all counts of the document are non-negative integers, or raw floats otherwise.
+ * Bytes are kept in fixed-size pages, so the corpus is never copied as it grows.
+ * The byte position of every CHECKPOINT-th document is stored, so a cursor can start
+ * at any document after decoding at most CHECKPOINT - 1 preceding documents.
+ */
+public final class CompressedCorpus implements Corpus {
+
+  private static final int PAGE_SHIFT = 20;
+  private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+  private static final int CHECKPOINT_SHIFT = 6;
+  private static final int CHECKPOINT = 1 << CHECKPOINT_SHIFT;
+
+  /**
+   * Encodes documents one at a time and packs them into a CompressedCorpus.
+   */
+  public static final class Builder implements Corpus.Builder {
+
+    private final List<byte[]> pages = new ArrayList<>();
+    private byte[] page = new byte[PAGE_SIZE];
+    private int pos = 0;
+
+    private int numDocs = 0;
+    private long numTokens = 0;
+    private long[] checkpoints = new long[1024];
+
+    /** Token IDs (high 32 bits) and count bits (low 32 bits) of the current document, for sorting. */
+    private long[] tokens = new long[64];
+
+    public Builder() {
+      this.pages.add(this.page);
+    }
+
+    @Override
+    public Builder add(final Document doc) {
+
+      if (this.numDocs == Integer.MAX_VALUE - 1) {
+        throw new IllegalStateException("Too many documents in the partition: " + this.numDocs);
+      }
+
+      if ((this.numDocs & (CHECKPOINT - 1)) == 0) {
+        final int checkpointNo = this.numDocs >>> CHECKPOINT_SHIFT;
+        if (checkpointNo == this.checkpoints.length) {
+          this.checkpoints = Arrays.copyOf(this.checkpoints, 2 * checkpointNo);
+        }
+        this.checkpoints[checkpointNo] = this.position();
+      }
+
+      final int size = doc.size();
+      if (size > this.tokens.length) {
+        this.tokens = new long[Math.max(size, 2 * this.tokens.length)];
+      }
+
+      boolean isIntegral = true;
+      for (int i = 0; i < size; ++i) {
+        final int id = doc.tokenId(i);
+        assert(id >= 0);
+        final float count = doc.tokenCount(i);
+        isIntegral = isIntegral && count >= 0 && count <= Integer.MAX_VALUE && count == (int) count;
+        this.tokens[i] = ((long) id << 32) | (Float.floatToRawIntBits(count) & 0xFFFFFFFFL);
+      }
+
+      Arrays.sort(this.tokens, 0, size);
+
+      this.writeVarint((size << 1) | (isIntegral ? 0 : 1));
+
+      int prevId = 0;
+      for (int i = 0; i < size; ++i) {
+        final int id = (int) (this.tokens[i] >>> 32);
+        this.writeVarint(id - prevId);
+        prevId = id;
+      }
+
+      for (int i = 0; i < size; ++i) {
+        final float count = Float.intBitsToFloat((int) this.tokens[i]);
+        if (isIntegral) {
+          this.writeVarint((int) count);
+        } else {
+          final int bits = Float.floatToRawIntBits(count);
+          this.writeByte(bits >>> 24);
+          this.writeByte(bits >>> 16);
+          this.writeByte(bits >>> 8);
+          this.writeByte(bits);
+        }
+      }
+
+      ++this.numDocs;
+      this.numTokens += size;
+      return this;
+    }
+
+    @Override
+    public CompressedCorpus build() {
+      this.pages.set(this.pages.size() - 1, Arrays.copyOf(this.page, this.pos));
+      return new CompressedCorpus(this.numDocs, this.numTokens,
+          this.pages.toArray(new byte[this.pages.size()][]),
+          Arrays.copyOf(this.checkpoints, (this.numDocs + CHECKPOINT - 1) >>> CHECKPOINT_SHIFT));
+    }
+
+    private long position() {
+      return ((long) (this.pages.size() - 1) << PAGE_SHIFT) + this.pos;
+    }
+
+    private void writeByte(final int value) {
+      if (this.pos == PAGE_SIZE) {
+        this.page = new byte[PAGE_SIZE];
+        this.pages.add(this.page);
+        this.pos = 0;
+      }
+      this.page[this.pos++] = (byte) value;
+    }
+
+    /**
+     * Write a non-negative int in 7-bit groups, least significant group first.
+     */
+    private void writeVarint(int value) {
+      while ((value & ~0x7F) != 0) {
+        this.writeByte((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      this.writeByte(value);
+    }
+  }
+
+  /**
+   * Decodes each document into the cursor's own buffers when it moves to it.
+   */
+  private final class CompressedCursor implements Cursor {
+
+    private int doc;
+    private final int toDoc;
+
+    private int pageNo;
+    private byte[] page;
+    private int pos;
+
+    private int size = 0;
+    private int[] ids = new int[64];
+    private float[] counts = new float[64];
+
+    private CompressedCursor(final int fromDoc, final int toDoc) {
+
+      final int checkpointNo = fromDoc >>> CHECKPOINT_SHIFT;
+      final long start = checkpointNo < checkpoints.length ? checkpoints[checkpointNo] : 0;
+
+      this.pageNo = (int) (start >>> PAGE_SHIFT);
+      this.page = pages[this.pageNo];
+      this.pos = (int) (start & (PAGE_SIZE - 1));
+      this.toDoc = toDoc;
+
+      this.doc = (checkpointNo << CHECKPOINT_SHIFT) - 1;
+      while (this.doc < fromDoc - 1) {
+        this.next();
+      }
+    }
+
+    @Override
+    public boolean next() {
+
+      if (this.doc + 1 >= this.toDoc) {
+        return false;
+      }
+
+      ++this.doc;
+
+      final int header = this.readVarint();
+      this.size = header >>> 1;
+
+      if (this.size > this.ids.length) {
+        this.ids = new int[Math.max(this.size, 2 * this.ids.length)];
+        this.counts = new float[this.ids.length];
+      }
+
+      int id = 0;
+      for (int i = 0; i < this.size; ++i) {
+        id += this.readVarint();
+        this.ids[i] = id;
+      }
+
+      if ((header & 1) == 0) {
+        for (int i = 0; i < this.size; ++i) {
+          this.counts[i] = this.readVarint();
+        }
+      } else {
+        for (int i = 0; i < this.size; ++i) {
+          this.counts[i] = Float.intBitsToFloat(
+              this.readByte() << 24 | this.readByte() << 16 | this.readByte() << 8 | this.readByte());
+        }
+      }
+
+      return true;
+    }
+
+    @Override
+    public int size() {
+      return this.size;
+    }
+
+    @Override
+    public int tokenId(final int i) {
+      return this.ids[i];
+    }
+
+    @Override
+    public float tokenCount(final int i) {
+      return this.counts[i];
+    }
+
+    private int readByte() {
+      if (this.pos == PAGE_SIZE) {
+        this.page = pages[++this.pageNo];
+        this.pos = 0;
+      }
+      return this.page[this.pos++] & 0xFF;
+    }
+
+    private int readVarint() {
+      int value = 0;
+      int shift = 0;
+      int b;
+      do {
+        b = this.readByte();
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return value;
+    }
+  }
+
+  private final int numDocs;
+  private final long numTokens;
+  private final byte[][] pages;
+  private final long[] checkpoints;
+
+  private CompressedCorpus(final int numDocs, final long numTokens,
+                           final byte[][] pages, final long[] checkpoints) {
+    this.numDocs = numDocs;
+    this.numTokens = numTokens;
+    this.pages = pages;
+    this.checkpoints = checkpoints;
+  }
+
+  @Override
+  public int size() {
+    return this.numDocs;
+  }
+
+  @Override
+  public long numTokens() {
+    return this.numTokens;
+  }
+
+  @Override
+  public Cursor cursor() {
+    return new CompressedCursor(0, this.numDocs);
+  }
+
+  @Override
+  public Cursor cursor(final int fromDoc, final int toDoc) {
+    assert(0 <= fromDoc && fromDoc <= toDoc && toDoc <= this.numDocs);
+    return new CompressedCursor(fromDoc, toDoc);
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task;
+
+/**
+ * Read-only collection of all documents of one data partition.
+ * Documents are identified by their position in the partition, 0 <= n < size(),
+ * and are accessed through a Cursor that scans them sequentially.
+ */
+public interface Corpus {
+
+  /**
+   * Appends documents one at a time and packs them into a Corpus.
+   * The builder must not be used after build() is called.
+   */
+  interface Builder {
+
+    Builder add(final Document doc);
+
+    Corpus build();
+  }
+
+  /**
+   * Forward-only iterator over the documents of the corpus.
+   * Exposes tokens of the current document through the Tokens accessors,
+   * so that scanning the corpus does not allocate.
+   */
+  interface Cursor extends Tokens {
+
+    /**
+     * Advance to the next document.
+     * @return false if there are no more documents in the range of the cursor.
+     */
+    boolean next();
+  }
+
+  /**
+   * @return number of documents in the corpus.
+   */
+  int size();
+
+  /**
+   * @return total number of tokens in all documents of the corpus.
+   */
+  long numTokens();
+
+  /**
+   * @return new cursor positioned before the first document of the corpus.
+   */
+  Cursor cursor();
+
+  /**
+   * @param fromDoc index of the first document to scan (inclusive).
+   * @param toDoc index of the last document to scan (exclusive).
+   * @return new cursor positioned before document fromDoc.
+   */
+  Cursor cursor(final int fromDoc, final int toDoc);
+}
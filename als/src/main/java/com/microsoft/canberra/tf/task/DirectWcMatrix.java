@@ -0,0 +1,95 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+/**
+ * WcMatrix in double precision outside of the Java heap, so that it does not count
+ * against the heap size and is not copied by the garbage collector.
+ * Rows are split into blocks of BLOCK_ROWS documents; each block is a separate direct
+ * buffer that stores its k columns one after another (column-major within the block).
+ * Blocks keep each buffer well below the 2G limit and let the rows be written in parallel.
+ * Direct memory is limited by -XX:MaxDirectMemorySize, which defaults to the maximum heap size.
+ * Token counts are kept on the heap.
+ */
+public final class DirectWcMatrix implements WcMatrix {
+
+  private static final int BLOCK_SHIFT = 12;
+  private static final int BLOCK_ROWS = 1 << BLOCK_SHIFT;
+  private static final int BLOCK_MASK = BLOCK_ROWS - 1;
+
+  private final int rows;
+  private final int columns;
+  private final DoubleBuffer[] blocks;
+  private final double[] counts;
+
+  public DirectWcMatrix(final int rows, final int columns) {
+    this.rows = rows;
+    this.columns = columns;
+    this.blocks = new DoubleBuffer[(rows + BLOCK_ROWS - 1) >>> BLOCK_SHIFT];
+    for (int i = 0; i < this.blocks.length; ++i) {
+      final int blockRows = Math.min(BLOCK_ROWS, rows - (i << BLOCK_SHIFT));
+      this.blocks[i] = ByteBuffer.allocateDirect(blockRows * columns * (Double.SIZE / Byte.SIZE))
+          .order(ByteOrder.nativeOrder()).asDoubleBuffer();
+    }
+    this.counts = new double[rows];
+  }
+
+  @Override
+  public int getRows() {
+    return this.rows;
+  }
+
+  @Override
+  public int getColumns() {
+    return this.columns;
+  }
+
+  @Override
+  public void putRow(final int n, final double[] row, final double count) {
+    final DoubleBuffer block = this.blocks[n >>> BLOCK_SHIFT];
+    final int blockRows = block.capacity() / this.columns;
+    for (int j = 0, pos = n & BLOCK_MASK; j < this.columns; ++j, pos += blockRows) {
+      block.put(pos, row[j]);
+    }
+    this.counts[n] = count;
+  }
+
+  @Override
+  public void getRow(final int n, final double[] out) {
+    final DoubleBuffer block = this.blocks[n >>> BLOCK_SHIFT];
+    final int blockRows = block.capacity() / this.columns;
+    for (int j = 0, pos = n & BLOCK_MASK; j < this.columns; ++j, pos += blockRows) {
+      out[j] = block.get(pos);
+    }
+  }
+
+  @Override
+  public double getCount(final int n) {
+    return this.counts[n];
+  }
+}
@@ -23,10 +23,17 @@
  */
 package com.microsoft.canberra.tf.task;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
-public final class Document implements Iterable<Document.Token> {
+/**
+ * Sparse bag-of-words document. Tokens are stored in two parallel primitive arrays,
+ * token IDs and token counts. Use size(), tokenId(i) and tokenCount(i) to scan
+ * the tokens without allocating; the Iterable view creates a Token object per element
+ * and is kept for convenience only.
+ */
+public final class Document implements Tokens, Iterable<Document.Token> {
 
   public static final class Token {
 
@@ -44,19 +51,30 @@ public final class Document implements Iterable<Document.Token> {
     }
   }
 
+  private static final int MIN_CAPACITY = 8;
+
   private long id;
-  private final ArrayList<Token> tokens;
+  private int size;
+  private int[] ids;
+  private float[] counts;
 
   /**
    * Default constructor required for Hadoop InputFormat
    */
   public Document() {
-    this(-1, new ArrayList<Token>());
+    this(-1, new int[0], new float[0]);
   }
 
-  public Document(final long id, final ArrayList<Token> tokens) {
+  /**
+   * Create a new document that takes ownership of the given token arrays.
+   * Both arrays must have the same length.
+   */
+  public Document(final long id, final int[] ids, final float[] counts) {
+    assert(ids.length == counts.length);
     this.id = id;
-    this.tokens = tokens;
+    this.size = ids.length;
+    this.ids = ids;
+    this.counts = counts;
   }
 
   /**
@@ -65,29 +83,81 @@ public final class Document implements Iterable<Document.Token> {
    */
   public void clearTokens(final long id, final int capacity) {
     this.id = id;
-    this.tokens.clear();
-    this.tokens.ensureCapacity(capacity);
+    this.size = 0;
+    if (this.ids.length < capacity) {
+      this.ids = new int[capacity];
+      this.counts = new float[capacity];
+    }
   }
 
   public void add(final int id, final double count) {
-    this.tokens.add(new Token(id, count));
+    if (this.size == this.ids.length) {
+      final int capacity = Math.max(MIN_CAPACITY, 2 * this.size);
+      this.ids = Arrays.copyOf(this.ids, capacity);
+      this.counts = Arrays.copyOf(this.counts, capacity);
+    }
+    this.ids[this.size] = id;
+    this.counts[this.size] = (float) count;
+    ++this.size;
   }
 
   public long getId() {
     return this.id;
   }
 
+  @Override
   public int size() {
-    return this.tokens.size();
+    return this.size;
+  }
+
+  @Override
+  public int tokenId(final int i) {
+    return this.ids[i];
+  }
+
+  @Override
+  public float tokenCount(final int i) {
+    return this.counts[i];
   }
 
   @Override
   public Iterator<Token> iterator() {
-    return this.tokens.iterator();
+    return new Iterator<Token>() {
+
+      private int pos = 0;
+
+      @Override
+      public boolean hasNext() {
+        return this.pos < size;
+      }
+
+      @Override
+      public Token next() {
+        if (this.pos >= size) {
+          throw new NoSuchElementException();
+        }
+        final Token token = new Token(ids[this.pos], counts[this.pos]);
+        ++this.pos;
+        return token;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException("Document tokens are read-only");
+      }
+    };
   }
 
   @Override
   public String toString() {
-    return this.id + " :: " + this.tokens;
+    final StringBuilder buf = new StringBuilder();
+    buf.append(this.id).append(" :: [");
+    for (int i = 0; i < this.size; ++i) {
+      if (i > 0) {
+        buf.append(", ");
+      }
+      buf.append(this.ids[i]).append(':').append((double) this.counts[i]);
+    }
+    return buf.append(']').toString();
   }
 }
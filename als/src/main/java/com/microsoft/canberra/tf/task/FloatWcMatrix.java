@@ -0,0 +1,80 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task;
+
+/**
+ * WcMatrix in single precision, in one row-major array on the heap:
+ * half the memory of ArrayWcMatrix. Token counts are kept in double.
+ */
+public final class FloatWcMatrix implements WcMatrix {
+
+  private final int rows;
+  private final int columns;
+  private final float[] data;
+  private final double[] counts;
+
+  /**
+   * @throws IllegalArgumentException if rows * columns does not fit in one array.
+   */
+  public FloatWcMatrix(final int rows, final int columns) {
+    if ((long) rows * columns > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          "wc of " + rows + " * " + columns + " is too large for one array; use -wc_storage direct");
+    }
+    this.rows = rows;
+    this.columns = columns;
+    this.data = new float[rows * columns];
+    this.counts = new double[rows];
+  }
+
+  @Override
+  public int getRows() {
+    return this.rows;
+  }
+
+  @Override
+  public int getColumns() {
+    return this.columns;
+  }
+
+  @Override
+  public void putRow(final int n, final double[] row, final double count) {
+    for (int j = 0, pos = n * this.columns; j < this.columns; ++j, ++pos) {
+      this.data[pos] = (float) row[j];
+    }
+    this.counts[n] = count;
+  }
+
+  @Override
+  public void getRow(final int n, final double[] out) {
+    for (int j = 0, pos = n * this.columns; j < this.columns; ++j, ++pos) {
+      out[j] = this.data[pos];
+    }
+  }
+
+  @Override
+  public double getCount(final int n) {
+    return this.counts[n];
+  }
+}
@@ -23,16 +23,20 @@
  */
 package com.microsoft.canberra.tf.task;
 
+import com.microsoft.canberra.tf.Launch;
+import com.microsoft.canberra.tf.util.IntIndexMap;
+
 import org.apache.reef.annotations.audience.TaskSide;
 import org.apache.reef.io.data.loading.api.DataSet;
 import org.apache.reef.io.network.util.Pair;
+import org.apache.reef.tang.annotations.Parameter;
+import org.apache.reef.wake.EventHandler;
 
 import org.apache.hadoop.io.LongWritable;
 
 import javax.inject.Inject;
-import java.util.Collections;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.File;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,21 +45,138 @@ public final class InputData {
 
   private static final Logger LOG = Logger.getLogger(InputData.class.getName());
 
-  private final List<Document> documents;
+  /** Initial capacity of the local vocabulary; it grows as needed. */
+  private static final int LOCAL_VOCABULARY_CAPACITY = 1024;
+
+  private final DataSet<LongWritable, Document> dataSet;
+  private final String storage;
+  private final String spillDir;
+  private final boolean localVocab;
+  private final TaskEnvironment env;
 
   @Inject
-  public InputData(final DataSet<LongWritable, Document> dataSet) {
+  public InputData(final DataSet<LongWritable, Document> dataSet,
+                   final @Parameter(Launch.CorpusStorage.class) String storage,
+                   final @Parameter(Launch.SpillDir.class) String spillDir,
+                   final @Parameter(Launch.LocalVocab.class) boolean localVocab,
+                   final TaskEnvironment env) {
+    this.dataSet = dataSet;
+    this.storage = storage;
+    this.spillDir = spillDir;
+    this.localVocab = localVocab;
+    this.env = env;
+  }
+
+  /**
+   * Drain the data set and pack all its documents into one partition-wide corpus.
+   * Individual Document objects are discarded as soon as they are copied.
+   * If the vocabulary pass has been run, word IDs are mapped to the dense range
+   * of the pruned vocabulary, and the pruned words are dropped.
+   * With -local_vocab, word IDs are further mapped to the dense range of the words
+   * that occur in this partition, in the order of their first occurrence, and the
+   * local vocabulary is stored in the task environment.
+   *
+   * @param handler if not null, receives every (remapped) document as it is read,
+   * so that the caller can process the data while it is being loaded.
+   * The document object is reused and is only valid for the duration of the call.
+   * @return corpus of the documents in the data set.
+   */
+  public Corpus load(final EventHandler<Document> handler) {
+
+    final Corpus.Builder builder = newCorpusBuilder(this.storage, this.spillDir);
+    final IntIndexMap remap = getRemap(this.env.getVocabulary());
+    final Document remapped = new Document();
 
-    this.documents = Collections.unmodifiableList(new ArrayList<Document>() {{
-      for (final Pair<LongWritable, Document> keyValue : dataSet) {
-        add(keyValue.getSecond());
+    // Local word IDs indexed by the global ones (-1 if not seen yet), and the inverse mapping.
+    final int[] toLocal = this.localVocab ? new int[this.env.getDimD()] : null;
+    int[] toGlobal = this.localVocab ? new int[LOCAL_VOCABULARY_CAPACITY] : null;
+    int numLocal = 0;
+    if (toLocal != null) {
+      Arrays.fill(toLocal, -1);
+    }
+
+    for (final Pair<LongWritable, Document> keyValue : this.dataSet) {
+
+      Document doc = keyValue.getSecond();
+
+      if (remap != null || toLocal != null) {
+        remapped.clearTokens(doc.getId(), doc.size());
+        for (int t = 0; t < doc.size(); ++t) {
+          int id = doc.tokenId(t);
+          if (remap != null) {
+            id = remap.indexOf(id);
+            if (id < 0) {
+              continue;
+            }
+          }
+          if (toLocal != null) {
+            if (toLocal[id] < 0) {
+              if (numLocal == toGlobal.length) {
+                toGlobal = Arrays.copyOf(toGlobal, 2 * numLocal);
+              }
+              toGlobal[numLocal] = id;
+              toLocal[id] = numLocal++;
+            }
+            id = toLocal[id];
+          }
+          remapped.add(id, doc.tokenCount(t));
+        }
+        doc = remapped;
       }
-    }});
 
-    LOG.log(Level.FINEST, "Loaded the data: {0} records", this.documents.size());
+      builder.add(doc);
+
+      if (handler != null) {
+        handler.onNext(doc);
+      }
+    }
+
+    final Corpus corpus = builder.build();
+
+    if (toGlobal != null) {
+      this.env.setLocalVocabulary(Arrays.copyOf(toGlobal, numLocal));
+    }
+
+    LOG.log(Level.FINEST, "Loaded the data: {0} records, {1} tokens, {2} words, {3} storage",
+        new Object[] { corpus.size(), corpus.numTokens(), this.env.getLocalDimD(), this.storage });
+
+    return corpus;
+  }
+
+  /**
+   * @param vocabulary sorted original word IDs, indexed by the new word IDs; can be null.
+   * @return map from the original word IDs to the new ones, without the pruned words;
+   * null if vocabulary is null. The original IDs can be sparse, so the map is hashed
+   * rather than indexed by them.
+   */
+  private static IntIndexMap getRemap(final int[] vocabulary) {
+
+    if (vocabulary == null) {
+      return null;
+    }
+
+    final IntIndexMap remap = new IntIndexMap(vocabulary.length);
+    for (final int id : vocabulary) {
+      remap.add(id);
+    }
+
+    return remap;
   }
 
-  public List<Document> getDocuments() {
-    return this.documents;
+  /**
+   * @return builder for the corpus of the given storage type.
+   * @throws IllegalArgumentException if the storage type is unknown.
+   */
+  private static Corpus.Builder newCorpusBuilder(final String storage, final String spillDir) {
+    switch (storage) {
+    case "heap":
+      return new ArrayCorpus.Builder();
+    case "compressed":
+      return new CompressedCorpus.Builder();
+    case "mapped":
+      return new MappedCorpus.Builder(spillDir.isEmpty() ? null : new File(spillDir));
+    default:
+      throw new IllegalArgumentException("Unknown corpus storage: " + storage);
+    }
   }
 }
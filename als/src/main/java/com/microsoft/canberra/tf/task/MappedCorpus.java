@@ -0,0 +1,248 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Corpus that spills the partition to local disk once and then memory-maps it,
+ * so that the scans read documents from the OS page cache and the heap usage
+ * does not depend on the partition size.
+ * Data is stored in CSR format in two files: document offsets (one long per document
+ * plus the terminating offset) and tokens (pairs of int token ID and float count).
+ * Each file is mapped in segments of at most 1G, as a single MappedByteBuffer
+ * cannot exceed 2G.
+ * The files are deleted as soon as they are mapped (or on JVM exit, if the OS
+ * does not allow deleting mapped files).
+ */
+public final class MappedCorpus implements Corpus {
+
+  private static final Logger LOG = Logger.getLogger(MappedCorpus.class.getName());
+
+  private static final int SEGMENT_SHIFT = 30;
+  private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+  private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+  /** Size of one document offset entry, bytes. */
+  private static final int OFFSET_SHIFT = 3;
+
+  /** Size of one token entry, bytes: int token ID followed by float count. */
+  private static final int TOKEN_SHIFT = 3;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * Writes documents to temporary files in the given directory
+   * and maps them into memory on build().
+   */
+  public static final class Builder implements Corpus.Builder {
+
+    private final File offsetsFile;
+    private final File tokensFile;
+    private final DataOutputStream offsetsOut;
+    private final DataOutputStream tokensOut;
+
+    private int numDocs = 0;
+    private long numTokens = 0;
+
+    /**
+     * @param dir local directory for the spill files; null means the system temporary directory.
+     */
+    public Builder(final File dir) {
+      try {
+        this.offsetsFile = File.createTempFile("corpus-", ".offsets", dir);
+        this.tokensFile = File.createTempFile("corpus-", ".tokens", dir);
+        this.offsetsOut = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(this.offsetsFile), BUFFER_SIZE));
+        this.tokensOut = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(this.tokensFile), BUFFER_SIZE));
+        this.offsetsOut.writeLong(0);
+      } catch (final IOException ex) {
+        LOG.log(Level.SEVERE, "Cannot create corpus spill files in " + dir, ex);
+        throw new RuntimeException(ex);
+      }
+      LOG.log(Level.FINEST, "Spill corpus to: {0} {1}", new Object[] { this.offsetsFile, this.tokensFile });
+    }
+
+    @Override
+    public Builder add(final Document doc) {
+
+      if (this.numDocs == Integer.MAX_VALUE - 1) {
+        throw new IllegalStateException("Too many documents in the partition: " + this.numDocs);
+      }
+
+      final int size = doc.size();
+      try {
+        for (int i = 0; i < size; ++i) {
+          this.tokensOut.writeInt(doc.tokenId(i));
+          this.tokensOut.writeFloat(doc.tokenCount(i));
+        }
+        this.numTokens += size;
+        this.offsetsOut.writeLong(this.numTokens);
+      } catch (final IOException ex) {
+        LOG.log(Level.SEVERE, "Error writing corpus spill file " + this.tokensFile, ex);
+        throw new RuntimeException(ex);
+      }
+
+      ++this.numDocs;
+      return this;
+    }
+
+    /**
+     * Flush and close the spill files and map them into memory.
+     */
+    @Override
+    public MappedCorpus build() {
+      try {
+        this.offsetsOut.close();
+        this.tokensOut.close();
+        return new MappedCorpus(this.numDocs, this.numTokens,
+            map(this.offsetsFile, (long) (this.numDocs + 1) << OFFSET_SHIFT),
+            map(this.tokensFile, this.numTokens << TOKEN_SHIFT));
+      } catch (final IOException ex) {
+        LOG.log(Level.SEVERE, "Error mapping corpus spill files " + this.tokensFile, ex);
+        throw new RuntimeException(ex);
+      } finally {
+        delete(this.offsetsFile);
+        delete(this.tokensFile);
+      }
+    }
+  }
+
+  private final class MappedCursor implements Cursor {
+
+    private int doc;
+    private final int toDoc;
+    private long start = 0;
+    private int size = 0;
+
+    private MappedCursor(final int fromDoc, final int toDoc) {
+      this.doc = fromDoc - 1;
+      this.toDoc = toDoc;
+    }
+
+    @Override
+    public boolean next() {
+      if (this.doc + 1 >= this.toDoc) {
+        return false;
+      }
+      ++this.doc;
+      this.start = offset(this.doc);
+      this.size = (int) (offset(this.doc + 1) - this.start);
+      return true;
+    }
+
+    @Override
+    public int size() {
+      return this.size;
+    }
+
+    @Override
+    public int tokenId(final int i) {
+      final long pos = (this.start + i) << TOKEN_SHIFT;
+      return tokens[(int) (pos >>> SEGMENT_SHIFT)].getInt((int) (pos & SEGMENT_MASK));
+    }
+
+    @Override
+    public float tokenCount(final int i) {
+      final long pos = (this.start + i) << TOKEN_SHIFT;
+      return tokens[(int) (pos >>> SEGMENT_SHIFT)].getFloat((int) (pos & SEGMENT_MASK) + 4);
+    }
+  }
+
+  private final int numDocs;
+  private final long numTokens;
+  private final ByteBuffer[] offsets;
+  private final ByteBuffer[] tokens;
+
+  private MappedCorpus(final int numDocs, final long numTokens,
+                       final ByteBuffer[] offsets, final ByteBuffer[] tokens) {
+    this.numDocs = numDocs;
+    this.numTokens = numTokens;
+    this.offsets = offsets;
+    this.tokens = tokens;
+  }
+
+  @Override
+  public int size() {
+    return this.numDocs;
+  }
+
+  @Override
+  public long numTokens() {
+    return this.numTokens;
+  }
+
+  @Override
+  public Cursor cursor() {
+    return new MappedCursor(0, this.numDocs);
+  }
+
+  @Override
+  public Cursor cursor(final int fromDoc, final int toDoc) {
+    assert(0 <= fromDoc && fromDoc <= toDoc && toDoc <= this.numDocs);
+    return new MappedCursor(fromDoc, toDoc);
+  }
+
+  /**
+   * @return index of the first token of the n-th document in the tokens file.
+   */
+  private long offset(final int n) {
+    final long pos = (long) n << OFFSET_SHIFT;
+    return this.offsets[(int) (pos >>> SEGMENT_SHIFT)].getLong((int) (pos & SEGMENT_MASK));
+  }
+
+  /**
+   * Map the first size bytes of the file in read-only segments of SEGMENT_SIZE bytes.
+   * All entries are 8 bytes long, so none of them cross the segment boundary.
+   * The mapping remains valid after the file is closed.
+   */
+  private static ByteBuffer[] map(final File file, final long size) throws IOException {
+    try (final RandomAccessFile raf = new RandomAccessFile(file, "r");
+         final FileChannel channel = raf.getChannel()) {
+      final ByteBuffer[] segments = new ByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+      for (int i = 0; i < segments.length; ++i) {
+        final long pos = (long) i << SEGMENT_SHIFT;
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(SEGMENT_SIZE, size - pos));
+      }
+      return segments;
+    }
+  }
+
+  private static void delete(final File file) {
+    if (!file.delete()) {
+      LOG.log(Level.FINEST, "Cannot delete {0} now, will delete on exit", file);
+      file.deleteOnExit();
+    }
+  }
+}
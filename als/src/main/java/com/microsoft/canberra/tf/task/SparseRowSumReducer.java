@@ -0,0 +1,62 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task;
+
+import com.microsoft.canberra.tf.util.SparseRowMatrix;
+
+import org.apache.reef.io.network.group.api.operators.Reduce;
+
+import javax.inject.Inject;
+
+/**
+ * Same as MatrixSumReducer, for row-sparse matrices: sums the corresponding elements
+ * of the arrays. The sums stay row-sparse, with the union of the rows of all inputs,
+ * so only the receiving task pays for the dense matrices.
+ */
+public class SparseRowSumReducer implements Reduce.ReduceFunction<SparseRowMatrix[]> {
+
+  private static final SparseRowMatrix[] EMPTY = new SparseRowMatrix[0];
+
+  @Inject
+  public SparseRowSumReducer() {
+  }
+
+  @Override
+  public synchronized SparseRowMatrix[] apply(final Iterable<SparseRowMatrix[]> iter) {
+
+    SparseRowMatrix[] res = EMPTY;
+
+    for (final SparseRowMatrix[] matrices : iter) {
+      if (res == EMPTY) {
+        res = matrices.clone();
+      } else {
+        for (int i = 0; i < res.length; ++i) {
+          res[i] = res[i].add(matrices[i]);
+        }
+      }
+    }
+
+    return res;
+  }
+}
@@ -23,44 +23,97 @@
  */
 package com.microsoft.canberra.tf.task;
 
+import com.microsoft.canberra.tf.Launch;
+
 import org.apache.reef.annotations.audience.TaskSide;
+import org.apache.reef.tang.annotations.Parameter;
 
 import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
 
 import javax.inject.Inject;
-import java.util.List;
 
 @TaskSide
 public final class TaskEnvironment {
 
-  private List<Document> documents = null;
+  private int dimD;
+  private int[] vocabulary = null;
+  private int[] localVocabulary = null;
+  private Corpus corpus = null;
   private int examples = -1;
   private DoubleMatrix omega = null;
+  private FloatMatrix omegaFloat = null;
   private DoubleMatrix sigma = null;
   private DoubleMatrix m1 = null;
   private DoubleMatrix m1raw = null;
-  private DoubleMatrix wc = null;
-  private DoubleMatrix counts = null;
+  private WcMatrix wc = null;
   private DoubleMatrix t = null;
   private DoubleMatrix a = null;
   private DoubleMatrix lambda = null;
 
   @Inject
-  public TaskEnvironment() {}
+  public TaskEnvironment(final @Parameter(Launch.DimD.class) int dimD) {
+    this.dimD = dimD;
+  }
+
+  /**
+   * @return vocabulary size: value of the -d parameter, or the size
+   * of the pruned vocabulary if the vocabulary pass has been run.
+   */
+  public int getDimD() {
+    return this.dimD;
+  }
+
+  /**
+   * @return original word IDs indexed by the dense word IDs,
+   * or null if the vocabulary pass has not been run.
+   */
+  public int[] getVocabulary() {
+    return this.vocabulary;
+  }
+
+  public TaskEnvironment setVocabulary(final int[] vocabulary) {
+    assert(this.vocabulary == null);
+    this.vocabulary = vocabulary;
+    this.dimD = vocabulary.length;
+    return this;
+  }
+
+  /**
+   * @return word IDs indexed by the local word IDs of the corpus of this partition,
+   * or null if the corpus uses the global word IDs (see -local_vocab).
+   */
+  public int[] getLocalVocabulary() {
+    return this.localVocabulary;
+  }
+
+  public TaskEnvironment setLocalVocabulary(final int[] localVocabulary) {
+    assert(this.localVocabulary == null);
+    this.localVocabulary = localVocabulary;
+    return this;
+  }
+
+  /**
+   * @return range of the word IDs in the corpus of this partition:
+   * size of the local vocabulary, or getDimD() if the IDs are not localized.
+   */
+  public int getLocalDimD() {
+    return this.localVocabulary == null ? this.dimD : this.localVocabulary.length;
+  }
 
-  public List<Document> getDocuments() {
-    return this.documents;
+  public Corpus getCorpus() {
+    return this.corpus;
   }
 
-  public TaskEnvironment setDocuments(final List<Document> documents) {
-    assert(this.documents == null);
-    this.documents = documents;
+  public TaskEnvironment setCorpus(final Corpus corpus) {
+    assert(this.corpus == null);
+    this.corpus = corpus;
     return this;
   }
 
-  public TaskEnvironment clearDocuments() {
-    assert(this.documents != null);
-    this.documents = null;
+  public TaskEnvironment clearCorpus() {
+    assert(this.corpus != null);
+    this.corpus = null;
     return this;
   }
 
@@ -90,6 +143,26 @@ public final class TaskEnvironment {
     return this;
   }
 
+  /**
+   * @return final omega of a worker with -whiten_dtype float32, kept in single precision
+   * for M1Task; in that case getOmega() is null.
+   */
+  public FloatMatrix getOmegaFloat() {
+    return this.omegaFloat;
+  }
+
+  public TaskEnvironment setOmegaFloat(final FloatMatrix omega) {
+    assert(this.omegaFloat == null);
+    this.omegaFloat = omega;
+    return this;
+  }
+
+  public TaskEnvironment clearOmegaFloat() {
+    assert(this.omegaFloat != null);
+    this.omegaFloat = null;
+    return this;
+  }
+
   public DoubleMatrix getSigma() {
     return this.sigma;
   }
@@ -138,11 +211,14 @@ public final class TaskEnvironment {
     return this;
   }
 
-  public DoubleMatrix getWc() {
+  /**
+   * @return wc and token counts of the documents of this partition that M3 uses.
+   */
+  public WcMatrix getWc() {
     return this.wc;
   }
 
-  public TaskEnvironment setWc(final DoubleMatrix wc) {
+  public TaskEnvironment setWc(final WcMatrix wc) {
     assert(this.wc == null);
     this.wc = wc;
     return this;
@@ -150,22 +226,7 @@ public final class TaskEnvironment {
 
   public TaskEnvironment clearWc() {
     assert(this.wc != null);
-    return this;
-  }
-
-  public DoubleMatrix getCounts() {
-    return this.counts;
-  }
-
-  public TaskEnvironment setCounts(final DoubleMatrix counts) {
-    assert(this.counts == null);
-    this.counts = counts;
-    return this;
-  }
-
-  public TaskEnvironment clearCounts() {
-    assert(this.counts != null);
-    this.counts = null;
+    this.wc = null;
     return this;
   }
 
@@ -0,0 +1,57 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task;
+
+/**
+ * Whitened projections wc = (x * omega) / sigma of the documents of one partition (n*k),
+ * along with the total token count of each document. Written by M1 and read by M3.
+ * Rows can be written by several threads at once, as long as each row is written by one thread only.
+ */
+public interface WcMatrix {
+
+  /**
+   * @return number of documents.
+   */
+  int getRows();
+
+  /**
+   * @return number of elements in each row (k).
+   */
+  int getColumns();
+
+  /**
+   * Store the row of document n and its total token count.
+   */
+  void putRow(final int n, final double[] row, final double count);
+
+  /**
+   * Copy the row of document n into out[0 .. k - 1].
+   */
+  void getRow(final int n, final double[] out);
+
+  /**
+   * @return total token count of document n.
+   */
+  double getCount(final int n);
+}
@@ -0,0 +1,323 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.m1;
+
+import com.microsoft.canberra.tf.task.ArrayWcMatrix;
+import com.microsoft.canberra.tf.task.Corpus;
+import com.microsoft.canberra.tf.task.DirectWcMatrix;
+import com.microsoft.canberra.tf.task.FloatWcMatrix;
+import com.microsoft.canberra.tf.task.WcMatrix;
+import com.microsoft.canberra.tf.util.TensorUtil;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Worker side of the first moment: for each document x, computes the whitened
+ * projection wc = (x * omega) / sigma and adds wc / |x| to m1.
+ * wc of the documents that M3 uses (|x| >= MIN_M3_COUNT) are kept in a WcMatrix
+ * of the given storage type (see -wc_storage); the other documents only contribute to m1.
+ *
+ * The kernel works directly on the primitive arrays and does not allocate per token or per document.
+ * omega is kept transposed (k*d), so that the k elements of each word are contiguous in memory,
+ * in the precision it comes in: with -whiten_dtype float32 it is never converted to double.
+ *
+ * The corpus is split into blocks of BLOCK_DOCS documents that can be processed on several threads.
+ * The first phase counts the tokens of each document, so that each block knows its range of rows
+ * in wc before any row is written. In the second phase, each block writes its own rows of wc
+ * and its own partial sum of m1, and the partial sums are added in the block order.
+ */
+public final class M1Accumulator {
+
+  /** Documents with fewer tokens do not contribute to M3. */
+  public static final double MIN_M3_COUNT = 3;
+
+  /** Number of documents in each work item. */
+  private static final int BLOCK_DOCS = 1024;
+
+  private final int dimK;
+  private final String wcStorage;
+
+  /** Transposed omega in double or single precision; the other one is null. */
+  private final double[] omegaT;
+  private final float[] omegaTFloat;
+  private final double[] sigma;
+
+  /** Total token count of each document; allocated in addAll(). */
+  private double[] counts = null;
+
+  /** First row of wc of each block. */
+  private int[] blockRows = null;
+
+  private WcMatrix wc = null;
+
+  /**
+   * @param omega whitening matrix (d*k).
+   * @param sigma denominators of the k columns of the projection; 1e-6 * sigma[0] is added
+   *   to all of them, so that the columns with a very small sigma do not blow up.
+   * @param wcStorage storage type of wc: float64, float32, or direct.
+   */
+  public M1Accumulator(final DoubleMatrix omega, final DoubleMatrix sigma, final String wcStorage) {
+
+    assert(sigma.length == omega.columns);
+
+    final int dimD = omega.rows;
+    this.dimK = omega.columns;
+    this.wcStorage = wcStorage;
+    this.omegaT = new double[this.dimK * dimD];
+    this.omegaTFloat = null;
+    this.sigma = sigma.add(1e-6 * sigma.get(0)).toArray();
+
+    TensorUtil.transpose(omega, this.omegaT);
+  }
+
+  /**
+   * Same as above, with omega in single precision.
+   * Products are accumulated in double, so the result is the same as for omega converted to double.
+   */
+  public M1Accumulator(final FloatMatrix omega, final DoubleMatrix sigma, final String wcStorage) {
+
+    assert(sigma.length == omega.columns);
+
+    final int dimD = omega.rows;
+    this.dimK = omega.columns;
+    this.wcStorage = wcStorage;
+    this.omegaT = null;
+    this.omegaTFloat = new float[this.dimK * dimD];
+    this.sigma = sigma.add(1e-6 * sigma.get(0)).toArray();
+
+    TensorUtil.transpose(omega, this.omegaTFloat);
+  }
+
+  /**
+   * Scan the corpus and fill wc (see getWc()).
+   * @param corpus documents of the partition; word IDs must be less than d.
+   * @param executor thread pool to process the blocks of documents, or null to scan on the current thread.
+   * @return sum of wc / |x| over all documents (k).
+   */
+  public DoubleMatrix addAll(final Corpus corpus, final ExecutorService executor)
+      throws InterruptedException, ExecutionException {
+
+    final int examples = corpus.size();
+    final int numBlocks = (examples + BLOCK_DOCS - 1) / BLOCK_DOCS;
+
+    this.counts = new double[examples];
+    this.blockRows = new int[numBlocks + 1];
+
+    final List<CountTask> countTasks = new ArrayList<>(numBlocks);
+    for (int block = 0; block < numBlocks; ++block) {
+      countTasks.add(new CountTask(corpus, block));
+    }
+
+    TensorUtil.invokeAll(executor, countTasks);
+
+    // Each block has the number of its rows in the next element; turn that into the first row of each block.
+    for (int block = 0; block < numBlocks; ++block) {
+      this.blockRows[block + 1] += this.blockRows[block];
+    }
+
+    this.wc = newWcMatrix(this.wcStorage, this.blockRows[numBlocks], this.dimK);
+
+    final double[] m1Blocks = new double[numBlocks * this.dimK];
+
+    final List<AddTask> addTasks = new ArrayList<>(numBlocks);
+    for (int block = 0; block < numBlocks; ++block) {
+      addTasks.add(new AddTask(corpus, block, m1Blocks));
+    }
+
+    TensorUtil.invokeAll(executor, addTasks);
+
+    final DoubleMatrix m1 = DoubleMatrix.zeros(this.dimK);
+    for (int block = 0; block < numBlocks; ++block) {
+      for (int j = 0, pos = block * this.dimK; j < this.dimK; ++j, ++pos) {
+        m1.data[j] += m1Blocks[pos];
+      }
+    }
+
+    this.counts = null;
+    this.blockRows = null;
+
+    return m1;
+  }
+
+  /**
+   * @return wc and token counts of the documents with at least MIN_M3_COUNT tokens, in the corpus order.
+   */
+  public WcMatrix getWc() {
+    return this.wc;
+  }
+
+  /**
+   * Phase 1: count the tokens of the documents of the block, and the documents to keep in wc.
+   */
+  private void countRange(final Corpus corpus, final int block) {
+
+    final int fromDoc = block * BLOCK_DOCS;
+    final int toDoc = Math.min(fromDoc + BLOCK_DOCS, corpus.size());
+
+    int rows = 0;
+    final Corpus.Cursor doc = corpus.cursor(fromDoc, toDoc);
+    for (int i = fromDoc; doc.next(); ++i) {
+      double totalCount = 0;
+      for (int t = 0; t < doc.size(); ++t) {
+        totalCount += doc.tokenCount(t);
+      }
+      this.counts[i] = totalCount;
+      if (totalCount >= MIN_M3_COUNT) {
+        ++rows;
+      }
+    }
+
+    this.blockRows[block + 1] = rows;
+  }
+
+  /**
+   * Phase 2: compute wc of the documents of the block, write the rows to keep,
+   * and accumulate the contribution of all documents to m1 in m1Out[block * k .. (block + 1) * k - 1].
+   */
+  private void addRange(final Corpus corpus, final int block, final double[] m1Out) {
+
+    final int fromDoc = block * BLOCK_DOCS;
+    final int toDoc = Math.min(fromDoc + BLOCK_DOCS, corpus.size());
+    final int offset = block * this.dimK;
+
+    final int dimK = this.dimK;
+    final double[] omega = this.omegaT;
+    final float[] omegaFloat = this.omegaTFloat;
+
+    final double[] wcRow = new double[dimK];
+    int row = this.blockRows[block];
+
+    final Corpus.Cursor doc = corpus.cursor(fromDoc, toDoc);
+    for (int i = fromDoc; doc.next(); ++i) {
+
+      Arrays.fill(wcRow, 0);
+      if (omegaFloat == null) {
+        for (int t = 0; t < doc.size(); ++t) {
+          final double count = doc.tokenCount(t);
+          final int base = doc.tokenId(t) * dimK;
+          for (int j = 0; j < dimK; ++j) {
+            wcRow[j] += omega[base + j] * count;
+          }
+        }
+      } else {
+        for (int t = 0; t < doc.size(); ++t) {
+          final double count = doc.tokenCount(t);
+          final int base = doc.tokenId(t) * dimK;
+          for (int j = 0; j < dimK; ++j) {
+            wcRow[j] += omegaFloat[base + j] * count;
+          }
+        }
+      }
+
+      final double totalCount = this.counts[i];
+      for (int j = 0; j < dimK; ++j) {
+        wcRow[j] /= this.sigma[j];
+        m1Out[offset + j] += wcRow[j] / totalCount;
+      }
+
+      if (totalCount >= MIN_M3_COUNT) {
+        this.wc.putRow(row++, wcRow, totalCount);
+      }
+    }
+
+    assert(row == this.blockRows[block + 1]);
+  }
+
+  /**
+   * @return empty wc of the given -wc_storage type.
+   * @throws IllegalArgumentException if the storage type is unknown.
+   */
+  private static WcMatrix newWcMatrix(final String storage, final int rows, final int columns) {
+    switch (storage) {
+    case "float64":
+      return new ArrayWcMatrix(rows, columns);
+    case "float32":
+      return new FloatWcMatrix(rows, columns);
+    case "direct":
+      return new DirectWcMatrix(rows, columns);
+    default:
+      throw new IllegalArgumentException("Unknown wc storage: " + storage);
+    }
+  }
+
+  /**
+   * Work item of the corpus scan: one block of documents.
+   */
+  private abstract static class BlockTask implements Callable<Void> {
+
+    protected final Corpus corpus;
+    protected final int block;
+
+    protected BlockTask(final Corpus corpus, final int block) {
+      this.corpus = corpus;
+      this.block = block;
+    }
+
+    @Override
+    public abstract Void call();
+  }
+
+  /**
+   * Phase 1 of the corpus scan for one block of documents.
+   */
+  private final class CountTask extends BlockTask {
+
+    private CountTask(final Corpus corpus, final int block) {
+      super(corpus, block);
+    }
+
+    @Override
+    public Void call() {
+      countRange(this.corpus, this.block);
+      return null;
+    }
+  }
+
+  /**
+   * Phase 2 of the corpus scan for one block of documents.
+   */
+  private final class AddTask extends BlockTask {
+
+    private final double[] m1Out;
+
+    private AddTask(final Corpus corpus, final int block, final double[] m1Out) {
+      super(corpus, block);
+      this.m1Out = m1Out;
+    }
+
+    @Override
+    public Void call() {
+      addRange(this.corpus, this.block, this.m1Out);
+      return null;
+    }
+  }
+}
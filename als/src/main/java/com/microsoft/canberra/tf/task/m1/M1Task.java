@@ -26,7 +26,6 @@ package com.microsoft.canberra.tf.task.m1;
 import com.microsoft.canberra.tf.Launch;
 import com.microsoft.canberra.tf.taskgroup.TaskGroupDescriptor;
 import com.microsoft.canberra.tf.task.TaskEnvironment;
-import com.microsoft.canberra.tf.task.Document;
 import org.apache.reef.annotations.audience.TaskSide;
 import org.apache.reef.driver.task.TaskConfigurationOptions;
 import org.apache.reef.io.network.group.api.operators.Broadcast;
@@ -36,8 +35,11 @@ import org.apache.reef.io.network.group.api.task.GroupCommClient;
 import org.apache.reef.task.Task;
 import org.apache.reef.tang.annotations.Parameter;
 import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
 
 import javax.inject.Inject;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -50,6 +52,8 @@ public final class M1Task implements Task {
 
   private final int dimD;
   private final int dimK;
+  private final int numThreads;
+  private final String wcStorage;
 
   private final TaskEnvironment env;
 
@@ -59,76 +63,66 @@ public final class M1Task implements Task {
   @Inject
   public M1Task(
       final @Parameter(TaskConfigurationOptions.Identifier.class) String taskId,
-      final @Parameter(Launch.DimD.class) int dimD,
       final @Parameter(Launch.DimK.class) int dimK,
+      final @Parameter(Launch.WorkerThreads.class) int numThreads,
+      final @Parameter(Launch.WcStorage.class) String wcStorage,
       final GroupCommClient groupCommClient,
       final TaskEnvironment env) {
 
     final CommunicationGroupClient commGroup =
         groupCommClient.getCommunicationGroup(DESCRIPTOR.getCommGroupIdClass());
 
-    this.dimD = dimD;
+    this.dimD = env.getDimD();
     this.dimK = dimK;
+    this.numThreads = numThreads;
+    this.wcStorage = wcStorage;
     this.env = env;
 
     this.modelReceiver = commGroup.getBroadcastReceiver(DESCRIPTOR.getBroadcastIdClass());
     this.resultSender = commGroup.getReduceSender(DESCRIPTOR.getReduceIdClass());
 
-    LOG.log(Level.FINEST, "M1Task {0} created: d*k = {1} * {2}", new Object[]{ taskId, dimD, dimK });
+    LOG.log(Level.FINEST, "M1Task {0} created: d*k = {1} * {2} threads: {3} wc storage: {4}",
+        new Object[]{ taskId, this.dimD, dimK, numThreads, wcStorage });
   }
 
   @Override
   public byte[] call(final byte[] memento) throws Exception {
 
     final int examples = this.env.getExamples();
-    final DoubleMatrix omega = this.env.getOmega();
+    final FloatMatrix omegaFloat = this.env.getOmegaFloat();
 
-    LOG.log(Level.FINEST, "M1Task started: {0} examples", examples);
-
-    LOG.log(Level.FINEST, "M1Task omega[0] = {0}", omega.getRow(0));
-
-    final DoubleMatrix m1 = DoubleMatrix.zeros(this.dimK);
-    // final DoubleMatrix m1raw = DoubleMatrix.zeros(this.dimD);
-    final DoubleMatrix wc = DoubleMatrix.zeros(examples, this.dimK);
-    final DoubleMatrix counts = DoubleMatrix.zeros(examples);
-
-    int i = 0;
-    final DoubleMatrix wcRow = DoubleMatrix.zeros(this.dimK);
-    final DoubleMatrix m1Row = DoubleMatrix.zeros(this.dimD);
+    LOG.log(Level.FINEST, "M1Task started: {0} examples, float32 omega: {1}",
+        new Object[] { examples, omegaFloat != null });
 
     final DoubleMatrix sigma = this.modelReceiver.receive();
-    sigma.addi(1e-6 * sigma.get(0));
-
-    for (final Document doc : this.env.getDocuments()) {
 
-      wcRow.fill(0);
-      m1Row.fill(0);
-      double totalCount = 0;
-      for (final Document.Token token : doc) {
-        m1Row.put(token.id, m1Row.get(token.id) + token.count);
-        wcRow.addi(omega.getRow(token.id).mul(token.count));
-        totalCount += token.count;
-      }
-
-      wcRow.divi(sigma);
-      wc.putRow(i, wcRow);
+    // The accumulator keeps its own transposed copy of omega, so the one in the environment is dropped.
+    final M1Accumulator acc;
+    if (omegaFloat != null) {
+      acc = new M1Accumulator(omegaFloat, sigma, this.wcStorage);
+      this.env.clearOmegaFloat();
+    } else {
+      acc = new M1Accumulator(this.env.getOmega(), sigma, this.wcStorage);
+      this.env.clearOmega();
+    }
 
-      // LOG.log(Level.FINEST, "M1Task wc {0} count = {1} :: {2}",
-      //     new Object[] { doc.getId(), totalCount, wcRow });
+    final ExecutorService executor = this.numThreads > 1 ? Executors.newFixedThreadPool(this.numThreads) : null;
 
-      m1.addi(wcRow.divi(totalCount));
-      // m1raw.addi(m1Row.divi(totalCount));
-      counts.put(i, totalCount);
-      ++i;
+    final DoubleMatrix m1;
+    try {
+      m1 = acc.addAll(this.env.getCorpus(), executor);
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
     }
 
     this.resultSender.send(new DoubleMatrix[] { m1 }); // , m1raw });
 
-    this.env.setWc(wc)
-            .setCounts(counts)
-            .clearDocuments();
+    this.env.setWc(acc.getWc())
+            .clearCorpus();
 
-    LOG.log(Level.FINEST, "M1Task complete");
+    LOG.log(Level.FINEST, "M1Task complete: {0} documents for M3", acc.getWc().getRows());
 
     return null;
   }
@@ -0,0 +1,155 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.m3;
+
+import com.microsoft.canberra.tf.util.SymmetricTensor;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * Worker side of the third moment: sums the contributions of the documents to M3
+ * in the packed symmetric form, computing only the entries T[i][j][l] with i <= j <= l.
+ *
+ * For a document with whitened projection w and length len, the contribution is
+ *   scale3 * w x w x w - scale2 * (m1 x w x w + w x m1 x w + w x w x m1) + topic shift terms,
+ * where the topic shift terms only touch the entries with at least two equal indices.
+ * Only the first term needs O(k^3) work per document. All other terms are linear in
+ * sum(scale2 * w x w), sum(scale3 * w x w), sum(scale2 * w) and sum(scale3 * w),
+ * so these are accumulated instead, and added to the tensor once in getResult().
+ */
+public final class M3Accumulator {
+
+  private final double alpha0;
+  private final int dimK;
+  private final double[] m1;
+
+  private final SymmetricTensor t;
+
+  /** Upper triangles (j >= i, at i * k + j) of sum(scale2 * w x w) and sum(scale3 * w x w). */
+  private final double[] sum2ww;
+  private final double[] sum3ww;
+
+  /** sum(scale2 * w) and sum(scale3 * w). */
+  private final double[] sum2w;
+  private final double[] sum3w;
+
+  private int examples = 0;
+
+  /** True once getResult() has added the accumulated sums to the tensor. */
+  private boolean complete = false;
+
+  public M3Accumulator(final double alpha0, final DoubleMatrix m1) {
+    this.alpha0 = alpha0;
+    this.dimK = m1.length;
+    this.m1 = m1.toArray();
+    this.t = new SymmetricTensor(this.dimK);
+    this.sum2ww = new double[this.dimK * this.dimK];
+    this.sum3ww = new double[this.dimK * this.dimK];
+    this.sum2w = new double[this.dimK];
+    this.sum3w = new double[this.dimK];
+  }
+
+  /**
+   * Add the document with whitened projection wc (k) and total token count len >= 3.
+   */
+  public void add(final double[] wc, final double len) {
+
+    assert(!this.complete);
+
+    final double scale2fac = this.alpha0 * (this.alpha0 + 1) / (2. * len * (len - 1));
+    final double scale3fac = (this.alpha0 + 1) * (this.alpha0 + 2) / (2. * len * (len - 1) * (len - 2));
+
+    this.t.addOuter(scale3fac, wc);
+
+    for (int i = 0; i < this.dimK; ++i) {
+      final double w2 = scale2fac * wc[i];
+      final double w3 = scale3fac * wc[i];
+      for (int j = i, pos = i * this.dimK + i; j < this.dimK; ++j, ++pos) {
+        this.sum2ww[pos] += w2 * wc[j];
+        this.sum3ww[pos] += w3 * wc[j];
+      }
+      this.sum2w[i] += w2;
+      this.sum3w[i] += w3;
+    }
+
+    ++this.examples;
+  }
+
+  public int getExamples() {
+    return this.examples;
+  }
+
+  /**
+   * Add the terms that are linear in the accumulated sums to the tensor.
+   * No documents can be added after that.
+   * @return sum of the contributions of all documents to M3.
+   */
+  public SymmetricTensor getResult() {
+
+    if (this.complete) {
+      return this.t;
+    }
+    this.complete = true;
+
+    final int dimK = this.dimK;
+    final double[] m = this.m1;
+    final double[] data = this.t.getData().data;
+
+    int pos = 0;
+    for (int i = 0; i < dimK; ++i) {
+      for (int j = i; j < dimK; ++j) {
+        for (int l = j; l < dimK; ++l) {
+
+          // Dirichlet 2nd order term
+          double value = -(m[i] * this.sum2ww[j * dimK + l]
+              + m[j] * this.sum2ww[i * dimK + l]
+              + m[l] * this.sum2ww[i * dimK + j]);
+
+          // Topic shift 2..4th terms: each permutation of (p, p, q) gets
+          // -scale3 * w[p] * w[q] + scale2 * w[p] * m1[q], and (p, p, p) gets it three times.
+          // Topic shift 5th term: 2 * k * scale3 * w[p] on the diagonal.
+          if (i == j && j == l) {
+            value += 3 * this.shift(i, i) + 2.0 * dimK * this.sum3w[i];
+          } else if (i == j) {
+            value += this.shift(i, l);
+          } else if (j == l) {
+            value += this.shift(j, i);
+          }
+
+          data[pos++] += value;
+        }
+      }
+    }
+
+    return this.t;
+  }
+
+  /**
+   * @return sum of -scale3 * w[p] * w[q] + scale2 * w[p] * m1[q] over all documents.
+   */
+  private double shift(final int p, final int q) {
+    final int pos = Math.min(p, q) * this.dimK + Math.max(p, q);
+    return -this.sum3ww[pos] + this.sum2w[p] * this.m1[q];
+  }
+}
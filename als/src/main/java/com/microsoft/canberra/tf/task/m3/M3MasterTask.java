@@ -80,7 +80,7 @@ public final class M3MasterTask implements Task {
 
     final DoubleMatrix received[] = this.resultReceiver.reduce();
     final double validExamples = received[0].get(0);
-    final DoubleMatrix m3 = received[1];
+    final DoubleMatrix m3 = received[1]; // unique entries of the symmetric tensor, see SymmetricTensor
 
     LOG.log(Level.FINEST, "M3MasterTask: got data for {0} valid examples; M3 = {1}",
         new Object[] { validExamples, m3 });
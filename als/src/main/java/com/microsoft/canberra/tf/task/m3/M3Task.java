@@ -27,6 +27,9 @@ import com.microsoft.canberra.tf.taskgroup.TaskGroupDescriptor;
 import com.microsoft.canberra.tf.Launch;
 import com.microsoft.canberra.tf.SharedContextTaskGroup;
 import com.microsoft.canberra.tf.task.TaskEnvironment;
+import com.microsoft.canberra.tf.task.WcMatrix;
+import com.microsoft.canberra.tf.task.m1.M1Accumulator;
+import com.microsoft.canberra.tf.util.SymmetricTensor;
 import org.apache.reef.annotations.audience.TaskSide;
 import org.apache.reef.driver.task.TaskConfigurationOptions;
 import org.apache.reef.io.network.group.api.operators.Broadcast;
@@ -43,7 +46,9 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Compute part of the M3 moments tensor.
+ * Compute part of the M3 moments tensor. M3 is symmetric, so the workers accumulate and
+ * reduce only its unique entries (see SymmetricTensor), and each worker unpacks
+ * the full slices of its range of rows startK .. endK - 1 for ALS.
  */
 @TaskSide
 public final class M3Task implements Task {
@@ -95,73 +100,32 @@ public final class M3Task implements Task {
 
     LOG.log(Level.FINEST, "M3Task started: {0} examples", examples);
 
-    final DoubleMatrix wcSlice = this.env.getWc();
-    final DoubleMatrix counts = this.env.getCounts();
-
-    // LOG.log(Level.FINEST, "M3Task wc = {0}", wcSlice);
-    // LOG.log(Level.FINEST, "M3Task counts = {0}", counts);
+    // Documents with fewer than MIN_M3_COUNT tokens are not stored in wc.
+    final WcMatrix wcSlice = this.env.getWc();
 
     final DoubleMatrix m1 = this.modelReceiver.receive();
 
     LOG.log(Level.FINEST, "M3Task M1 = {0}", m1);
 
-    DoubleMatrix t = DoubleMatrix.zeros(this.dimK, this.dimK * this.dimK);
-
-    double validExamples = 0;
-    for (int n = 0; n < examples; ++n) {
-
-      final double len = counts.get(n);
-      final DoubleMatrix wc = wcSlice.getRow(n);
-
-      if (len < 3) {
-        continue;
-      }
-
-      ++validExamples;
-      final double scale2fac = this.alpha0 * (this.alpha0 + 1) / (2. * len * (len - 1));
-      final double scale3fac = (this.alpha0 + 1) * (this.alpha0 + 2) / (2. * len * (len - 1) * (len - 2));
-
-      for (int i = 0; i < this.dimK; ++i) {
-
-        final int iSlice = this.dimK * i;
+    final M3Accumulator acc = new M3Accumulator(this.alpha0, m1);
 
-        for (int j = 0; j < this.dimK; ++j) {
-
-          final int jSlice = this.dimK * j;
-
-          for (int k = 0; k < this.dimK; ++k) {
-            t.put(i, jSlice + k, t.get(i, jSlice + k)
-                // Topic shift scale3fac 1st term
-                + scale3fac * wc.get(i) * wc.get(j) * wc.get(k)
-                // Dirichlet 2nd order term
-                - scale2fac * m1.get(i) * wc.get(j) * wc.get(k)
-                - scale2fac * wc.get(i) * m1.get(j) * wc.get(k)
-                - scale2fac * wc.get(i) * wc.get(j) * m1.get(k));
-          }
-
-          // Topic shift 2..4th terms
-          t.put(i, iSlice + j, t.get(i, iSlice + j) - scale3fac * wc.get(i) * wc.get(j) + scale2fac * wc.get(i) * m1.get(j));
-          t.put(i, jSlice + i, t.get(i, jSlice + i) - scale3fac * wc.get(i) * wc.get(j) + scale2fac * wc.get(i) * m1.get(j));
-          t.put(i, jSlice + j, t.get(i, jSlice + j) - scale3fac * wc.get(i) * wc.get(j) + scale2fac * m1.get(i) * wc.get(j));
-
-          // Topic shift scale3fac 5th term
-          t.put(i, iSlice + i, t.get(i, iSlice + i) + 2.0 * scale3fac * wc.get(i));
-        }
-      }
+    final double[] wc = new double[this.dimK];
+    for (int n = 0; n < wcSlice.getRows(); ++n) {
+      final double len = wcSlice.getCount(n);
+      assert(len >= M1Accumulator.MIN_M3_COUNT);
+      wcSlice.getRow(n, wc);
+      acc.add(wc, len);
     }
 
-    LOG.log(Level.FINEST, "M3Task send Ta[] slice: {0} valid examples", validExamples);
+    final double validExamples = acc.getExamples();
 
-    this.resultSender.send(new DoubleMatrix[] { DoubleMatrix.scalar(validExamples), t });
+    LOG.log(Level.FINEST, "M3Task send packed M3: {0} valid examples", validExamples);
 
-    {
-      final int tRows[] = new int[this.endK - this.startK];
-      for (int i = 0; i < tRows.length; ++i) {
-        tRows[i] = this.startK + i;
-      }
+    this.resultSender.send(new DoubleMatrix[] { DoubleMatrix.scalar(validExamples), acc.getResult().getData() });
 
-      t = this.modelReceiver.receive().getRows(tRows);
-    }
+    // ALS needs the full slices, but only of the rows of this task.
+    final DoubleMatrix t =
+        new SymmetricTensor(this.dimK, this.modelReceiver.receive()).unpackRows(this.startK, this.endK);
 
     final double alpha0sq = this.alpha0 * this.alpha0;
     for (int i = this.startK; i < this.endK; ++i) {
@@ -177,7 +141,6 @@ public final class M3Task implements Task {
 
     this.env.clearM1()
             .clearWc()
-            .clearCounts()
             .setT(t);
 
     LOG.log(Level.FINEST, "M3Task complete");
@@ -27,7 +27,7 @@ import com.microsoft.canberra.tf.Launch;
 import com.microsoft.canberra.tf.task.TaskEnvironment;
 import com.microsoft.canberra.tf.taskgroup.TaskGroupDescriptor;
 
-import com.microsoft.canberra.tf.util.DoubleMatrixTextIO;
+import com.microsoft.canberra.tf.util.DoubleMatrixIO;
 import org.apache.reef.annotations.audience.TaskSide;
 import org.apache.reef.driver.task.TaskConfigurationOptions;
 import org.apache.reef.io.network.group.api.operators.Broadcast;
@@ -61,7 +61,7 @@ public final class UnwhitenMasterTask implements Task {
   private final double alpha0;
   private final String outputPath;
 
-  private final DoubleMatrixTextIO hdfsIO;
+  private final DoubleMatrixIO hdfsIO;
   private final TaskEnvironment env;
 
   private final Broadcast.Sender<DoubleMatrix[]> modelSender;
@@ -74,7 +74,7 @@ public final class UnwhitenMasterTask implements Task {
       final @Parameter(Launch.Alpha0.class) double alpha0,
       final @Parameter(Launch.Output.class) String outputPath,
       final GroupCommClient groupCommClient,
-      final DoubleMatrixTextIO hdfsIO,
+      final DoubleMatrixIO hdfsIO,
       final TaskEnvironment env) {
 
     this.dimK = dimK;
@@ -124,11 +124,25 @@ public final class UnwhitenMasterTask implements Task {
     LOG.log(Level.FINEST, "UnwhitenMasterTask complete: z = {0}", z);
 
     this.hdfsIO.writeMatrix(alpha, this.outputPath + ".alpha");
-    this.hdfsIO.writeMatrix(z, this.outputPath + ".beta");
+    final int[] vocabulary = this.env.getVocabulary();
+    this.hdfsIO.writeMatrix(vocabulary == null ? z : expandRows(z, vocabulary), this.outputPath + ".beta");
 
     return null;
   }
 
+  /**
+   * Map rows of the topic matrix from the dense word IDs of the pruned vocabulary
+   * back to the original word IDs. Rows of the pruned words are zero.
+   */
+  private static DoubleMatrix expandRows(final DoubleMatrix z, final int[] vocabulary) {
+    final int dimD = vocabulary.length > 0 ? vocabulary[vocabulary.length - 1] + 1 : 0;
+    final DoubleMatrix res = DoubleMatrix.zeros(dimD, z.columns);
+    for (int i = 0; i < vocabulary.length; ++i) {
+      res.putRow(vocabulary[i], z.getRow(i));
+    }
+    return res;
+  }
+
   private static DoubleMatrix unwhitenTopic(final DoubleMatrix v) {
 
     DoubleMatrix z = DoubleMatrix.zeros(v.length);
@@ -62,12 +62,11 @@ public final class UnwhitenTask implements Task {
   @Inject
   public UnwhitenTask(
       final @Parameter(TaskConfigurationOptions.Identifier.class) String taskId,
-      final @Parameter(Launch.DimD.class) int dimD,
       final @Parameter(Launch.DimK.class) int dimK,
       final GroupCommClient groupCommClient,
       final TaskEnvironment env) {
 
-    this.dimD = dimD;
+    this.dimD = env.getDimD();
     this.dimK = dimK;
     this.env = env;
 
@@ -78,7 +77,7 @@ public final class UnwhitenTask implements Task {
     this.resultSender = commGroup.getReduceSender(DESCRIPTOR.getReduceIdClass());
 
     LOG.log(Level.FINEST,
-        "UnwhitenTask {0} created: d*k = {1} * {2}", new Object[] { taskId, dimD, dimK });
+        "UnwhitenTask {0} created: d*k = {1} * {2}", new Object[] { taskId, this.dimD, dimK });
   }
 
   @Override
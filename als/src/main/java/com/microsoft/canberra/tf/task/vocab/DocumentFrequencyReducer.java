@@ -0,0 +1,90 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.vocab;
+
+import org.apache.reef.io.network.group.api.operators.Reduce;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+
+/**
+ * Merges document frequencies of the partitions.
+ * Element 0 of each message is the number of documents, followed by
+ * (word ID, number of documents that contain the word) pairs sorted by word ID.
+ * Each partition only lists the words it has seen, so the memory and the traffic
+ * are proportional to the number of distinct words, not to the largest word ID.
+ */
+public class DocumentFrequencyReducer implements Reduce.ReduceFunction<int[]> {
+
+  @Inject
+  public DocumentFrequencyReducer() {
+  }
+
+  @Override
+  public synchronized int[] apply(final Iterable<int[]> iter) {
+
+    int[] res = new int[1];
+
+    for (final int[] df : iter) {
+      res = merge(res, df);
+    }
+
+    return res;
+  }
+
+  /**
+   * @return sum of two document frequency messages; pairs are merged by word ID.
+   */
+  static int[] merge(final int[] a, final int[] b) {
+
+    final int[] res = new int[a.length + b.length - 1];
+    res[0] = a[0] + b[0];
+
+    int i = 1;
+    int j = 1;
+    int k = 1;
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) {
+        res[k++] = a[i++];
+        res[k++] = a[i++];
+      } else if (a[i] > b[j]) {
+        res[k++] = b[j++];
+        res[k++] = b[j++];
+      } else {
+        res[k++] = a[i];
+        res[k++] = a[i + 1] + b[j + 1];
+        i += 2;
+        j += 2;
+      }
+    }
+    while (i < a.length) {
+      res[k++] = a[i++];
+    }
+    while (j < b.length) {
+      res[k++] = b[j++];
+    }
+
+    return k == res.length ? res : Arrays.copyOf(res, k);
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.vocab;
+
+import com.microsoft.canberra.tf.Launch;
+import com.microsoft.canberra.tf.task.TaskEnvironment;
+import com.microsoft.canberra.tf.taskgroup.TaskGroupDescriptor;
+
+import org.apache.reef.annotations.audience.TaskSide;
+import org.apache.reef.driver.task.TaskConfigurationOptions;
+import org.apache.reef.io.network.group.api.operators.Broadcast;
+import org.apache.reef.io.network.group.api.operators.Reduce;
+import org.apache.reef.io.network.group.api.task.CommunicationGroupClient;
+import org.apache.reef.io.network.group.api.task.GroupCommClient;
+import org.apache.reef.task.Task;
+import org.apache.reef.tang.annotations.Parameter;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collect document frequencies from all partitions, drop words that appear
+ * in too few or too many documents, and broadcast the remaining vocabulary:
+ * a sorted array of the original word IDs, indexed by the new dense word ID.
+ */
+@TaskSide
+public final class VocabMasterTask implements Task {
+
+  private static final TaskGroupDescriptor DESCRIPTOR = VocabTaskGroupDescriptor.INSTANCE;
+
+  private static final Logger LOG = Logger.getLogger(VocabMasterTask.class.getName());
+
+  private final int minDf;
+  private final double maxDf;
+  private final TaskEnvironment env;
+
+  private final Broadcast.Sender<int[]> modelSender;
+  private final Reduce.Receiver<int[]> resultReceiver;
+
+  @Inject
+  public VocabMasterTask(
+      final @Parameter(TaskConfigurationOptions.Identifier.class) String taskId,
+      final @Parameter(Launch.MinDf.class) int minDf,
+      final @Parameter(Launch.MaxDf.class) double maxDf,
+      final GroupCommClient groupCommClient,
+      final TaskEnvironment env) {
+
+    this.minDf = minDf;
+    this.maxDf = maxDf;
+    this.env = env;
+
+    final CommunicationGroupClient commGroup =
+        groupCommClient.getCommunicationGroup(DESCRIPTOR.getCommGroupIdClass());
+
+    this.modelSender = commGroup.getBroadcastSender(DESCRIPTOR.getBroadcastIdClass());
+    this.resultReceiver = commGroup.getReduceReceiver(DESCRIPTOR.getReduceIdClass());
+
+    LOG.log(Level.FINEST, "VocabMasterTask {0} created: min_df = {1} max_df = {2}",
+        new Object[] { taskId, minDf, maxDf });
+  }
+
+  @Override
+  public byte[] call(final byte[] memento) throws Exception {
+
+    LOG.log(Level.FINEST, "VocabMasterTask started");
+
+    final int[] df = this.resultReceiver.reduce();
+    final int examples = df[0];
+    final double maxDocs = this.maxDf * examples;
+
+    // Pairs of (word ID, document frequency), sorted by word ID.
+    final int numWords = (df.length - 1) / 2;
+
+    int dimD = 0;
+    final int[] vocabulary = new int[numWords];
+    for (int i = 0; i < numWords; ++i) {
+      final int count = df[2 * i + 2];
+      if (count > 0 && count >= this.minDf && count <= maxDocs) {
+        vocabulary[dimD++] = df[2 * i + 1];
+      }
+    }
+
+    final int[] result = Arrays.copyOf(vocabulary, dimD);
+
+    LOG.log(Level.INFO, "Vocabulary: {0} of {1} words kept, {2} examples",
+        new Object[] { dimD, numWords, examples });
+
+    this.modelSender.send(result);
+
+    this.env.setVocabulary(result);
+
+    LOG.log(Level.FINEST, "VocabMasterTask complete");
+
+    return null;
+  }
+}
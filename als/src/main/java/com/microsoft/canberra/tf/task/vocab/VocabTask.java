@@ -0,0 +1,146 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.vocab;
+
+import com.microsoft.canberra.tf.task.Document;
+import com.microsoft.canberra.tf.task.TaskEnvironment;
+import com.microsoft.canberra.tf.taskgroup.TaskGroupDescriptor;
+import com.microsoft.canberra.tf.util.IntIndexMap;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.reef.annotations.audience.TaskSide;
+import org.apache.reef.driver.task.TaskConfigurationOptions;
+import org.apache.reef.io.data.loading.api.DataSet;
+import org.apache.reef.io.network.group.api.operators.Broadcast;
+import org.apache.reef.io.network.group.api.operators.Reduce;
+import org.apache.reef.io.network.group.api.task.CommunicationGroupClient;
+import org.apache.reef.io.network.group.api.task.GroupCommClient;
+import org.apache.reef.io.network.util.Pair;
+import org.apache.reef.task.Task;
+import org.apache.reef.tang.annotations.Parameter;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Scan the partition once, without keeping the documents, and count
+ * the number of documents each word appears in. Word IDs must be non-negative,
+ * and less than -d if it is given; otherwise they can be sparse.
+ * Then receive the pruned vocabulary from the master and keep it in the task
+ * environment, so that InputData can remap word IDs when it loads the corpus.
+ */
+@TaskSide
+public final class VocabTask implements Task {
+
+  private static final TaskGroupDescriptor DESCRIPTOR = VocabTaskGroupDescriptor.INSTANCE;
+
+  private static final Logger LOG = Logger.getLogger(VocabTask.class.getName());
+
+  private final DataSet<LongWritable, Document> dataSet;
+  private final TaskEnvironment env;
+
+  private final Broadcast.Receiver<int[]> modelReceiver;
+  private final Reduce.Sender<int[]> resultSender;
+
+  @Inject
+  public VocabTask(
+      final @Parameter(TaskConfigurationOptions.Identifier.class) String taskId,
+      final GroupCommClient groupCommClient,
+      final DataSet<LongWritable, Document> dataSet,
+      final TaskEnvironment env) {
+
+    this.dataSet = dataSet;
+    this.env = env;
+
+    final CommunicationGroupClient commGroup =
+        groupCommClient.getCommunicationGroup(DESCRIPTOR.getCommGroupIdClass());
+
+    this.modelReceiver = commGroup.getBroadcastReceiver(DESCRIPTOR.getBroadcastIdClass());
+    this.resultSender = commGroup.getReduceSender(DESCRIPTOR.getReduceIdClass());
+
+    LOG.log(Level.FINEST, "VocabTask {0} created", taskId);
+  }
+
+  @Override
+  public byte[] call(final byte[] memento) throws Exception {
+
+    LOG.log(Level.FINEST, "VocabTask started");
+
+    final int dimD = this.env.getDimD();
+
+    // Word IDs can be sparse (e.g. hashed), so count into dense indices of the distinct words.
+    final IntIndexMap words = new IntIndexMap(1024);
+    int[] df = new int[1024];
+    // Number of the last document that contained the word, to count each word once per document.
+    int[] lastDoc = new int[df.length];
+    int examples = 0;
+
+    for (final Pair<LongWritable, Document> keyValue : this.dataSet) {
+
+      final Document doc = keyValue.getSecond();
+      ++examples;
+
+      for (int t = 0; t < doc.size(); ++t) {
+        final int id = doc.tokenId(t);
+        if (id < 0 || (dimD > 0 && id >= dimD)) {
+          throw new IllegalArgumentException("Word ID " + id + " in document " + doc.getId()
+              + (dimD > 0 ? " is out of range [0, " + dimD + ")" : " is negative"));
+        }
+        final int w = words.add(id);
+        if (w == df.length) {
+          df = Arrays.copyOf(df, 2 * df.length);
+          lastDoc = Arrays.copyOf(lastDoc, df.length);
+        }
+        if (lastDoc[w] != examples) {
+          lastDoc[w] = examples;
+          ++df[w];
+        }
+      }
+    }
+
+    // Number of documents, followed by (word ID, document frequency) pairs sorted by word ID.
+    final int[] ids = words.keys();
+    Arrays.sort(ids);
+    final int[] result = new int[1 + 2 * ids.length];
+    result[0] = examples;
+    for (int i = 0; i < ids.length; ++i) {
+      result[2 * i + 1] = ids[i];
+      result[2 * i + 2] = df[words.indexOf(ids[i])];
+    }
+
+    LOG.log(Level.FINEST, "VocabTask send df: {0} examples, {1} words",
+        new Object[] { examples, ids.length });
+
+    this.resultSender.send(result);
+
+    final int[] vocabulary = this.modelReceiver.receive();
+    this.env.setVocabulary(vocabulary);
+
+    LOG.log(Level.FINEST, "VocabTask complete: d = {0}", vocabulary.length);
+
+    return null;
+  }
+}
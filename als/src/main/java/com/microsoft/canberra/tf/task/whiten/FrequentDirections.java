@@ -0,0 +1,284 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.whiten;
+
+import com.microsoft.canberra.tf.task.Document;
+import com.microsoft.canberra.tf.task.Tokens;
+import com.microsoft.canberra.tf.util.TensorUtil;
+
+import org.apache.reef.wake.EventHandler;
+import org.jblas.DoubleMatrix;
+import org.jblas.Eigen;
+
+import java.util.Arrays;
+
+/**
+ * One-pass sketch of the second-order moment of a partition. Each document x with m tokens
+ * contributes (x x^T - diag(x)) / (m * (m - 1)) to M2. The diagonal part and the word
+ * frequencies muX are accumulated exactly, as d-vectors. The rank-one parts are rows
+ * a = x / sqrt(m * (m - 1)) of a matrix A, and A^T A is approximated by B^T B with
+ * a Frequent Directions sketch B of size l*d (Liberty, 2013).
+ *
+ * Updating a dense l*d sketch after each sparse row would cost O(l * d) per document.
+ * Instead, rows are buffered in sparse form, and a full buffer S is first compressed
+ * to l rows C with C^T C ~ S^T S by a randomized range finder that works directly
+ * on the sparse rows, as in Sparse Frequent Directions (Ghashami et al., 2016).
+ * Then [B; C] is shrunk back to l rows.
+ *
+ * Sketches of several partitions are merged by the same shrink operation,
+ * see FrequentDirectionsReducer.
+ *
+ * Each shrink subtracts some delta from all squared singular values, and the sum of the deltas,
+ * the shrink mass, bounds the spectral norm of the error A^T A - B^T B introduced by the shrinks
+ * (the range finder of the buffer adds its own error on top of that).
+ */
+public final class FrequentDirections implements EventHandler<Document> {
+
+  /** Max. number of buffered tokens before the buffer is compressed into the sketch. */
+  private static final int MAX_BUFFER_TOKENS = 1 << 22;
+
+  /** Number of power iterations of the range finder. */
+  private static final int POWER_ITERATIONS = 1;
+
+  private static final int INITIAL_ROWS = 1024;
+
+  private final int dimD;
+  private final int size;
+  private final int bufferTokens;
+
+  private final DoubleMatrix muX;
+  private final DoubleMatrix diag;
+  private DoubleMatrix sketch;
+
+  /** Sum of the deltas of all shrinks of this sketch (1*1). */
+  private final DoubleMatrix shrinkMass = DoubleMatrix.zeros(1);
+
+  /** Buffered rows of A in CSR format. */
+  private int[] rowOffsets = new int[INITIAL_ROWS + 1];
+  private int[] ids;
+  private double[] values;
+  private int numRows = 0;
+
+  private int examples = 0;
+  private int numFlushes = 0;
+
+  /**
+   * @param dimD number of columns (words).
+   * @param size number of rows of the sketch, l.
+   */
+  public FrequentDirections(final int dimD, final int size) {
+    this.dimD = dimD;
+    this.size = size;
+    this.bufferTokens = (int) Math.min(MAX_BUFFER_TOKENS, (long) size * dimD);
+    this.muX = DoubleMatrix.zeros(dimD);
+    this.diag = DoubleMatrix.zeros(dimD);
+    this.sketch = DoubleMatrix.zeros(size, dimD);
+    this.ids = new int[Math.min(this.bufferTokens, INITIAL_ROWS * 64)];
+    this.values = new double[this.ids.length];
+  }
+
+  @Override
+  public void onNext(final Document doc) {
+    this.add(doc);
+  }
+
+  public void add(final Tokens doc) {
+
+    ++this.examples;
+
+    final int size = doc.size();
+
+    double totalCount = 0;
+    for (int t = 0; t < size; ++t) {
+      totalCount += doc.tokenCount(t);
+    }
+
+    if (totalCount < 2) {
+      return;
+    }
+
+    if (this.numRows + 1 >= this.rowOffsets.length) {
+      this.rowOffsets = Arrays.copyOf(this.rowOffsets, this.rowOffsets.length * 2);
+    }
+
+    final int start = this.rowOffsets[this.numRows];
+    if (start + size > this.ids.length) {
+      final int capacity = Math.max(start + size, this.ids.length * 2);
+      this.ids = Arrays.copyOf(this.ids, capacity);
+      this.values = Arrays.copyOf(this.values, capacity);
+    }
+
+    final double denom = 1.0 / (totalCount * (totalCount - 1.0));
+    final double scale = Math.sqrt(denom);
+
+    final double[] mu = this.muX.data;
+    final double[] dg = this.diag.data;
+
+    for (int t = 0; t < size; ++t) {
+      final int id = doc.tokenId(t);
+      final double count = doc.tokenCount(t);
+      this.ids[start + t] = id;
+      this.values[start + t] = count * scale;
+      dg[id] += count * denom;
+      mu[id] += count / totalCount;
+    }
+
+    ++this.numRows;
+    this.rowOffsets[this.numRows] = start + size;
+
+    if (start + size >= this.bufferTokens) {
+      this.flush();
+    }
+  }
+
+  public int getExamples() {
+    return this.examples;
+  }
+
+  /**
+   * @return partial results to merge: number of examples, muX (d), diagonal correction (d),
+   * the sketch B (l*d), and the shrink mass (1*1).
+   */
+  public DoubleMatrix[] getResult() {
+    this.flush();
+    return new DoubleMatrix[] {
+        DoubleMatrix.scalar(this.examples), this.muX, this.diag, this.sketch, this.shrinkMass };
+  }
+
+  /**
+   * Frequent Directions shrink: reduce a matrix M (m*d) to at most size rows B with
+   * B^T B ~ M^T M, by subtracting the (size + 1)-th largest squared singular value of M
+   * from all squared singular values. Rows of the result are orthogonal.
+   * @param mass 1*1 matrix to which the subtracted value is added.
+   */
+  public static DoubleMatrix shrink(final DoubleMatrix M, final int size, final DoubleMatrix mass) {
+
+    final DoubleMatrix[] eigen = Eigen.symmetricEigenvectors(M.mmul(M.transpose()));
+    final DoubleMatrix s = eigen[1].diag(); // squared singular values
+    final int[] order = s.neg().sortingPermutation();
+
+    final int keep = Math.min(size, M.rows);
+    final double delta = M.rows > size ? Math.max(s.get(order[size]), 0) : 0;
+    mass.put(0, mass.get(0) + delta);
+
+    final DoubleMatrix scale = new DoubleMatrix(keep);
+    for (int j = 0; j < keep; ++j) {
+      final double sj = s.get(order[j]);
+      scale.put(j, sj > delta ? Math.sqrt((sj - delta) / sj) : 0);
+    }
+
+    final DoubleMatrix U = eigen[0].getColumns(Arrays.copyOf(order, keep)).muliRowVector(scale);
+    return U.transpose().mmul(M);
+  }
+
+  /**
+   * Compress the buffered rows into the sketch.
+   */
+  private void flush() {
+    if (this.numRows > 0) {
+      this.sketch = shrink(DoubleMatrix.concatVertically(this.sketch, this.compress()), this.size, this.shrinkMass);
+      this.numRows = 0;
+    }
+  }
+
+  /**
+   * Find l rows C such that C^T C approximates S^T S for the buffered rows S:
+   * an orthonormal basis Q (d*l) of the dominant row space of S by randomized subspace
+   * iteration, then C = Lambda^1/2 W^T Q^T, where W Lambda W^T = (S Q)^T (S Q).
+   */
+  private DoubleMatrix compress() {
+
+    // Rank of S is at most the number of its rows and of its distinct columns.
+    final int rank = Math.min(Math.min(this.size, this.numRows), this.countDistinctIds());
+
+    // Q^T is l*d, so that the l elements of each word are contiguous.
+    DoubleMatrix Qt = TensorUtil.gaussian(rank, this.dimD, TensorUtil.RANDOM_SEED + this.numFlushes++);
+    for (int i = 0; i <= POWER_ITERATIONS; ++i) {
+      Qt = TensorUtil.orthogonalize(this.multiplyTransposed(this.multiply(Qt)).transpose()).transpose();
+    }
+
+    final DoubleMatrix Pt = this.multiply(Qt);
+    final DoubleMatrix[] eigen = Eigen.symmetricEigenvectors(Pt.mmul(Pt.transpose()));
+    final DoubleMatrix lambda = eigen[1].diag();
+    for (int j = 0; j < lambda.length; ++j) {
+      lambda.put(j, Math.sqrt(Math.max(lambda.get(j), 0)));
+    }
+
+    return eigen[0].muliRowVector(lambda).transpose().mmul(Qt);
+  }
+
+  private int countDistinctIds() {
+    final boolean[] seen = new boolean[this.dimD];
+    int count = 0;
+    for (int t = 0; t < this.rowOffsets[this.numRows]; ++t) {
+      if (!seen[this.ids[t]]) {
+        seen[this.ids[t]] = true;
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return (S Q)^T, rank*r, for the buffered rows S (r*d) and Q^T (rank*d).
+   */
+  private DoubleMatrix multiply(final DoubleMatrix Qt) {
+    final int rank = Qt.rows;
+    final double[] q = Qt.data;
+    final DoubleMatrix Pt = DoubleMatrix.zeros(rank, this.numRows);
+    final double[] p = Pt.data;
+    for (int n = 0; n < this.numRows; ++n) {
+      final int row = n * rank;
+      for (int t = this.rowOffsets[n]; t < this.rowOffsets[n + 1]; ++t) {
+        final double value = this.values[t];
+        final int base = this.ids[t] * rank;
+        for (int j = 0; j < rank; ++j) {
+          p[row + j] += q[base + j] * value;
+        }
+      }
+    }
+    return Pt;
+  }
+
+  /**
+   * @return (S^T P)^T, rank*d, for the buffered rows S (r*d) and P^T (rank*r).
+   */
+  private DoubleMatrix multiplyTransposed(final DoubleMatrix Pt) {
+    final int rank = Pt.rows;
+    final double[] p = Pt.data;
+    final DoubleMatrix Qt = DoubleMatrix.zeros(rank, this.dimD);
+    final double[] q = Qt.data;
+    for (int n = 0; n < this.numRows; ++n) {
+      final int row = n * rank;
+      for (int t = this.rowOffsets[n]; t < this.rowOffsets[n + 1]; ++t) {
+        final double value = this.values[t];
+        final int base = this.ids[t] * rank;
+        for (int j = 0; j < rank; ++j) {
+          q[base + j] += p[row + j] * value;
+        }
+      }
+    }
+    return Qt;
+  }
+}
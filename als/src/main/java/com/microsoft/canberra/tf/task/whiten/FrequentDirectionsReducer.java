@@ -0,0 +1,78 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.whiten;
+
+import org.apache.reef.io.network.group.api.operators.Reduce;
+import org.jblas.DoubleMatrix;
+
+import javax.inject.Inject;
+
+/**
+ * Merges the partial results of FrequentDirections of the partitions:
+ * sums the number of examples, muX, the diagonal correction and the shrink mass,
+ * and merges the sketches one at a time: each sketch (l*d) is stacked under the merged one,
+ * and the stack is shrunk back to l rows whenever it has more than 2l rows.
+ * Merging P sketches thus keeps at most 3l rows in memory and costs O(P * l^2 * d).
+ */
+public class FrequentDirectionsReducer implements Reduce.ReduceFunction<DoubleMatrix[]> {
+
+  private static final DoubleMatrix[] EMPTY = new DoubleMatrix[0];
+
+  @Inject
+  public FrequentDirectionsReducer() {
+  }
+
+  @Override
+  public synchronized DoubleMatrix[] apply(final Iterable<DoubleMatrix[]> iter) {
+
+    DoubleMatrix[] res = EMPTY;
+    int size = 0;
+
+    for (final DoubleMatrix[] matrices : iter) {
+      if (res == EMPTY) {
+        res = new DoubleMatrix[matrices.length];
+        for (int i = 0; i < res.length; ++i) {
+          res[i] = matrices[i].dup();
+        }
+      } else {
+        for (int i = 0; i < res.length; ++i) {
+          if (i != 3) {
+            res[i].addi(matrices[i]);
+          }
+        }
+        res[3] = DoubleMatrix.concatVertically(res[3], matrices[3]);
+      }
+      size = Math.max(size, matrices[3].rows);
+      if (res[3].rows > 2 * size) {
+        res[3] = FrequentDirections.shrink(res[3], size, res[4]);
+      }
+    }
+
+    if (res != EMPTY && res[3].rows > size) {
+      res[3] = FrequentDirections.shrink(res[3], size, res[4]);
+    }
+
+    return res;
+  }
+}
@@ -0,0 +1,249 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.whiten;
+
+import com.microsoft.canberra.tf.Launch;
+import com.microsoft.canberra.tf.task.TaskEnvironment;
+import com.microsoft.canberra.tf.taskgroup.TaskGroupDescriptor;
+import com.microsoft.canberra.tf.util.SparseRowMatrix;
+import com.microsoft.canberra.tf.util.TensorUtil;
+
+import org.apache.reef.annotations.audience.TaskSide;
+import org.apache.reef.driver.task.TaskConfigurationOptions;
+import org.apache.reef.io.network.group.api.operators.Broadcast;
+import org.apache.reef.io.network.group.api.operators.Reduce;
+import org.apache.reef.io.network.group.api.task.CommunicationGroupClient;
+import org.apache.reef.io.network.group.api.task.GroupCommClient;
+import org.apache.reef.task.Task;
+import org.apache.reef.tang.annotations.Parameter;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.Eigen;
+import org.jblas.MatrixFunctions;
+import org.jblas.Solve;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Master side of the block Krylov whitening. Instead of keeping only the latest
+ * block M2^i * omega, as the subspace iteration of WhitenMasterTask does, it keeps the
+ * orthonormal basis K = [Q_0, Q_1, ..., Q_i] of the whole block Krylov subspace
+ * span(omega, M2 * omega, ..., M2^i * omega), together with the products M2 * K received
+ * from the workers, and extracts the top eigenpairs of M2 by Rayleigh-Ritz projection
+ * on that subspace. Each pass over the corpus adds one block of k' columns to K.
+ *
+ * After each pass, the master computes the residuals ||M2 * u - lambda * u|| / lambda
+ * of the top k Ritz pairs (no extra pass is needed, since M2 * K is known), and stops
+ * once they are all below the tolerance or after the maximum number of passes.
+ * The final omega and sigma have the same form as in WhitenMasterTask.
+ *
+ * The master keeps two d * (i + 1) * k' matrices in memory.
+ */
+@TaskSide
+public final class KrylovMasterTask implements Task {
+
+  private static final TaskGroupDescriptor DESCRIPTOR = KrylovTaskGroupDescriptor.INSTANCE;
+
+  private static final Logger LOG = Logger.getLogger(KrylovMasterTask.class.getName());
+
+  private final int dimD;
+  private final int dimK;
+  private final int dimKprime;
+  private final double alpha0;
+  private final int maxPasses;
+  private final double tolerance;
+  private final String omegaType;
+  private final boolean single;
+  private final boolean fuseM1;
+  private final TaskEnvironment env;
+
+  private final Broadcast.Sender<WhitenModel> modelSender;
+  private final Reduce.Receiver<SparseRowMatrix[]> resultReceiver;
+
+  /** Gather and scatter of the rows of the local vocabularies of the workers; null without -local_vocab. */
+  private final LocalRowsMaster localRows;
+
+  @Inject
+  public KrylovMasterTask(
+      final @Parameter(TaskConfigurationOptions.Identifier.class) String taskId,
+      final @Parameter(Launch.Alpha0.class) double alpha0,
+      final @Parameter(Launch.DimK.class) int dimK,
+      final @Parameter(Launch.DimKPrime.class) int dimKprime,
+      final @Parameter(Launch.WhitenIterations.class) int maxPasses,
+      final @Parameter(Launch.WhitenTolerance.class) double tolerance,
+      final @Parameter(Launch.OmegaType.class) String omegaType,
+      final @Parameter(Launch.LocalVocab.class) boolean localVocab,
+      final @Parameter(Launch.WhitenDataType.class) String dataType,
+      final @Parameter(Launch.FuseM1.class) boolean fuseM1,
+      final GroupCommClient groupCommClient,
+      final TaskEnvironment env) {
+
+    this.dimD = env.getDimD();
+    this.dimK = dimK;
+    this.dimKprime = dimKprime;
+    this.alpha0 = alpha0;
+    this.maxPasses = maxPasses;
+    this.tolerance = tolerance;
+    this.omegaType = omegaType;
+    this.single = WhitenMasterTask.isSinglePrecision(dataType);
+    this.fuseM1 = fuseM1;
+    this.env = env;
+
+    final CommunicationGroupClient commGroup =
+        groupCommClient.getCommunicationGroup(DESCRIPTOR.getCommGroupIdClass());
+
+    this.modelSender = commGroup.getBroadcastSender(DESCRIPTOR.getBroadcastIdClass());
+    this.resultReceiver = commGroup.getReduceReceiver(DESCRIPTOR.getReduceIdClass());
+    this.localRows = localVocab ? new LocalRowsMaster(DESCRIPTOR, commGroup, this.dimD, this.single) : null;
+
+    LOG.log(Level.FINEST,
+        "KrylovMasterTask {0} created: d*k_prime = {1} * {2} passes: {3} tolerance: {4}",
+        new Object[] { taskId, this.dimD, dimKprime, maxPasses, tolerance });
+  }
+
+  @Override
+  public byte[] call(final byte[] memento) throws Exception {
+
+    LOG.log(Level.FINEST, "KrylovMasterTask started");
+
+    int examples = 0;
+
+    // Workers start with the same random omega as in WhitenMasterTask.
+    DoubleMatrix omega = WhitenMasterTask.initialOmega(this.omegaType, this.dimD, this.dimKprime);
+    DoubleMatrix sigma = null;
+
+    DoubleMatrix K = null; // orthonormal basis of the Krylov subspace, d*(i+1)k'
+    DoubleMatrix Z = null; // M2 * K
+
+    boolean done = false;
+    for (int i = 0; !done; ++i) {
+
+      LOG.log(Level.FINEST, "KrylovMasterTask pass {0} start", i);
+
+      final DoubleMatrix[] reduced = this.localRows != null ? this.localRows.reduce()
+          : WhitenMasterTask.fromSparseRows(this.resultReceiver.reduce());
+
+      examples = (int) reduced[0].get(0);
+      final DoubleMatrix muX = reduced[1]; // 1*d
+      final DoubleMatrix Y = reduced[2].transpose(); // workers send k*d
+
+      LOG.log(Level.FINEST,
+          "KrylovMasterTask pass {0}: {1} examples", new Object[]{ i, examples });
+
+      Y.muli((1.0 + this.alpha0) / examples);
+
+      if (this.alpha0 > 0) {
+        muX.divi(examples);
+        final DoubleMatrix muXOmega = muX.transpose().mmul(omega);
+        Y.subi(muX.mmul(muXOmega).muli(this.alpha0));
+      }
+
+      final DoubleMatrix product; // M2 * Q_i
+      if (i == 0) {
+        // The first pass multiplies M2 by the random omega = Q_0 * R, so M2 * Q_0 = Y * R^-1.
+        K = TensorUtil.orthogonalize(omega.dup());
+        final DoubleMatrix R = K.transpose().mmul(omega);
+        product = Solve.solve(R.transpose(), Y.transpose()).transpose();
+        Z = product;
+      } else {
+        product = Y;
+        Z = DoubleMatrix.concatHorizontally(Z, product);
+      }
+
+      // Rayleigh-Ritz: eigenpairs of the projection K^T * M2 * K, in descending order.
+      final DoubleMatrix T = K.transpose().mmul(Z);
+      final DoubleMatrix[] eigen = Eigen.symmetricEigenvectors(T.addi(T.transpose()).muli(0.5));
+      final DoubleMatrix lambda = eigen[1].diag();
+      final int[] sortingIdx = Arrays.copyOfRange(lambda.neg().sortingPermutation(), 0, this.dimK);
+      final DoubleMatrix V = eigen[0].getColumns(sortingIdx);
+      final DoubleMatrix topLambda = lambda.get(sortingIdx);
+
+      // M2 * u for the Ritz vectors u = K * V.
+      final DoubleMatrix ZV = Z.mmul(V);
+      final DoubleMatrix residuals = ZV.sub(K.mmul(V).muliRowVector(topLambda));
+
+      double accuracy = 0;
+      for (int j = 0; j < this.dimK; ++j) {
+        accuracy = Math.max(accuracy, residuals.getColumn(j).norm2() / Math.abs(topLambda.get(j)));
+      }
+
+      LOG.log(Level.INFO, "KrylovMasterTask pass {0}: eigenpair residual = {1}", new Object[] { i, accuracy });
+
+      done = accuracy < this.tolerance || i + 1 >= this.maxPasses;
+
+      if (!done) {
+
+        // Next block: M2 * Q_i orthogonalized against the whole basis (twice, for stability).
+        final DoubleMatrix next = product.dup();
+        next.subi(K.mmul(K.transpose().mmul(next)));
+        next.subi(K.mmul(K.transpose().mmul(next)));
+        omega = TensorUtil.orthogonalize(next);
+        K = DoubleMatrix.concatHorizontally(K, omega);
+
+      } else {
+
+        LOG.log(Level.INFO, "KrylovMasterTask reached eigenpair residual {0} in {1} corpus passes",
+            new Object[] { accuracy, i + 1 });
+
+        sigma = MatrixFunctions.sqrti(topLambda.maxi(0));
+        omega = ZV.diviRowVector(sigma.add(1.0e-12));
+
+        for (int j = 0; j < omega.columns; ++j) {
+          if (omega.get(0, j) < 0) {
+            omega.putColumn(j, omega.getColumn(j).negi());
+          }
+        }
+      }
+
+      LOG.log(Level.FINEST, "KrylovMasterTask pass {0} send omega", i);
+
+      // With -fuse_m1, the workers need sigma to compute M1 with the final omega.
+      final DoubleMatrix sigmaM1 = done && this.fuseM1 ? sigma : null;
+
+      if (this.localRows != null) {
+        this.localRows.send(omega, sigmaM1, done);
+      } else {
+        this.modelSender.send(new WhitenModel(omega, sigmaM1, this.single, done));
+      }
+    }
+
+    assert(sigma != null);
+
+    this.env.setOmega(omega)
+            .setExamples(examples);
+
+    if (this.fuseM1) {
+      this.env.setM1(WhitenMasterTask.reduceM1(this.resultReceiver, examples));
+    } else {
+      this.env.setSigma(sigma);
+    }
+
+    LOG.log(Level.FINEST, "KrylovMasterTask complete: {0} examples", examples);
+
+    return null;
+  }
+}
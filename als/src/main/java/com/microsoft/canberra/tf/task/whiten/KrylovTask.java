@@ -0,0 +1,61 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.whiten;
+
+import com.microsoft.canberra.tf.Launch;
+import com.microsoft.canberra.tf.task.InputData;
+import com.microsoft.canberra.tf.task.TaskEnvironment;
+
+import org.apache.reef.annotations.audience.TaskSide;
+import org.apache.reef.driver.task.TaskConfigurationOptions;
+import org.apache.reef.io.network.group.api.task.GroupCommClient;
+import org.apache.reef.tang.annotations.Parameter;
+
+import javax.inject.Inject;
+
+/**
+ * Worker side of the block Krylov whitening: same passes over the corpus as in WhitenTask,
+ * in the communication group of KrylovTaskGroupDescriptor.
+ */
+@TaskSide
+public final class KrylovTask extends WhitenTask {
+
+  @Inject
+  public KrylovTask(
+      final @Parameter(TaskConfigurationOptions.Identifier.class) String taskId,
+      final @Parameter(Launch.DimKPrime.class) int dimKprime,
+      final @Parameter(Launch.Streaming.class) boolean streaming,
+      final @Parameter(Launch.WorkerThreads.class) int numThreads,
+      final @Parameter(Launch.WhitenKernel.class) String kernel,
+      final @Parameter(Launch.OmegaType.class) String omegaType,
+      final @Parameter(Launch.LocalVocab.class) boolean localVocab,
+      final @Parameter(Launch.WhitenDataType.class) String dataType,
+      final @Parameter(Launch.WcStorage.class) String wcStorage,
+      final GroupCommClient groupCommClient,
+      final InputData data,
+      final TaskEnvironment env) {
+    super(KrylovTaskGroupDescriptor.INSTANCE, taskId, dimKprime, streaming, numThreads, kernel, omegaType,
+          localVocab, WhitenMasterTask.isSinglePrecision(dataType), wcStorage, groupCommClient, data, env);
+  }
+}
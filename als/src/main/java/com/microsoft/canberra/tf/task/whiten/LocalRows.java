@@ -0,0 +1,65 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.whiten;
+
+import com.microsoft.canberra.tf.util.SparseRowMatrix;
+
+import java.io.Serializable;
+
+/**
+ * Result of one whitening pass of a worker with -local_vocab, sent to the master through gather.
+ * The result {examples, muX, Y} (see WhitenTask.toSparseRows()) covers only the words
+ * of the partition, indexed by their local IDs. Local vocabulary (global word IDs indexed
+ * by the local ones) is only sent in the first pass: it does not change, and the master
+ * keeps it for the rest of the task.
+ */
+final class LocalRows implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String taskId;
+  private final int[] vocabulary;
+  private final SparseRowMatrix[] result;
+
+  LocalRows(final String taskId, final int[] vocabulary, final SparseRowMatrix[] result) {
+    this.taskId = taskId;
+    this.vocabulary = vocabulary;
+    this.result = result;
+  }
+
+  String getTaskId() {
+    return this.taskId;
+  }
+
+  /**
+   * @return global word IDs indexed by the local word IDs, or null after the first pass.
+   */
+  int[] getVocabulary() {
+    return this.vocabulary;
+  }
+
+  SparseRowMatrix[] getResult() {
+    return this.result;
+  }
+}
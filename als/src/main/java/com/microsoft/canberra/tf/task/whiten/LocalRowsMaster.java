@@ -0,0 +1,120 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.whiten;
+
+import com.microsoft.canberra.tf.taskgroup.TaskGroupDescriptor;
+import com.microsoft.canberra.tf.util.SparseRowMatrix;
+
+import org.apache.reef.io.network.group.api.operators.Gather;
+import org.apache.reef.io.network.group.api.operators.Scatter;
+import org.apache.reef.io.network.group.api.task.CommunicationGroupClient;
+import org.apache.reef.io.network.util.StringIdentifierFactory;
+import org.apache.reef.wake.Identifier;
+
+import org.jblas.DoubleMatrix;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Master side of the whitening passes with -local_vocab. Instead of reduce and broadcast,
+ * the workers send the rows of muX and Y for their own words through gather, and each worker
+ * receives through scatter only the rows of omega for its words. The master sums the rows
+ * of all workers into the same dense {examples, muX, Y^T} as the reduce would produce.
+ */
+final class LocalRowsMaster {
+
+  private final int dimD;
+  private final boolean single;
+
+  private final Scatter.Sender<WhitenModel> modelSender;
+  private final Gather.Receiver<LocalRows> resultReceiver;
+
+  /** Local vocabularies of the workers, keyed by the task ID; received in the first pass. */
+  private final Map<String, int[]> vocabularies = new HashMap<>();
+
+  /**
+   * @param single if true, send omega in single precision.
+   */
+  LocalRowsMaster(final TaskGroupDescriptor descriptor, final CommunicationGroupClient commGroup,
+                  final int dimD, final boolean single) {
+    this.dimD = dimD;
+    this.single = single;
+    this.modelSender = commGroup.getScatterSender(descriptor.getScatterIdClass());
+    this.resultReceiver = commGroup.getGatherReceiver(descriptor.getGatherIdClass());
+  }
+
+  /**
+   * Gather the results of all workers and sum them.
+   * @return {examples, muX (d), Y^T (k'*d)}, same as the reduce result.
+   */
+  DoubleMatrix[] reduce() throws Exception {
+
+    double examples = 0;
+    final DoubleMatrix muXT = DoubleMatrix.zeros(1, this.dimD);
+    DoubleMatrix yT = null;
+
+    for (final LocalRows rows : this.resultReceiver.receive()) {
+
+      if (rows.getVocabulary() != null) {
+        this.vocabularies.put(rows.getTaskId(), rows.getVocabulary());
+      }
+
+      final int[] vocabulary = this.vocabularies.get(rows.getTaskId());
+      final SparseRowMatrix[] result = rows.getResult();
+      assert(vocabulary != null && result[2].getRows() == vocabulary.length);
+
+      if (yT == null) {
+        yT = DoubleMatrix.zeros(result[2].getColumns(), this.dimD);
+      }
+
+      examples += result[0].toDense().get(0);
+      result[1].addToTransposed(muXT, vocabulary);
+      result[2].addToTransposed(yT, vocabulary);
+    }
+
+    return new DoubleMatrix[] { DoubleMatrix.scalar(examples), muXT.reshape(this.dimD, 1), yT };
+  }
+
+  /**
+   * Send each worker the rows of omega (d*k) for its words, along with the flag
+   * that tells whether this is the final omega, and sigma (see WhitenModel), if not null.
+   */
+  void send(final DoubleMatrix omega, final DoubleMatrix sigma, final boolean done) throws Exception {
+
+    final StringIdentifierFactory idFactory = new StringIdentifierFactory();
+    final List<WhitenModel> models = new ArrayList<>(this.vocabularies.size());
+    final List<Identifier> order = new ArrayList<>(this.vocabularies.size());
+
+    for (final Map.Entry<String, int[]> entry : this.vocabularies.entrySet()) {
+      models.add(new WhitenModel(omega.getRows(entry.getValue()), sigma, this.single, done));
+      order.add(idFactory.getNewInstance(entry.getKey()));
+    }
+
+    this.modelSender.send(models, Collections.nCopies(models.size(), 1), order);
+  }
+}
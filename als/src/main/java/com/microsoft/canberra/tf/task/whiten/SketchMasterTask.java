@@ -0,0 +1,173 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.whiten;
+
+import com.microsoft.canberra.tf.Launch;
+import com.microsoft.canberra.tf.task.TaskEnvironment;
+import com.microsoft.canberra.tf.taskgroup.TaskGroupDescriptor;
+import com.microsoft.canberra.tf.util.TensorUtil;
+
+import org.apache.reef.annotations.audience.TaskSide;
+import org.apache.reef.driver.task.TaskConfigurationOptions;
+import org.apache.reef.io.network.group.api.operators.Broadcast;
+import org.apache.reef.io.network.group.api.operators.Reduce;
+import org.apache.reef.io.network.group.api.task.CommunicationGroupClient;
+import org.apache.reef.io.network.group.api.task.GroupCommClient;
+import org.apache.reef.task.Task;
+import org.apache.reef.tang.annotations.Parameter;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.Eigen;
+import org.jblas.MatrixFunctions;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Master side of the one-pass whitening. Receives the merged Frequent Directions sketch B
+ * of all partitions, and approximates
+ *
+ *   M2 ~ (1 + alpha0) / n * (B^T B - diag(w)) - alpha0 * muX muX^T,
+ *
+ * where w is the diagonal correction. The top eigenpairs of M2 are found by Rayleigh-Ritz
+ * projection on the row space of B; the final omega and sigma have the same form
+ * as in WhitenMasterTask.
+ */
+@TaskSide
+public final class SketchMasterTask implements Task {
+
+  private static final TaskGroupDescriptor DESCRIPTOR = SketchTaskGroupDescriptor.INSTANCE;
+
+  private static final Logger LOG = Logger.getLogger(SketchMasterTask.class.getName());
+
+  private final int dimD;
+  private final int dimK;
+  private final double alpha0;
+  private final TaskEnvironment env;
+
+  private final Broadcast.Sender<DoubleMatrix> modelSender;
+  private final Reduce.Receiver<DoubleMatrix[]> resultReceiver;
+
+  @Inject
+  public SketchMasterTask(
+      final @Parameter(TaskConfigurationOptions.Identifier.class) String taskId,
+      final @Parameter(Launch.Alpha0.class) double alpha0,
+      final @Parameter(Launch.DimK.class) int dimK,
+      final GroupCommClient groupCommClient,
+      final TaskEnvironment env) {
+
+    this.dimD = env.getDimD();
+    this.dimK = dimK;
+    this.alpha0 = alpha0;
+    this.env = env;
+
+    final CommunicationGroupClient commGroup =
+        groupCommClient.getCommunicationGroup(DESCRIPTOR.getCommGroupIdClass());
+
+    this.modelSender = commGroup.getBroadcastSender(DESCRIPTOR.getBroadcastIdClass());
+    this.resultReceiver = commGroup.getReduceReceiver(DESCRIPTOR.getReduceIdClass());
+
+    LOG.log(Level.FINEST, "SketchMasterTask {0} created: d*k = {1} * {2}",
+        new Object[] { taskId, this.dimD, dimK });
+  }
+
+  @Override
+  public byte[] call(final byte[] memento) throws Exception {
+
+    LOG.log(Level.FINEST, "SketchMasterTask started");
+
+    final DoubleMatrix[] reduced = this.resultReceiver.reduce();
+
+    final int examples = (int) reduced[0].get(0);
+    final DoubleMatrix muX = reduced[1].divi(examples); // 1*d
+    final DoubleMatrix diag = reduced[2]; // 1*d
+    final DoubleMatrix B = reduced[3]; // l*d
+    final double shrinkMass = reduced[4].get(0);
+
+    // Shrink mass bounds ||A^T A - B^T B||_2, so (1 + alpha0) / n of it bounds the sketching error of M2.
+    LOG.log(Level.INFO, "SketchMasterTask: {0} examples, sketch {1} * {2}, shrink mass {3} (M2 error <= {4})",
+        new Object[] { examples, B.rows, B.columns, shrinkMass, shrinkMass * (1.0 + this.alpha0) / examples });
+
+    // Orthonormal basis of the row space of B; the rows are orthogonal after the shrink,
+    // but some of them can be zero.
+    int rank = 0;
+    final int[] nonZero = new int[B.rows];
+    for (int i = 0; i < B.rows; ++i) {
+      if (B.getRow(i).norm2() > 0) {
+        nonZero[rank++] = i;
+      }
+    }
+
+    if (rank < this.dimK) {
+      throw new IllegalStateException("Sketch rank " + rank + " is less than the number of topics " + this.dimK);
+    }
+
+    final DoubleMatrix Q = TensorUtil.orthogonalize(B.getRows(Arrays.copyOf(nonZero, rank)).transpose());
+
+    // Rayleigh-Ritz: eigenpairs of Q^T M2 Q, in descending order.
+    final DoubleMatrix BQ = B.mmul(Q);
+    final DoubleMatrix muXQ = muX.transpose().mmul(Q);
+    final DoubleMatrix T = BQ.transpose().mmul(BQ)
+        .subi(Q.mulColumnVector(diag).transpose().mmul(Q))
+        .muli((1.0 + this.alpha0) / examples)
+        .subi(muXQ.transpose().mmul(muXQ).muli(this.alpha0));
+
+    final DoubleMatrix[] eigen = Eigen.symmetricEigenvectors(T.addi(T.transpose()).muli(0.5));
+    final DoubleMatrix lambda = eigen[1].diag();
+    final int[] sortingIdx = Arrays.copyOfRange(lambda.neg().sortingPermutation(), 0, this.dimK);
+
+    // Ritz vectors U = Q V and M2 * U, from the same approximation of M2.
+    final DoubleMatrix U = Q.mmul(eigen[0].getColumns(sortingIdx));
+    final DoubleMatrix M2U = B.transpose().mmul(B.mmul(U))
+        .subi(U.mulColumnVector(diag))
+        .muli((1.0 + this.alpha0) / examples)
+        .subi(muX.mmul(muX.transpose().mmul(U)).muli(this.alpha0));
+
+    final DoubleMatrix sigma = MatrixFunctions.sqrti(lambda.get(sortingIdx).maxi(0));
+    final DoubleMatrix omega = M2U.diviRowVector(sigma.add(1.0e-12));
+
+    for (int j = 0; j < omega.columns; ++j) {
+      if (omega.get(0, j) < 0) {
+        omega.putColumn(j, omega.getColumn(j).negi());
+      }
+    }
+
+    LOG.log(Level.FINEST, "SketchMasterTask send omega");
+
+    this.modelSender.send(omega);
+
+    LOG.log(Level.FINEST, "SketchMasterTask omega = {0}", omega);
+    LOG.log(Level.FINEST, "SketchMasterTask sigma = {0}", sigma);
+
+    this.env.setOmega(omega)
+            .setSigma(sigma)
+            .setExamples(examples);
+
+    LOG.log(Level.FINEST, "SketchMasterTask complete: {0} examples", examples);
+
+    return null;
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.whiten;
+
+import com.microsoft.canberra.tf.Launch;
+import com.microsoft.canberra.tf.task.Corpus;
+import com.microsoft.canberra.tf.task.InputData;
+import com.microsoft.canberra.tf.task.TaskEnvironment;
+import com.microsoft.canberra.tf.taskgroup.TaskGroupDescriptor;
+
+import org.apache.reef.annotations.audience.TaskSide;
+import org.apache.reef.driver.task.TaskConfigurationOptions;
+import org.apache.reef.io.network.group.api.operators.Broadcast;
+import org.apache.reef.io.network.group.api.operators.Reduce;
+import org.apache.reef.io.network.group.api.task.CommunicationGroupClient;
+import org.apache.reef.io.network.group.api.task.GroupCommClient;
+import org.apache.reef.task.Task;
+import org.apache.reef.tang.annotations.Parameter;
+
+import org.jblas.DoubleMatrix;
+
+import javax.inject.Inject;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Worker side of the one-pass whitening: sketches the second-order moment of the partition
+ * in a single scan (or while the data is loaded, in the streaming mode),
+ * sends the sketch to the master and receives the final omega.
+ * The sketch has -sketch_size rows, by default SKETCH_SIZE_FACTOR * k'.
+ */
+@TaskSide
+public final class SketchTask implements Task {
+
+  private static final TaskGroupDescriptor DESCRIPTOR = SketchTaskGroupDescriptor.INSTANCE;
+
+  private static final Logger LOG = Logger.getLogger(SketchTask.class.getName());
+
+  /** Default sketch size as a multiple of k'. */
+  static final int SKETCH_SIZE_FACTOR = 4;
+
+  private final int dimD;
+  private final int sketchSize;
+  private final boolean streaming;
+
+  private final InputData data;
+
+  private final TaskEnvironment env;
+  private final Broadcast.Receiver<DoubleMatrix> modelReceiver;
+  private final Reduce.Sender<DoubleMatrix[]> resultSender;
+
+  @Inject
+  public SketchTask(
+      final @Parameter(TaskConfigurationOptions.Identifier.class) String taskId,
+      final @Parameter(Launch.DimKPrime.class) int dimKprime,
+      final @Parameter(Launch.SketchSize.class) int sketchSize,
+      final @Parameter(Launch.Streaming.class) boolean streaming,
+      final GroupCommClient groupCommClient,
+      final InputData data,
+      final TaskEnvironment env) {
+
+    this.dimD = env.getDimD();
+    this.sketchSize = sketchSize > 0 ? sketchSize : SKETCH_SIZE_FACTOR * dimKprime;
+    this.streaming = streaming;
+    this.data = data;
+    this.env = env;
+
+    final CommunicationGroupClient commGroup =
+        groupCommClient.getCommunicationGroup(DESCRIPTOR.getCommGroupIdClass());
+
+    this.modelReceiver = commGroup.getBroadcastReceiver(DESCRIPTOR.getBroadcastIdClass());
+    this.resultSender = commGroup.getReduceSender(DESCRIPTOR.getReduceIdClass());
+
+    LOG.log(Level.FINEST, "SketchTask {0} created: d*l = {1} * {2}",
+        new Object[] { taskId, this.dimD, this.sketchSize });
+  }
+
+  @Override
+  public byte[] call(final byte[] memento) throws Exception {
+
+    LOG.log(Level.FINEST, "SketchTask started: streaming = {0}", this.streaming);
+
+    final FrequentDirections sketch = new FrequentDirections(this.dimD, this.sketchSize);
+
+    this.env.setCorpus(this.data.load(this.streaming ? sketch : null));
+
+    if (!this.streaming) {
+      final Corpus.Cursor doc = this.env.getCorpus().cursor();
+      while (doc.next()) {
+        sketch.add(doc);
+      }
+    }
+
+    LOG.log(Level.FINEST, "SketchTask send sketch");
+
+    this.resultSender.send(sketch.getResult());
+
+    LOG.log(Level.FINEST, "SketchTask receive omega");
+
+    final DoubleMatrix omega = this.modelReceiver.receive();
+
+    this.env.setOmega(omega).setExamples(sketch.getExamples());
+
+    LOG.log(Level.FINEST, "SketchTask complete: {0} examples", sketch.getExamples());
+
+    return null;
+  }
+}
@@ -0,0 +1,507 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.whiten;
+
+import com.microsoft.canberra.tf.task.Corpus;
+import com.microsoft.canberra.tf.task.Document;
+import com.microsoft.canberra.tf.task.Tokens;
+import com.microsoft.canberra.tf.util.SparseSignProjection;
+import com.microsoft.canberra.tf.util.TensorUtil;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Whitening engine that treats the partition as a sparse matrix X (n*d) and computes
+ * the Y update as two sparse-dense matrix products per block of documents:
+ *
+ *   P = D * X * omega,  Y += X^T * P - diag(w) * omega,
+ *
+ * where D is the diagonal of per-document scales 1 / (m * (m - 1)), m is the number of
+ * tokens in the document, and w = X^T * diag(D) is the diagonal correction for the
+ * x_i * x_i terms. The correction is applied once, in getResult().
+ *
+ * Documents are copied into a block in compressed sparse row (CSR) format, P is computed
+ * row by row, then the block is transposed into compressed sparse column (CSC) format,
+ * so that the second product updates each row of Y with all documents of the block
+ * while that row is in cache. Both products work on primitive arrays and do not allocate.
+ * omega and Y are kept transposed (k'*d), as in WhitenAccumulator;
+ * omega can be stored in single precision.
+ *
+ * The transpose only touches the words that occur in the block: the tokens are first
+ * sorted into TokenBuckets by the range of word IDs, and then the tokens of each range
+ * are grouped by word. Both steps are counting sorts that take O(number of tokens) time.
+ *
+ * With an executor, the rows of P are computed and their tokens are bucketed in parallel,
+ * and then each thread transposes and updates its own range of rows of Y.
+ */
+public final class SpmmWhitenAccumulator implements WhitenEngine {
+
+  /** Number of documents in one block; P for the block is BLOCK_DOCS*k' doubles. */
+  private static final int BLOCK_DOCS = 1024;
+
+  private static final int INITIAL_TOKENS = 64 * 1024;
+
+  private static final int INITIAL_WORDS = 1024;
+
+  /** Number of work items per thread in each phase, to balance the load. */
+  private static final int TASKS_PER_THREAD = 4;
+
+  private final int dimD;
+  private final int dimKprime;
+
+  private final DoubleMatrix muX;
+  private final DoubleMatrix yT;
+  private DoubleMatrix omegaT = null;
+  private float[] omegaTFloat = null;
+  private SparseSignProjection projection = null;
+
+  /** Diagonal correction w: sum of count / (m * (m - 1)) over all occurrences of the word. */
+  private final double[] diag;
+
+  /** Current block in CSR format, and per-document totals and scales. */
+  private final int[] csrOffsets = new int[BLOCK_DOCS + 1];
+  private int[] csrIds = new int[INITIAL_TOKENS];
+  private float[] csrCounts = new float[INITIAL_TOKENS];
+  private final double[] docTotalCount = new double[BLOCK_DOCS];
+  private final double[] docScale = new double[BLOCK_DOCS];
+
+  /**
+   * 1 + index of the column of each word in Columns of its range while the range
+   * is being transposed; 0 for all words between the transposes.
+   */
+  private final int[] wordColumn;
+
+  /** Tokens of the current block, one instance per range of documents, bucketed by range of word IDs. */
+  private TokenBuckets[] buckets = null;
+
+  /** Current block in CSC format, one instance per range of word IDs. */
+  private Columns[] columns = null;
+
+  /** P = D * X * omega for the current block (BLOCK_DOCS*k', row-major). */
+  private final double[] blockP;
+
+  private int blockDocs = 0;
+
+  private int examples = 0;
+
+  public SpmmWhitenAccumulator(final int dimD, final int dimKprime) {
+    this.dimD = dimD;
+    this.dimKprime = dimKprime;
+    this.muX = DoubleMatrix.zeros(dimD);
+    this.yT = DoubleMatrix.zeros(dimKprime, dimD);
+    this.diag = new double[dimD];
+    this.wordColumn = new int[dimD];
+    this.blockP = new double[BLOCK_DOCS * dimKprime];
+  }
+
+  @Override
+  public void reset(final DoubleMatrix omega) {
+    assert(omega.rows == this.dimD && omega.columns == this.dimKprime);
+    if (this.omegaT == null) {
+      this.omegaT = DoubleMatrix.zeros(this.dimKprime, this.dimD);
+    }
+    this.omegaTFloat = null;
+    this.projection = null;
+    TensorUtil.transpose(omega, this.omegaT.data);
+    this.clear();
+  }
+
+  @Override
+  public void reset(final FloatMatrix omega) {
+    assert(omega.rows == this.dimD && omega.columns == this.dimKprime);
+    if (this.omegaTFloat == null) {
+      this.omegaTFloat = new float[this.dimKprime * this.dimD];
+    }
+    this.omegaT = null;
+    this.projection = null;
+    TensorUtil.transpose(omega, this.omegaTFloat);
+    this.clear();
+  }
+
+  @Override
+  public void reset(final SparseSignProjection omega) {
+    assert(omega.getColumns() == this.dimKprime);
+    this.omegaT = null;
+    this.omegaTFloat = null;
+    this.projection = omega;
+    this.clear();
+  }
+
+  private void clear() {
+    this.muX.fill(0);
+    this.yT.fill(0);
+    Arrays.fill(this.diag, 0);
+    this.blockDocs = 0;
+    this.examples = 0;
+  }
+
+  @Override
+  public void onNext(final Document doc) {
+    this.add(doc);
+  }
+
+  @Override
+  public void add(final Tokens doc) {
+    if (this.append(doc)) {
+      this.flush();
+    }
+  }
+
+  @Override
+  public void addAll(final Corpus corpus, final ExecutorService executor, final int numThreads)
+      throws InterruptedException, ExecutionException {
+    final Corpus.Cursor doc = corpus.cursor();
+    while (doc.next()) {
+      if (this.append(doc)) {
+        this.flush(executor, numThreads);
+      }
+    }
+    this.flush(executor, numThreads);
+  }
+
+  @Override
+  public int getExamples() {
+    return this.examples;
+  }
+
+  /**
+   * Process the last block and apply the diagonal correction Y -= diag(w) * omega.
+   */
+  @Override
+  public DoubleMatrix[] getResult() {
+
+    this.flush();
+
+    final int dimK = this.dimKprime;
+    final double[] y = this.yT.data;
+
+    for (int id = 0; id < this.dimD; ++id) {
+      final double w = this.diag[id];
+      if (w != 0) {
+        final int base = id * dimK;
+        if (this.projection != null) {
+          this.projection.addRow(id, -w, y, base);
+        } else if (this.omegaTFloat != null) {
+          final float[] omega = this.omegaTFloat;
+          for (int j = 0; j < dimK; ++j) {
+            y[base + j] -= w * omega[base + j];
+          }
+        } else {
+          final double[] omega = this.omegaT.data;
+          for (int j = 0; j < dimK; ++j) {
+            y[base + j] -= w * omega[base + j];
+          }
+        }
+        this.diag[id] = 0;
+      }
+    }
+
+    return new DoubleMatrix[] { DoubleMatrix.scalar(this.examples), this.muX, this.yT };
+  }
+
+  /**
+   * Append the document to the current block. Documents with less than two tokens
+   * do not contribute to muX and Y and are only counted as examples.
+   * @return true if the block is full and must be processed.
+   */
+  private boolean append(final Tokens doc) {
+
+    ++this.examples;
+
+    final int size = doc.size();
+
+    double totalCount = 0;
+    for (int t = 0; t < size; ++t) {
+      totalCount += doc.tokenCount(t);
+    }
+
+    if (totalCount < 2) {
+      return false;
+    }
+
+    final int start = this.csrOffsets[this.blockDocs];
+    if (start + size > this.csrIds.length) {
+      final int capacity = Math.max(start + size, this.csrIds.length * 2);
+      this.csrIds = Arrays.copyOf(this.csrIds, capacity);
+      this.csrCounts = Arrays.copyOf(this.csrCounts, capacity);
+    }
+
+    for (int t = 0; t < size; ++t) {
+      this.csrIds[start + t] = doc.tokenId(t);
+      this.csrCounts[start + t] = doc.tokenCount(t);
+    }
+
+    this.docTotalCount[this.blockDocs] = totalCount;
+    this.docScale[this.blockDocs] = 1.0 / (totalCount * (totalCount - 1.0));
+    ++this.blockDocs;
+    this.csrOffsets[this.blockDocs] = start + size;
+
+    return this.blockDocs == BLOCK_DOCS;
+  }
+
+  /**
+   * Multiply the current block by omega, transpose it, and accumulate X^T * P into Y.
+   */
+  private void flush() {
+    if (this.blockDocs > 0) {
+      this.prepare(1);
+      this.multiply(0, this.blockDocs, this.buckets[0]);
+      this.columns[0].transpose(1);
+      this.columns[0].multiplyTransposed();
+      this.blockDocs = 0;
+    }
+  }
+
+  /**
+   * Allocate the buckets and columns for numRanges ranges of documents and of word IDs.
+   */
+  private void prepare(final int numRanges) {
+    if (this.buckets == null || this.buckets.length != numRanges) {
+      final int rangeWidth = TokenBuckets.rangeWidth(this.dimD, numRanges);
+      this.buckets = new TokenBuckets[numRanges];
+      this.columns = new Columns[numRanges];
+      for (int i = 0; i < numRanges; ++i) {
+        this.buckets[i] = new TokenBuckets(numRanges, rangeWidth);
+        this.columns[i] = new Columns(i);
+      }
+    }
+  }
+
+  /**
+   * Same as flush(), but runs both products on numThreads threads of the executor.
+   * @throws ExecutionException if processing fails in one of the threads.
+   */
+  private void flush(final ExecutorService executor, final int numThreads)
+      throws InterruptedException, ExecutionException {
+
+    if (this.blockDocs == 0) {
+      return;
+    }
+
+    final int numTasks = numThreads * TASKS_PER_THREAD;
+    final List<Callable<Void>> tasks = new ArrayList<>(numTasks);
+
+    this.prepare(numTasks);
+
+    for (int i = 0; i < numTasks; ++i) {
+      final int fromDoc = (int) ((long) this.blockDocs * i / numTasks);
+      final int toDoc = (int) ((long) this.blockDocs * (i + 1) / numTasks);
+      if (fromDoc < toDoc) {
+        final TokenBuckets tokens = this.buckets[tasks.size()];
+        tasks.add(new Callable<Void>() {
+          @Override
+          public Void call() {
+            multiply(fromDoc, toDoc, tokens);
+            return null;
+          }
+        });
+      }
+    }
+    TensorUtil.invokeAll(executor, tasks);
+
+    final int numBuckets = tasks.size();
+    final int rangeWidth = TokenBuckets.rangeWidth(this.dimD, numTasks);
+
+    tasks.clear();
+    for (int r = 0; r < numTasks && r * rangeWidth < this.dimD; ++r) {
+      final Columns range = this.columns[r];
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          range.transpose(numBuckets);
+          range.multiplyTransposed();
+          return null;
+        }
+      });
+    }
+    TensorUtil.invokeAll(executor, tasks);
+
+    this.blockDocs = 0;
+  }
+
+  /**
+   * Rows fromDoc .. toDoc - 1 of P = D * X * omega. Tokens of these documents
+   * are sorted into the buckets by the range of their word IDs.
+   */
+  private void multiply(final int fromDoc, final int toDoc, final TokenBuckets tokens) {
+
+    final int dimK = this.dimKprime;
+    final double[] omega = this.omegaT != null ? this.omegaT.data : null;
+    final float[] omegaFloat = this.omegaTFloat;
+    final double[] p = this.blockP;
+
+    for (int n = fromDoc; n < toDoc; ++n) {
+
+      final int row = n * dimK;
+      Arrays.fill(p, row, row + dimK, 0);
+
+      for (int t = this.csrOffsets[n]; t < this.csrOffsets[n + 1]; ++t) {
+        final double count = this.csrCounts[t];
+        if (omega != null) {
+          final int base = this.csrIds[t] * dimK;
+          for (int j = 0; j < dimK; ++j) {
+            p[row + j] += omega[base + j] * count;
+          }
+        } else if (omegaFloat != null) {
+          final int base = this.csrIds[t] * dimK;
+          for (int j = 0; j < dimK; ++j) {
+            p[row + j] += omegaFloat[base + j] * count;
+          }
+        } else {
+          this.projection.addRow(this.csrIds[t], count, p, row);
+        }
+      }
+
+      final double scale = this.docScale[n];
+      for (int j = 0; j < dimK; ++j) {
+        p[row + j] *= scale;
+      }
+    }
+
+    tokens.clear();
+    for (int n = fromDoc; n < toDoc; ++n) {
+      for (int t = this.csrOffsets[n]; t < this.csrOffsets[n + 1]; ++t) {
+        tokens.add(this.csrIds[t], n, this.csrCounts[t]);
+      }
+    }
+    tokens.sort();
+  }
+
+  /**
+   * Tokens of the current block in one range of word IDs, grouped by word
+   * (the corresponding columns of the block in CSC format), and the update of
+   * the rows of Y, muX and w in that range.
+   */
+  private final class Columns {
+
+    private final int range;
+
+    /** Words of the range that occur in the block, in the order of their first occurrence. */
+    private int[] words = new int[INITIAL_WORDS];
+    private int numWords = 0;
+
+    /** Column c holds the tokens starts[c] .. starts[c + 1] - 1 of docs and counts. */
+    private int[] starts = new int[INITIAL_WORDS + 1];
+    private int[] docs = new int[INITIAL_TOKENS];
+    private float[] counts = new float[INITIAL_TOKENS];
+
+    private Columns(final int range) {
+      this.range = range;
+    }
+
+    /**
+     * Group the tokens of bucket `range` of the first numBuckets buckets by word,
+     * with a counting sort over the words that occur in the block only.
+     * The buckets are in the block order and the sort is stable, so the documents
+     * of each word stay in the block order.
+     */
+    private void transpose(final int numBuckets) {
+
+      int numTokens = 0;
+      this.numWords = 0;
+
+      for (int b = 0; b < numBuckets; ++b) {
+        final TokenBuckets tokens = buckets[b];
+        for (int pos = tokens.start(this.range); pos < tokens.end(this.range); ++pos) {
+          final int id = tokens.id(pos);
+          if (wordColumn[id] == 0) {
+            if (this.numWords == this.words.length) {
+              this.words = Arrays.copyOf(this.words, this.numWords * 2);
+              this.starts = Arrays.copyOf(this.starts, this.numWords * 2 + 1);
+            }
+            this.words[this.numWords] = id;
+            this.starts[++this.numWords] = 0;
+            wordColumn[id] = this.numWords;
+          }
+          ++this.starts[wordColumn[id]];
+        }
+        numTokens += tokens.end(this.range) - tokens.start(this.range);
+      }
+
+      if (numTokens > this.docs.length) {
+        this.docs = new int[Math.max(numTokens, this.docs.length * 2)];
+        this.counts = new float[this.docs.length];
+      }
+
+      this.starts[0] = 0;
+      for (int c = 1; c <= this.numWords; ++c) {
+        this.starts[c] += this.starts[c - 1];
+      }
+
+      // Use starts[c] as the insertion point of column c; afterwards it points
+      // to the end of the column, i.e. the start of column c + 1.
+      for (int b = 0; b < numBuckets; ++b) {
+        final TokenBuckets tokens = buckets[b];
+        for (int pos = tokens.start(this.range); pos < tokens.end(this.range); ++pos) {
+          final int t = this.starts[wordColumn[tokens.id(pos)] - 1]++;
+          this.docs[t] = tokens.doc(pos);
+          this.counts[t] = tokens.count(pos);
+        }
+      }
+      System.arraycopy(this.starts, 0, this.starts, 1, this.numWords);
+      this.starts[0] = 0;
+
+      for (int c = 0; c < this.numWords; ++c) {
+        wordColumn[this.words[c]] = 0;
+      }
+    }
+
+    /**
+     * Accumulate the rows of X^T * P of the words in the range into Y, and the same rows of muX and w.
+     */
+    private void multiplyTransposed() {
+
+      final int dimK = dimKprime;
+      final double[] p = blockP;
+      final double[] y = yT.data;
+      final double[] mu = muX.data;
+
+      for (int c = 0; c < this.numWords; ++c) {
+
+        final int id = this.words[c];
+        final int end = this.starts[c + 1];
+        final int base = id * dimK;
+
+        for (int t = this.starts[c]; t < end; ++t) {
+          final int n = this.docs[t];
+          final double count = this.counts[t];
+          final int row = n * dimK;
+          for (int j = 0; j < dimK; ++j) {
+            y[base + j] += p[row + j] * count;
+          }
+          diag[id] += count * docScale[n];
+          mu[id] += count / docTotalCount[n];
+        }
+      }
+    }
+  }
+}
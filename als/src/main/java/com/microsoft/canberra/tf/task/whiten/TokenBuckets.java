@@ -0,0 +1,153 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.whiten;
+
+import java.util.Arrays;
+
+/**
+ * Tokens of a range of documents of a block, bucketed by the range of their word IDs.
+ * Word IDs 0 .. d - 1 are split into numRanges ranges of rangeWidth consecutive IDs.
+ * Tokens are appended in the document order, and sort() moves them into buckets
+ * with a stable counting sort by range, so that each bucket is still in the document order.
+ * Appending and sorting take O(number of tokens + numRanges) time and do not depend on d.
+ *
+ * The parallel scans of the whitening engines keep one instance per document range:
+ * each projection task fills and sorts its own buckets, and then each update task reads
+ * bucket r of all instances, in the document order, and touches only the tokens of its rows.
+ */
+final class TokenBuckets {
+
+  private static final int INITIAL_TOKENS = 16 * 1024;
+
+  private final int rangeWidth;
+
+  /** Start of bucket r is offsets[r]; offsets[numRanges] is the number of tokens. */
+  private final int[] offsets;
+
+  /** Tokens in the order they were added. */
+  private int[] addedIds = new int[INITIAL_TOKENS];
+  private int[] addedDocs = new int[INITIAL_TOKENS];
+  private float[] addedCounts = new float[INITIAL_TOKENS];
+
+  /** Tokens sorted by range. */
+  private int[] ids = new int[INITIAL_TOKENS];
+  private int[] docs = new int[INITIAL_TOKENS];
+  private float[] counts = new float[INITIAL_TOKENS];
+
+  private int size = 0;
+
+  /**
+   * @param numRanges number of ranges of word IDs.
+   * @param rangeWidth number of word IDs in each range; word ID id is in range id / rangeWidth.
+   */
+  TokenBuckets(final int numRanges, final int rangeWidth) {
+    this.rangeWidth = rangeWidth;
+    this.offsets = new int[numRanges + 1];
+  }
+
+  /**
+   * @return number of word IDs in each range such that numRanges ranges cover 0 .. dimD - 1.
+   */
+  static int rangeWidth(final int dimD, final int numRanges) {
+    return Math.max(1, (dimD + numRanges - 1) / numRanges);
+  }
+
+  void clear() {
+    this.size = 0;
+  }
+
+  /**
+   * Append a token of document doc (index of the document in the block).
+   */
+  void add(final int id, final int doc, final float count) {
+    if (this.size == this.addedIds.length) {
+      final int capacity = this.size * 2;
+      this.addedIds = Arrays.copyOf(this.addedIds, capacity);
+      this.addedDocs = Arrays.copyOf(this.addedDocs, capacity);
+      this.addedCounts = Arrays.copyOf(this.addedCounts, capacity);
+    }
+    this.addedIds[this.size] = id;
+    this.addedDocs[this.size] = doc;
+    this.addedCounts[this.size] = count;
+    ++this.size;
+  }
+
+  /**
+   * Move the tokens added since the last clear() into the buckets.
+   */
+  void sort() {
+
+    if (this.ids.length < this.size) {
+      this.ids = new int[this.addedIds.length];
+      this.docs = new int[this.addedIds.length];
+      this.counts = new float[this.addedIds.length];
+    }
+
+    final int[] start = this.offsets;
+    Arrays.fill(start, 0);
+    for (int t = 0; t < this.size; ++t) {
+      ++start[this.addedIds[t] / this.rangeWidth + 1];
+    }
+    for (int r = 1; r < start.length; ++r) {
+      start[r] += start[r - 1];
+    }
+
+    // Use start[r] as the insertion point of range r; afterwards it points
+    // to the end of bucket r, i.e. the start of bucket r + 1.
+    for (int t = 0; t < this.size; ++t) {
+      final int pos = start[this.addedIds[t] / this.rangeWidth]++;
+      this.ids[pos] = this.addedIds[t];
+      this.docs[pos] = this.addedDocs[t];
+      this.counts[pos] = this.addedCounts[t];
+    }
+    System.arraycopy(start, 0, start, 1, start.length - 1);
+    start[0] = 0;
+  }
+
+  /**
+   * @return position of the first token of bucket r.
+   */
+  int start(final int r) {
+    return this.offsets[r];
+  }
+
+  /**
+   * @return position after the last token of bucket r.
+   */
+  int end(final int r) {
+    return this.offsets[r + 1];
+  }
+
+  int id(final int pos) {
+    return this.ids[pos];
+  }
+
+  int doc(final int pos) {
+    return this.docs[pos];
+  }
+
+  float count(final int pos) {
+    return this.counts[pos];
+  }
+}
@@ -0,0 +1,355 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.whiten;
+
+import com.microsoft.canberra.tf.task.Corpus;
+import com.microsoft.canberra.tf.task.Document;
+import com.microsoft.canberra.tf.task.Tokens;
+import com.microsoft.canberra.tf.util.SparseSignProjection;
+import com.microsoft.canberra.tf.util.TensorUtil;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Whitening engine that processes the corpus one token at a time: for each document,
+ * computes the projection x * omega and adds it to the rows of Y of all words of the document.
+ *
+ * The kernels work directly on the primitive arrays and do not allocate.
+ * omega and Y are kept transposed (k'*d), so that the k' elements of each word
+ * are contiguous in memory; getResult() returns Y in that transposed form.
+ * omega can be stored in single precision; Y is always accumulated in double.
+ *
+ * The corpus scan can run on several threads. Documents are processed in blocks
+ * of BLOCK_DOCS: first, the projections x * omega of all documents in the block
+ * are computed in parallel, and each thread sorts the tokens of its documents into
+ * TokenBuckets by the range of rows of muX and Y they update; then each thread
+ * applies the tokens of its own range of rows, in the document order.
+ */
+public final class WhitenAccumulator implements WhitenEngine {
+
+  /** Number of documents processed between two synchronization points of the parallel scan. */
+  private static final int BLOCK_DOCS = 1024;
+
+  /** Number of work items per thread in each phase, to balance the load. */
+  private static final int TASKS_PER_THREAD = 4;
+
+  private final int dimD;
+  private final int dimKprime;
+
+  private final DoubleMatrix muX;
+  private final DoubleMatrix yT;
+  private DoubleMatrix omegaT = null;
+  private float[] omegaTFloat = null;
+  private SparseSignProjection projection = null;
+  private final double[] xOmega;
+
+  /** Projections x * omega, total counts and update scales of the documents of the current block (parallel scan only). */
+  private double[] blockXOmega = null;
+  private double[] blockTotalCount = null;
+  private double[] blockDenom = null;
+
+  /** Tokens of the current block, one instance per projection task, bucketed by update task. */
+  private TokenBuckets[] buckets = null;
+
+  private int examples = 0;
+
+  public WhitenAccumulator(final int dimD, final int dimKprime) {
+    this.dimD = dimD;
+    this.dimKprime = dimKprime;
+    this.muX = DoubleMatrix.zeros(dimD);
+    this.yT = DoubleMatrix.zeros(dimKprime, dimD);
+    this.xOmega = new double[dimKprime];
+  }
+
+  @Override
+  public void reset(final DoubleMatrix omega) {
+    assert(omega.rows == this.dimD && omega.columns == this.dimKprime);
+    if (this.omegaT == null) {
+      this.omegaT = DoubleMatrix.zeros(this.dimKprime, this.dimD);
+    }
+    this.omegaTFloat = null;
+    this.projection = null;
+    TensorUtil.transpose(omega, this.omegaT.data);
+    this.clear();
+  }
+
+  @Override
+  public void reset(final FloatMatrix omega) {
+    assert(omega.rows == this.dimD && omega.columns == this.dimKprime);
+    if (this.omegaTFloat == null) {
+      this.omegaTFloat = new float[this.dimKprime * this.dimD];
+    }
+    this.omegaT = null;
+    this.projection = null;
+    TensorUtil.transpose(omega, this.omegaTFloat);
+    this.clear();
+  }
+
+  @Override
+  public void reset(final SparseSignProjection omega) {
+    assert(omega.getColumns() == this.dimKprime);
+    this.omegaT = null;
+    this.omegaTFloat = null;
+    this.projection = omega;
+    this.clear();
+  }
+
+  private void clear() {
+    this.muX.fill(0);
+    this.yT.fill(0);
+    this.examples = 0;
+  }
+
+  @Override
+  public void onNext(final Document doc) {
+    this.add(doc);
+  }
+
+  @Override
+  public void add(final Tokens doc) {
+    ++this.examples;
+    final double totalCount = this.project(doc, this.xOmega, 0);
+    if (totalCount >= 2) {
+      final double denom = 1.0 / (totalCount * (totalCount - 1.0));
+      for (int t = 0; t < doc.size(); ++t) {
+        this.update(doc.tokenId(t), doc.tokenCount(t), this.xOmega, 0, denom, totalCount);
+      }
+    }
+  }
+
+  @Override
+  public void addAll(final Corpus corpus, final ExecutorService executor, final int numThreads)
+      throws InterruptedException, ExecutionException {
+
+    if (this.blockXOmega == null) {
+      this.blockXOmega = new double[BLOCK_DOCS * this.dimKprime];
+      this.blockTotalCount = new double[BLOCK_DOCS];
+      this.blockDenom = new double[BLOCK_DOCS];
+    }
+
+    final int numTasks = numThreads * TASKS_PER_THREAD;
+    final int rangeWidth = TokenBuckets.rangeWidth(this.dimD, numTasks);
+
+    if (this.buckets == null || this.buckets.length != numTasks) {
+      this.buckets = new TokenBuckets[numTasks];
+      for (int i = 0; i < numTasks; ++i) {
+        this.buckets[i] = new TokenBuckets(numTasks, rangeWidth);
+      }
+    }
+
+    final List<Callable<Void>> projectTasks = new ArrayList<>(numTasks);
+    final List<Callable<Void>> updateTasks = new ArrayList<>(numTasks);
+
+    for (int blockStart = 0; blockStart < corpus.size(); blockStart += BLOCK_DOCS) {
+
+      final int blockEnd = Math.min(blockStart + BLOCK_DOCS, corpus.size());
+      final int blockSize = blockEnd - blockStart;
+
+      projectTasks.clear();
+      for (int i = 0; i < numTasks; ++i) {
+        final int fromDoc = blockStart + (int) ((long) blockSize * i / numTasks);
+        final int toDoc = blockStart + (int) ((long) blockSize * (i + 1) / numTasks);
+        if (fromDoc < toDoc) {
+          projectTasks.add(new ProjectTask(corpus, blockStart, fromDoc, toDoc, this.buckets[projectTasks.size()]));
+        }
+      }
+
+      updateTasks.clear();
+      for (int r = 0; r < numTasks && r * rangeWidth < this.dimD; ++r) {
+        updateTasks.add(new UpdateTask(r, projectTasks.size()));
+      }
+
+      TensorUtil.invokeAll(executor, projectTasks);
+      TensorUtil.invokeAll(executor, updateTasks);
+
+      this.examples += blockSize;
+    }
+  }
+
+  @Override
+  public int getExamples() {
+    return this.examples;
+  }
+
+  @Override
+  public DoubleMatrix[] getResult() {
+    return new DoubleMatrix[] { DoubleMatrix.scalar(this.examples), this.muX, this.yT };
+  }
+
+  /**
+   * Compute projection of the document x * omega (k') into out[offset .. offset + k' - 1].
+   * @return total count of the tokens in the document.
+   */
+  private double project(final Tokens doc, final double[] out, final int offset) {
+
+    final int dimK = this.dimKprime;
+
+    Arrays.fill(out, offset, offset + dimK, 0);
+
+    double totalCount = 0;
+
+    if (this.projection != null) {
+      for (int t = 0; t < doc.size(); ++t) {
+        final double count = doc.tokenCount(t);
+        this.projection.addRow(doc.tokenId(t), count, out, offset);
+        totalCount += count;
+      }
+      return totalCount;
+    }
+
+    if (this.omegaTFloat != null) {
+      final float[] omega = this.omegaTFloat;
+      for (int t = 0; t < doc.size(); ++t) {
+        final double count = doc.tokenCount(t);
+        final int base = doc.tokenId(t) * dimK;
+        for (int j = 0; j < dimK; ++j) {
+          out[offset + j] += omega[base + j] * count;
+        }
+        totalCount += count;
+      }
+      return totalCount;
+    }
+
+    final double[] omega = this.omegaT.data;
+    for (int t = 0; t < doc.size(); ++t) {
+      final double count = doc.tokenCount(t);
+      final int base = doc.tokenId(t) * dimK;
+      for (int j = 0; j < dimK; ++j) {
+        out[offset + j] += omega[base + j] * count;
+      }
+      totalCount += count;
+    }
+
+    return totalCount;
+  }
+
+  /**
+   * Add the contribution of one token of a document with at least two tokens to muX and Y.
+   * Projection of the document is in docXOmega[offset .. offset + k' - 1].
+   * @param denom 1 / (m * (m - 1)), where m is the total count of the tokens in the document.
+   * @param totalCount total count of the tokens in the document.
+   */
+  private void update(final int id, final double count, final double[] docXOmega, final int offset,
+                      final double denom, final double totalCount) {
+
+    final int dimK = this.dimKprime;
+    final double[] y = this.yT.data;
+    final double scale = count * denom;
+    final int base = id * dimK;
+
+    if (this.omegaT != null) {
+      final double[] omega = this.omegaT.data;
+      for (int j = 0; j < dimK; ++j) {
+        y[base + j] += (docXOmega[offset + j] - omega[base + j]) * scale;
+      }
+    } else if (this.omegaTFloat != null) {
+      final float[] omega = this.omegaTFloat;
+      for (int j = 0; j < dimK; ++j) {
+        y[base + j] += (docXOmega[offset + j] - omega[base + j]) * scale;
+      }
+    } else {
+      for (int j = 0; j < dimK; ++j) {
+        y[base + j] += docXOmega[offset + j] * scale;
+      }
+      this.projection.addRow(id, -scale, y, base);
+    }
+
+    this.muX.data[id] += count / totalCount;
+  }
+
+  /**
+   * Phase 1 of the parallel scan: project documents fromDoc .. toDoc - 1 of the block,
+   * and sort their tokens into buckets by the update task that applies them.
+   */
+  private final class ProjectTask implements Callable<Void> {
+
+    private final Corpus corpus;
+    private final int blockStart;
+    private final int fromDoc;
+    private final int toDoc;
+    private final TokenBuckets tokens;
+
+    private ProjectTask(final Corpus corpus, final int blockStart, final int fromDoc, final int toDoc,
+                        final TokenBuckets tokens) {
+      this.corpus = corpus;
+      this.blockStart = blockStart;
+      this.fromDoc = fromDoc;
+      this.toDoc = toDoc;
+      this.tokens = tokens;
+    }
+
+    @Override
+    public Void call() {
+      this.tokens.clear();
+      final Corpus.Cursor doc = this.corpus.cursor(this.fromDoc, this.toDoc);
+      for (int i = this.fromDoc - this.blockStart; doc.next(); ++i) {
+        final double totalCount = project(doc, blockXOmega, i * dimKprime);
+        blockTotalCount[i] = totalCount;
+        if (totalCount >= 2) {
+          blockDenom[i] = 1.0 / (totalCount * (totalCount - 1.0));
+          for (int t = 0; t < doc.size(); ++t) {
+            this.tokens.add(doc.tokenId(t), i, doc.tokenCount(t));
+          }
+        }
+      }
+      this.tokens.sort();
+      return null;
+    }
+  }
+
+  /**
+   * Phase 2 of the parallel scan: apply the tokens of bucket r of all projection tasks,
+   * in the document order, to the rows of muX and Y in range r.
+   */
+  private final class UpdateTask implements Callable<Void> {
+
+    private final int range;
+    private final int numBuckets;
+
+    private UpdateTask(final int range, final int numBuckets) {
+      this.range = range;
+      this.numBuckets = numBuckets;
+    }
+
+    @Override
+    public Void call() {
+      for (int b = 0; b < this.numBuckets; ++b) {
+        final TokenBuckets tokens = buckets[b];
+        for (int pos = tokens.start(this.range); pos < tokens.end(this.range); ++pos) {
+          final int n = tokens.doc(pos);
+          update(tokens.id(pos), tokens.count(pos), blockXOmega, n * dimKprime, blockDenom[n], blockTotalCount[n]);
+        }
+      }
+      return null;
+    }
+  }
+}
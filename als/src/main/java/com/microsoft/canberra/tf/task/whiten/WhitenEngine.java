@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.whiten;
+
+import com.microsoft.canberra.tf.task.Corpus;
+import com.microsoft.canberra.tf.task.Document;
+import com.microsoft.canberra.tf.task.Tokens;
+import com.microsoft.canberra.tf.util.SparseSignProjection;
+
+import org.apache.reef.wake.EventHandler;
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Worker side of one whitening power iteration: accumulates the number of examples,
+ * the word frequency vector muX (d) and Y = E[x x^T] * omega (d*k') over the documents
+ * of the partition. Can be fed from a corpus scan or, as an EventHandler,
+ * from InputData while the partition is being loaded.
+ */
+public interface WhitenEngine extends EventHandler<Document> {
+
+  /**
+   * Start a new iteration with the given projection matrix omega (d*k').
+   */
+  void reset(final DoubleMatrix omega);
+
+  /**
+   * Same as reset(DoubleMatrix), but omega is kept in single precision.
+   * Products with omega and the sums of the iteration are still computed in double.
+   */
+  void reset(final FloatMatrix omega);
+
+  /**
+   * Start a new iteration with a sparse projection matrix omega (d*k') whose rows
+   * are generated on demand, so that omega does not have to be stored.
+   */
+  void reset(final SparseSignProjection omega);
+
+  void add(final Tokens doc);
+
+  /**
+   * Accumulate all documents of the corpus, using numThreads threads of the executor.
+   * Each row of muX and Y is summed in the document order, so the result is the same
+   * as of add() on each document and does not depend on the number of threads.
+   * @throws ExecutionException if processing fails in one of the threads.
+   */
+  void addAll(final Corpus corpus, final ExecutorService executor, final int numThreads)
+      throws InterruptedException, ExecutionException;
+
+  int getExamples();
+
+  /**
+   * @return partial sums of the iteration to reduce: number of examples, muX (d),
+   * and Y transposed (k'*d).
+   */
+  DoubleMatrix[] getResult();
+}
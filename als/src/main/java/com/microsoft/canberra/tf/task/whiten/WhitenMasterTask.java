@@ -26,6 +26,8 @@ package com.microsoft.canberra.tf.task.whiten;
 import com.microsoft.canberra.tf.Launch;
 import com.microsoft.canberra.tf.task.TaskEnvironment;
 import com.microsoft.canberra.tf.taskgroup.TaskGroupDescriptor;
+import com.microsoft.canberra.tf.util.SparseRowMatrix;
+import com.microsoft.canberra.tf.util.SparseSignProjection;
 import com.microsoft.canberra.tf.util.TensorUtil;
 
 import org.apache.reef.annotations.audience.TaskSide;
@@ -55,29 +57,50 @@ public final class WhitenMasterTask implements Task {
 
   static final long SEED_OMEGA = 1412218259;
 
+  /** Number of nonzeros in each row of the sparse sign omega. */
+  private static final int SIGN_NONZEROS = 8;
+
   private final int dimD;
   private final int dimK;
   private final int dimKprime;
   private final double alpha0;
+  private final int maxIterations;
+  private final double tolerance;
+  private final String omegaType;
+  private final boolean single;
+  private final boolean fuseM1;
   private final TaskEnvironment env;
 
-  private final Broadcast.Sender<DoubleMatrix> modelSender;
-  private final Reduce.Receiver<DoubleMatrix[]> resultReceiver;
+  private final Broadcast.Sender<WhitenModel> modelSender;
+  private final Reduce.Receiver<SparseRowMatrix[]> resultReceiver;
+
+  /** Gather and scatter of the rows of the local vocabularies of the workers; null without -local_vocab. */
+  private final LocalRowsMaster localRows;
 
   @Inject
   public WhitenMasterTask(
       final @Parameter(TaskConfigurationOptions.Identifier.class) String taskId,
       final @Parameter(Launch.Alpha0.class) double alpha0,
-      final @Parameter(Launch.DimD.class) int dimD,
       final @Parameter(Launch.DimK.class) int dimK,
       final @Parameter(Launch.DimKPrime.class) int dimKprime,
+      final @Parameter(Launch.WhitenIterations.class) int maxIterations,
+      final @Parameter(Launch.WhitenTolerance.class) double tolerance,
+      final @Parameter(Launch.OmegaType.class) String omegaType,
+      final @Parameter(Launch.LocalVocab.class) boolean localVocab,
+      final @Parameter(Launch.WhitenDataType.class) String dataType,
+      final @Parameter(Launch.FuseM1.class) boolean fuseM1,
       final GroupCommClient groupCommClient,
       final TaskEnvironment env) {
 
-    this.dimD = dimD;
+    this.dimD = env.getDimD();
     this.dimK = dimK;
     this.dimKprime = dimKprime;
     this.alpha0 = alpha0;
+    this.maxIterations = maxIterations;
+    this.tolerance = tolerance;
+    this.omegaType = omegaType;
+    this.single = isSinglePrecision(dataType);
+    this.fuseM1 = fuseM1;
     this.env = env;
 
     final CommunicationGroupClient commGroup =
@@ -85,10 +108,11 @@ public final class WhitenMasterTask implements Task {
 
     this.modelSender = commGroup.getBroadcastSender(DESCRIPTOR.getBroadcastIdClass());
     this.resultReceiver = commGroup.getReduceReceiver(DESCRIPTOR.getReduceIdClass());
+    this.localRows = localVocab ? new LocalRowsMaster(DESCRIPTOR, commGroup, this.dimD, this.single) : null;
 
     LOG.log(Level.FINEST,
-        "WhitenMasterTask {0} created: d*k_prime = {1} * {2}",
-        new Object[] { taskId, dimD, dimKprime });
+        "WhitenMasterTask {0} created: d*k_prime = {1} * {2} iterations: {3} tolerance: {4}",
+        new Object[] { taskId, this.dimD, dimKprime, maxIterations, tolerance });
   }
 
   @Override
@@ -97,20 +121,22 @@ public final class WhitenMasterTask implements Task {
     LOG.log(Level.FINEST, "WhitenMasterTask started");
 
     int examples = 0;
-    DoubleMatrix omega = TensorUtil.gaussian(this.dimD, this.dimKprime, SEED_OMEGA);
+    DoubleMatrix omega = initialOmega(this.omegaType, this.dimD, this.dimKprime);
     DoubleMatrix sigma = null;
 
     LOG.log(Level.FINEST, "WhitenMasterTask init: omega = {0}", omega);
 
-    for (int i = 0; i < 2; ++i) {
+    boolean done = false;
+    for (int i = 0; !done; ++i) {
 
       LOG.log(Level.FINEST, "WhitenMasterTask iteration {0} start", i);
 
-      final DoubleMatrix[] reduced = this.resultReceiver.reduce();
+      final DoubleMatrix[] reduced = this.localRows != null ? this.localRows.reduce()
+          : fromSparseRows(this.resultReceiver.reduce());
 
       examples = (int) reduced[0].get(0);
       final DoubleMatrix muX = reduced[1]; // 1*d
-      final DoubleMatrix Y = reduced[2];   // d*k
+      final DoubleMatrix Y = reduced[2].transpose(); // workers send k*d
 
       LOG.log(Level.FINEST,
           "WhitenMasterTask iteration {0}: {1} examples", new Object[]{ i, examples });
@@ -128,8 +154,19 @@ public final class WhitenMasterTask implements Task {
         Y.subi(muX.mmul(muXOmega).muli(this.alpha0));
       }
 
-      if (i == 0) {
-        omega = TensorUtil.orthogonalize(Y);
+      // The first pass only finds the range of the random projection;
+      // after that, stop when the range does not change much between passes.
+      DoubleMatrix basis = null;
+      done = i + 1 >= this.maxIterations;
+      if (i > 0 && !done && this.tolerance > 0) {
+        basis = TensorUtil.orthogonalize(Y.dup());
+        final double change = subspaceChange(omega, basis);
+        LOG.log(Level.INFO, "WhitenMasterTask iteration {0}: subspace change = {1}", new Object[] { i, change });
+        done = change < this.tolerance;
+      }
+
+      if (!done) {
+        omega = basis == null ? TensorUtil.orthogonalize(Y) : basis;
       } else {
 
         final DoubleMatrix[] eigen = Eigen.symmetricEigenvectors(Y.transpose().mmul(Y));
@@ -152,7 +189,14 @@ public final class WhitenMasterTask implements Task {
 
       LOG.log(Level.FINEST, "WhitenMasterTask iteration {0} send omega", i);
 
-      this.modelSender.send(omega);
+      // With -fuse_m1, the workers need sigma to compute M1 with the final omega.
+      final DoubleMatrix sigmaM1 = done && this.fuseM1 ? sigma : null;
+
+      if (this.localRows != null) {
+        this.localRows.send(omega, sigmaM1, done);
+      } else {
+        this.modelSender.send(new WhitenModel(omega, sigmaM1, this.single, done));
+      }
 
       LOG.log(Level.FINEST, "WhitenMasterTask omega = {0}", omega);
       LOG.log(Level.FINEST, "WhitenMasterTask sigma = {0}", sigma);
@@ -161,11 +205,86 @@ public final class WhitenMasterTask implements Task {
     assert(sigma != null);
 
     this.env.setOmega(omega)
-            .setSigma(sigma)
             .setExamples(examples);
 
+    if (this.fuseM1) {
+      this.env.setM1(reduceM1(this.resultReceiver, examples));
+    } else {
+      this.env.setSigma(sigma);
+    }
+
     LOG.log(Level.FINEST, "WhitenMasterTask complete: {0} examples", examples);
 
     return null;
   }
+
+  /**
+   * @return sparse projection of the given -omega_type, or null for the dense Gaussian omega.
+   */
+  static SparseSignProjection newProjection(final String omegaType, final int dimKprime) {
+    switch (omegaType) {
+    case "gaussian":
+      return null;
+    case "sign":
+      return new SparseSignProjection(dimKprime, Math.min(dimKprime, SIGN_NONZEROS), SEED_OMEGA);
+    case "countsketch":
+      return new SparseSignProjection(dimKprime, 1, SEED_OMEGA);
+    default:
+      throw new IllegalArgumentException("Unknown omega type: " + omegaType);
+    }
+  }
+
+  /**
+   * @return true for the -whiten_dtype float32, false for float64.
+   */
+  static boolean isSinglePrecision(final String dataType) {
+    switch (dataType) {
+    case "float64":
+      return false;
+    case "float32":
+      return true;
+    default:
+      throw new IllegalArgumentException("Unknown whitening data type: " + dataType);
+    }
+  }
+
+  /**
+   * @return the random omega (d*k') of the first whitening pass, as a dense matrix.
+   */
+  static DoubleMatrix initialOmega(final String omegaType, final int dimD, final int dimKprime) {
+    final SparseSignProjection projection = newProjection(omegaType, dimKprime);
+    return projection == null ? TensorUtil.gaussianRows(dimD, dimKprime, SEED_OMEGA) : projection.toMatrix(dimD);
+  }
+
+  /**
+   * Receive the sums of wc / |x| that the workers compute after the final omega with -fuse_m1.
+   * @return M1 (k), the same as M1MasterTask computes.
+   */
+  static DoubleMatrix reduceM1(final Reduce.Receiver<SparseRowMatrix[]> resultReceiver, final int examples)
+      throws Exception {
+    final DoubleMatrix m1 = resultReceiver.reduce()[0].toDense().divi(examples);
+    LOG.log(Level.FINEST, "WhitenMasterTask M1 = {0}", m1);
+    return m1;
+  }
+
+  /**
+   * @return dense {examples, muX (d), Y^T (k'*d)} from the reduced WhitenTask.toSparseRows() result.
+   */
+  static DoubleMatrix[] fromSparseRows(final SparseRowMatrix[] reduced) {
+    return new DoubleMatrix[] {
+        reduced[0].toDense(),
+        reduced[1].toDense(),
+        reduced[2].toDenseTransposed()
+    };
+  }
+
+  /**
+   * Distance between the subspaces spanned by the orthonormal columns of Q1 and Q2,
+   * ||Q2 - Q1 * Q1^T * Q2||_F / sqrt(k'), i.e. the root mean square of the sines
+   * of the principal angles between the two subspaces.
+   */
+  private static double subspaceChange(final DoubleMatrix Q1, final DoubleMatrix Q2) {
+    final DoubleMatrix residual = Q2.sub(Q1.mmul(Q1.transpose().mmul(Q2)));
+    return residual.norm2() / Math.sqrt(Q2.columns);
+  }
 }
@@ -0,0 +1,96 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.whiten;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+import org.jblas.MatrixFunctions;
+
+import java.io.Serializable;
+
+/**
+ * Omega sent by the whitening master to the workers after each pass, in double or single
+ * precision (see -whiten_dtype), and the flag that tells whether this is the final omega.
+ * With -fuse_m1, the final omega also comes with sigma, so that the workers can compute M1.
+ */
+final class WhitenModel implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final DoubleMatrix omega;
+  private final FloatMatrix omegaFloat;
+  private final DoubleMatrix sigma;
+  private final boolean done;
+
+  WhitenModel(final DoubleMatrix omega, final boolean single, final boolean done) {
+    this(omega, null, single, done);
+  }
+
+  /**
+   * @param sigma denominators of the columns of the final omega for M1Accumulator, or null.
+   */
+  WhitenModel(final DoubleMatrix omega, final DoubleMatrix sigma, final boolean single, final boolean done) {
+    assert(sigma == null || done);
+    this.omega = single ? null : omega;
+    this.omegaFloat = single ? MatrixFunctions.doubleToFloat(omega) : null;
+    this.sigma = sigma;
+    this.done = done;
+  }
+
+  boolean isDone() {
+    return this.done;
+  }
+
+  /**
+   * Start the next pass of the engine with this omega, in its precision.
+   */
+  void reset(final WhitenEngine engine) {
+    if (this.omega != null) {
+      engine.reset(this.omega);
+    } else {
+      engine.reset(this.omegaFloat);
+    }
+  }
+
+  /**
+   * @return omega in double precision; converted (i.e. copied) if the model is in single precision.
+   */
+  DoubleMatrix getOmega() {
+    return this.omega != null ? this.omega : MatrixFunctions.floatToDouble(this.omegaFloat);
+  }
+
+  /**
+   * @return omega in single precision, or null if the model is in double precision.
+   */
+  FloatMatrix getOmegaFloat() {
+    return this.omegaFloat;
+  }
+
+  /**
+   * @return sigma of the final omega, or null if the workers do not compute M1 in the whitening task.
+   */
+  DoubleMatrix getSigma() {
+    return this.sigma;
+  }
+}
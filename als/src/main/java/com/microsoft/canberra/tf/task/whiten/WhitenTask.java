@@ -23,126 +23,303 @@
  */
 package com.microsoft.canberra.tf.task.whiten;
 
+import com.microsoft.canberra.tf.task.Corpus;
 import com.microsoft.canberra.tf.task.InputData;
 import com.microsoft.canberra.tf.Launch;
 import com.microsoft.canberra.tf.task.TaskEnvironment;
+import com.microsoft.canberra.tf.task.m1.M1Accumulator;
 import com.microsoft.canberra.tf.taskgroup.TaskGroupDescriptor;
-import com.microsoft.canberra.tf.task.Document;
+import com.microsoft.canberra.tf.util.SparseRowMatrix;
+import com.microsoft.canberra.tf.util.SparseSignProjection;
 import com.microsoft.canberra.tf.util.TensorUtil;
 
 import org.apache.reef.annotations.audience.TaskSide;
 import org.apache.reef.driver.task.TaskConfigurationOptions;
 import org.apache.reef.io.network.group.api.operators.Broadcast;
+import org.apache.reef.io.network.group.api.operators.Gather;
 import org.apache.reef.io.network.group.api.operators.Reduce;
+import org.apache.reef.io.network.group.api.operators.Scatter;
 import org.apache.reef.io.network.group.api.task.CommunicationGroupClient;
 import org.apache.reef.io.network.group.api.task.GroupCommClient;
 import org.apache.reef.task.Task;
 import org.apache.reef.tang.annotations.Parameter;
 
 import org.jblas.DoubleMatrix;
+import org.jblas.MatrixFunctions;
 
 import javax.inject.Inject;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Worker side of the whitening: in each pass over the corpus, accumulates muX and Y = M2 * omega
+ * for the omega received from the master, until the master sends the final omega.
+ * The same task serves all whitening methods; they only differ in the master task.
+ *
+ * With -local_vocab, the corpus uses the local word IDs of the partition, muX and Y only
+ * have rows for the words of the partition, and they are exchanged with the master through
+ * gather and scatter instead of reduce and broadcast (see LocalRowsMaster).
+ * Otherwise, muX and Y are reduced in the row-sparse form, so that each worker only sends
+ * the rows of the words that occur in its partition.
+ *
+ * With -fuse_m1, the final omega comes with sigma, and the task also does the work of M1Task:
+ * it computes wc and counts in one more pass over the corpus that is still in memory,
+ * and sends the partial sum of M1 to the master through the same reduce.
+ */
 @TaskSide
-public final class WhitenTask implements Task {
-
-  private static final TaskGroupDescriptor DESCRIPTOR = WhitenTaskGroupDescriptor.INSTANCE;
+public class WhitenTask implements Task {
 
   private static final Logger LOG = Logger.getLogger(WhitenTask.class.getName());
 
+  private final String taskId;
   private final int dimD;
   private final int dimKprime;
+  private final boolean streaming;
+  private final boolean localVocab;
+  private final boolean single;
+  private final int numThreads;
+  private final String kernel;
+  private final String omegaType;
+  private final String wcStorage;
+
+  private final InputData data;
 
   private final TaskEnvironment env;
-  private final Broadcast.Receiver<DoubleMatrix> modelReceiver;
-  private final Reduce.Sender<DoubleMatrix[]> resultSender;
+  private final Broadcast.Receiver<WhitenModel> modelReceiver;
+  private final Reduce.Sender<SparseRowMatrix[]> resultSender;
+  private final Scatter.Receiver<WhitenModel> localModelReceiver;
+  private final Gather.Sender<LocalRows> localResultSender;
 
   @Inject
   public WhitenTask(
       final @Parameter(TaskConfigurationOptions.Identifier.class) String taskId,
-      final @Parameter(Launch.DimD.class) int dimD,
       final @Parameter(Launch.DimKPrime.class) int dimKprime,
+      final @Parameter(Launch.Streaming.class) boolean streaming,
+      final @Parameter(Launch.WorkerThreads.class) int numThreads,
+      final @Parameter(Launch.WhitenKernel.class) String kernel,
+      final @Parameter(Launch.OmegaType.class) String omegaType,
+      final @Parameter(Launch.LocalVocab.class) boolean localVocab,
+      final @Parameter(Launch.WhitenDataType.class) String dataType,
+      final @Parameter(Launch.WcStorage.class) String wcStorage,
       final GroupCommClient groupCommClient,
       final InputData data,
       final TaskEnvironment env) {
+    this(WhitenTaskGroupDescriptor.INSTANCE, taskId, dimKprime, streaming, numThreads, kernel, omegaType,
+         localVocab, WhitenMasterTask.isSinglePrecision(dataType), wcStorage, groupCommClient, data, env);
+  }
 
-    this.dimD = dimD;
+  WhitenTask(
+      final TaskGroupDescriptor descriptor,
+      final String taskId,
+      final int dimKprime,
+      final boolean streaming,
+      final int numThreads,
+      final String kernel,
+      final String omegaType,
+      final boolean localVocab,
+      final boolean single,
+      final String wcStorage,
+      final GroupCommClient groupCommClient,
+      final InputData data,
+      final TaskEnvironment env) {
+
+    this.taskId = taskId;
+    this.dimD = env.getDimD();
     this.dimKprime = dimKprime;
+    this.streaming = streaming;
+    this.localVocab = localVocab;
+    this.single = single;
+    this.numThreads = numThreads;
+    this.kernel = kernel;
+    this.omegaType = omegaType;
+    this.wcStorage = wcStorage;
+    this.data = data;
     this.env = env;
 
     final CommunicationGroupClient commGroup =
-        groupCommClient.getCommunicationGroup(DESCRIPTOR.getCommGroupIdClass());
+        groupCommClient.getCommunicationGroup(descriptor.getCommGroupIdClass());
 
-    this.modelReceiver = commGroup.getBroadcastReceiver(DESCRIPTOR.getBroadcastIdClass());
-    this.resultSender = commGroup.getReduceSender(DESCRIPTOR.getReduceIdClass());
+    this.modelReceiver = commGroup.getBroadcastReceiver(descriptor.getBroadcastIdClass());
+    this.resultSender = commGroup.getReduceSender(descriptor.getReduceIdClass());
 
-    LOG.log(Level.FINEST,
-        "WhitenTask {0} created: d*k_prime = {1} * {2}", new Object[] { taskId, dimD, dimKprime });
+    if (localVocab) {
+      this.localModelReceiver = commGroup.getScatterReceiver(descriptor.getScatterIdClass());
+      this.localResultSender = commGroup.getGatherSender(descriptor.getGatherIdClass());
+    } else {
+      this.localModelReceiver = null;
+      this.localResultSender = null;
+    }
 
-    env.setDocuments(data.getDocuments());
+    LOG.log(Level.FINEST,
+        "WhitenTask {0} created: d*k_prime = {1} * {2} threads: {3} kernel: {4} omega: {5} local vocab: {6}"
+            + " float32: {7}",
+        new Object[] { taskId, this.dimD, dimKprime, numThreads, kernel, omegaType, localVocab, single });
   }
 
   @Override
-  public byte[] call(final byte[] memento) throws Exception {
+  public final byte[] call(final byte[] memento) throws Exception {
 
-    LOG.log(Level.FINEST, "WhitenTask started");
+    LOG.log(Level.FINEST, "WhitenTask started: streaming = {0}", this.streaming);
 
-    int examples = 0;
-    DoubleMatrix omega = TensorUtil.gaussian(dimD, dimKprime, WhitenMasterTask.SEED_OMEGA);
+    final ExecutorService executor = this.numThreads > 1 ? Executors.newFixedThreadPool(this.numThreads) : null;
 
-    final DoubleMatrix muX = DoubleMatrix.zeros(this.dimD);
-    final DoubleMatrix Y = DoubleMatrix.zeros(this.dimD, this.dimKprime);
-    final DoubleMatrix xOmega = DoubleMatrix.zeros(this.dimKprime);
+    try {
 
-    for (int i = 0; i < 2; ++i) {
+      final WhitenModel model = this.whiten(executor);
 
-      LOG.log(Level.FINEST, "WhitenTask iteration {0} start", i);
+      // Workers only need omega for M1, so with -fuse_m1 it is not kept in the environment.
+      // In single precision it stays in float, and M1 uses it as is.
+      if (model.getSigma() != null) {
+        this.addM1(model, executor);
+      } else if (model.getOmegaFloat() != null) {
+        this.env.setOmegaFloat(model.getOmegaFloat());
+      } else {
+        this.env.setOmega(model.getOmega());
+      }
 
-      muX.fill(0);
-      Y.fill(0);
-      examples = 0;
-      for (final Document doc : this.env.getDocuments()) {
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
 
-        ++examples;
+    return null;
+  }
 
-        // LOG.log(Level.FINEST,
-        //     "WhitenTask iteration {0} example {1} = {2}", new Object[] { i, examples, doc });
+  /**
+   * Run the whitening passes over the corpus until the master sends the final omega.
+   * The engine keeps its own copy of omega, so each received model is dropped as soon as
+   * it is copied into the engine, and the engine itself is only referenced from this method.
+   * @return the final model received from the master.
+   */
+  private WhitenModel whiten(final ExecutorService executor) throws Exception {
+
+    // Local word IDs are only known once the whole partition is loaded.
+    if (this.localVocab) {
+      this.env.setCorpus(this.data.load(null));
+    }
 
-        xOmega.fill(0);
-        double totalCount = 0;
-        for (final Document.Token token : doc) {
-          xOmega.addi(omega.getRow(token.id).mul(token.count));
-          totalCount += token.count;
-        }
+    final int[] vocabulary = this.env.getLocalVocabulary();
+    final WhitenEngine acc = newWhitenEngine(this.kernel, this.env.getLocalDimD(), this.dimKprime);
+
+    // Initial omega does not depend on the data, so in the streaming mode
+    // the first iteration is accumulated while the corpus is being loaded.
+    this.resetInitial(acc, vocabulary);
 
-        if (totalCount >= 2) {
+    if (!this.localVocab) {
+      this.env.setCorpus(this.data.load(this.streaming ? acc : null));
+    }
+
+    WhitenModel model = null;
+
+    boolean done = false;
+    for (int i = 0; !done; ++i) {
 
-          final double denom = 1.0 / (totalCount * (totalCount - 1.0));
+      LOG.log(Level.FINEST, "WhitenTask iteration {0} start", i);
 
-          for (final Document.Token token : doc) {
-            final DoubleMatrix row = Y.getRow(token.id);
-            row.addi(xOmega.sub(omega.getRow(token.id)).mul(token.count * denom));
-            Y.putRow(token.id, row);
-            muX.put(token.id, muX.get(token.id) + token.count / totalCount);
+      if (i > 0 || !this.streaming) {
+        if (i > 0) {
+          model.reset(acc);
+          model = null;
+        }
+        if (executor == null) {
+          final Corpus.Cursor doc = this.env.getCorpus().cursor();
+          while (doc.next()) {
+            acc.add(doc);
           }
+        } else {
+          acc.addAll(this.env.getCorpus(), executor, this.numThreads);
         }
       }
 
       LOG.log(Level.FINEST, "WhitenTask iteration {0} send muX, Y", i);
 
-      this.resultSender.send(new DoubleMatrix[] { DoubleMatrix.scalar(examples), muX, Y });
+      if (this.localVocab) {
+        this.localResultSender.send(
+            new LocalRows(this.taskId, i == 0 ? vocabulary : null, toSparseRows(acc.getResult(), this.single)));
+        LOG.log(Level.FINEST, "WhitenTask iteration {0} receive omega rows", i);
+        model = this.localModelReceiver.receive().get(0);
+      } else {
+        this.resultSender.send(toSparseRows(acc.getResult(), this.single));
+        LOG.log(Level.FINEST, "WhitenTask iteration {0} receive omega", i);
+        model = this.modelReceiver.receive();
+      }
 
-      LOG.log(Level.FINEST, "WhitenTask iteration {0} receive omega", i);
+      done = model.isDone();
+    }
+
+    this.env.setExamples(acc.getExamples());
+
+    LOG.log(Level.FINEST, "WhitenTask complete: {0} examples", acc.getExamples());
+
+    return model;
+  }
 
-      omega = this.modelReceiver.receive();
+  /**
+   * Reset the engine to the initial omega, the same as in WhitenMasterTask.initialOmega().
+   * Sparse omega is not materialized: its rows are generated as needed. With the local vocabulary,
+   * only the rows of the words of the partition are generated.
+   */
+  private void resetInitial(final WhitenEngine acc, final int[] vocabulary) {
+    final SparseSignProjection projection = WhitenMasterTask.newProjection(this.omegaType, this.dimKprime);
+    if (projection == null) {
+      final DoubleMatrix omega = vocabulary == null
+          ? TensorUtil.gaussianRows(this.dimD, this.dimKprime, WhitenMasterTask.SEED_OMEGA)
+          : TensorUtil.gaussianRows(vocabulary, this.dimKprime, WhitenMasterTask.SEED_OMEGA);
+      if (this.single) {
+        acc.reset(MatrixFunctions.doubleToFloat(omega));
+      } else {
+        acc.reset(omega);
+      }
+    } else {
+      acc.reset(vocabulary == null ? projection : projection.select(vocabulary));
     }
+  }
 
-    this.env.setOmega(omega).setExamples(examples);
+  /**
+   * Compute wc and counts for the final omega, same as M1Task, and send the partial sum of M1.
+   * omega is used in the precision of the model.
+   */
+  private void addM1(final WhitenModel model, final ExecutorService executor) throws Exception {
 
-    LOG.log(Level.FINEST, "WhitenTask complete: {0} examples", examples);
+    LOG.log(Level.FINEST, "WhitenTask compute wc");
 
-    return null;
+    final M1Accumulator acc = model.getOmegaFloat() != null
+        ? new M1Accumulator(model.getOmegaFloat(), model.getSigma(), this.wcStorage)
+        : new M1Accumulator(model.getOmega(), model.getSigma(), this.wcStorage);
+    final DoubleMatrix m1 = acc.addAll(this.env.getCorpus(), executor);
+
+    LOG.log(Level.FINEST, "WhitenTask send M1");
+
+    this.resultSender.send(new SparseRowMatrix[] { SparseRowMatrix.fromRows(m1, false) });
+
+    this.env.setWc(acc.getWc())
+            .clearCorpus();
+  }
+
+  /**
+   * @param result {examples, muX (d), Y^T (k'*d)} as returned by WhitenEngine.getResult().
+   * @param single if true, convert muX and Y to single precision.
+   * @return the same as row-sparse matrices {1*1, d*1, d*k'}; see WhitenMasterTask.fromSparseRows().
+   */
+  static SparseRowMatrix[] toSparseRows(final DoubleMatrix[] result, final boolean single) {
+    return new SparseRowMatrix[] {
+        SparseRowMatrix.fromRows(result[0], false),
+        SparseRowMatrix.fromRows(result[1], single),
+        SparseRowMatrix.fromTransposed(result[2], single)
+    };
+  }
+
+  private static WhitenEngine newWhitenEngine(final String kernel, final int dimD, final int dimKprime) {
+    switch (kernel) {
+    case "spmm":
+      return new SpmmWhitenAccumulator(dimD, dimKprime);
+    case "rows":
+      return new WhitenAccumulator(dimD, dimKprime);
+    default:
+      throw new IllegalArgumentException("Unknown whitening kernel: " + kernel);
+    }
   }
 }
@@ -23,7 +23,7 @@
  */
 package com.microsoft.canberra.tf.task.whiten;
 
-import com.microsoft.canberra.tf.task.MatrixSumReducer;
+import com.microsoft.canberra.tf.task.SparseRowSumReducer;
 import com.microsoft.canberra.tf.taskgroup.TaskGroupDescriptor;
 
 import org.apache.reef.annotations.audience.DriverSide;
@@ -36,11 +36,14 @@ public final class WhitenTaskGroupDescriptor extends TaskGroupDescriptor {
   @NamedParameter private static final class WhitenCommGroupId implements Name<String> {}
   @NamedParameter private static final class WhitenBroadcastId implements Name<String> {}
   @NamedParameter private static final class WhitenReduceId implements Name<String> {}
+  @NamedParameter private static final class WhitenScatterId implements Name<String> {}
+  @NamedParameter private static final class WhitenGatherId implements Name<String> {}
 
   public static final TaskGroupDescriptor INSTANCE = new WhitenTaskGroupDescriptor();
 
   private WhitenTaskGroupDescriptor() {
     super("TF-Whiten-", WhitenCommGroupId.class, WhitenBroadcastId.class, WhitenReduceId.class,
-          MatrixSumReducer.class, WhitenMasterTask.class, WhitenTask.class);
+          WhitenScatterId.class, WhitenGatherId.class,
+          SparseRowSumReducer.class, WhitenMasterTask.class, WhitenTask.class);
   }
 }
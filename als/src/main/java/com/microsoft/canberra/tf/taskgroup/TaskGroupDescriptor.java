@@ -35,6 +35,8 @@ public class TaskGroupDescriptor {
   private final Class<? extends Name<String>> commGroupIdClass;
   private final Class<? extends Name<String>> broadcastIdClass;
   private final Class<? extends Name<String>> reduceIdClass;
+  private final Class<? extends Name<String>> scatterIdClass;
+  private final Class<? extends Name<String>> gatherIdClass;
 
   private final Class<? extends Reduce.ReduceFunction<?>> reducerClass;
 
@@ -49,12 +51,32 @@ public class TaskGroupDescriptor {
       final Class<? extends Reduce.ReduceFunction<?>> reducerClass,
       final Class<? extends Task> masterTaskClass,
       final Class<? extends Task> workerTaskClass) {
+    this(taskPrefix, commGroupIdClass, broadcastIdClass, reduceIdClass, null, null,
+         reducerClass, masterTaskClass, workerTaskClass);
+  }
+
+  /**
+   * Descriptor of a group that can also exchange data through scatter (master to workers)
+   * and gather (workers to master) operators, if the driver enables them.
+   */
+  protected TaskGroupDescriptor(
+      final String taskPrefix,
+      final Class<? extends Name<String>> commGroupIdClass,
+      final Class<? extends Name<String>> broadcastIdClass,
+      final Class<? extends Name<String>> reduceIdClass,
+      final Class<? extends Name<String>> scatterIdClass,
+      final Class<? extends Name<String>> gatherIdClass,
+      final Class<? extends Reduce.ReduceFunction<?>> reducerClass,
+      final Class<? extends Task> masterTaskClass,
+      final Class<? extends Task> workerTaskClass) {
 
     this.taskPrefix = taskPrefix;
     this.masterTaskId = taskPrefix + "Master";
     this.commGroupIdClass = commGroupIdClass;
     this.broadcastIdClass = broadcastIdClass;
     this.reduceIdClass = reduceIdClass;
+    this.scatterIdClass = scatterIdClass;
+    this.gatherIdClass = gatherIdClass;
     this.reducerClass = reducerClass;
     this.masterTaskClass = masterTaskClass;
     this.workerTaskClass = workerTaskClass;
@@ -80,6 +102,20 @@ public class TaskGroupDescriptor {
     return reduceIdClass;
   }
 
+  /**
+   * @return name of the scatter operator, or null if the group has none.
+   */
+  public Class<? extends Name<String>> getScatterIdClass() {
+    return scatterIdClass;
+  }
+
+  /**
+   * @return name of the gather operator, or null if the group has none.
+   */
+  public Class<? extends Name<String>> getGatherIdClass() {
+    return gatherIdClass;
+  }
+
   public Class<? extends Reduce.ReduceFunction<?>> getReducerClass() {
     return reducerClass;
   }
@@ -0,0 +1,203 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.util;
+
+import com.microsoft.canberra.tf.task.Document;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A block of documents in compressed sparse row (CSR) format.
+ * This is the unit of storage of the binary corpus: each block is stored as one
+ * BytesWritable value of a Hadoop SequenceFile, keyed by the ID of its first document.
+ * Binary layout of the block (big-endian):
+ * <pre>
+ *   int   numDocs
+ *   int   numTokens
+ *   byte  countType (0 = int32, 1 = float32)
+ *   long  docIds[numDocs]
+ *   int   docLengths[numDocs]
+ *   int   tokenIds[numTokens]
+ *   int|float counts[numTokens]
+ * </pre>
+ * Counts are stored as integers if all counts in the block are integral.
+ */
+public final class CsrCorpusBlock {
+
+  private static final byte COUNTS_INT = 0;
+  private static final byte COUNTS_FLOAT = 1;
+
+  private int numDocs = 0;
+  private int numTokens = 0;
+  private boolean integralCounts = true;
+
+  private long[] docIds = new long[16];
+  private int[] docLengths = new int[16];
+  private int[] tokenIds = new int[256];
+  private float[] counts = new float[256];
+
+  public int numDocuments() {
+    return this.numDocs;
+  }
+
+  public int numTokens() {
+    return this.numTokens;
+  }
+
+  public void clear() {
+    this.numDocs = 0;
+    this.numTokens = 0;
+    this.integralCounts = true;
+  }
+
+  /**
+   * Append the document to the end of the block.
+   */
+  public void add(final Document doc) {
+
+    if (this.numDocs == this.docIds.length) {
+      this.docIds = Arrays.copyOf(this.docIds, 2 * this.numDocs);
+      this.docLengths = Arrays.copyOf(this.docLengths, 2 * this.numDocs);
+    }
+
+    final int size = doc.size();
+    if (this.numTokens + size > this.tokenIds.length) {
+      final int capacity = Math.max(2 * this.tokenIds.length, this.numTokens + size);
+      this.tokenIds = Arrays.copyOf(this.tokenIds, capacity);
+      this.counts = Arrays.copyOf(this.counts, capacity);
+    }
+
+    this.docIds[this.numDocs] = doc.getId();
+    this.docLengths[this.numDocs] = size;
+    ++this.numDocs;
+
+    for (int i = 0; i < size; ++i) {
+      final float count = doc.tokenCount(i);
+      this.integralCounts &= count == (int) count;
+      this.tokenIds[this.numTokens] = doc.tokenId(i);
+      this.counts[this.numTokens] = count;
+      ++this.numTokens;
+    }
+  }
+
+  /**
+   * Serialize the block in the binary CSR format described above.
+   */
+  public void write(final DataOutput out) throws IOException {
+
+    out.writeInt(this.numDocs);
+    out.writeInt(this.numTokens);
+    out.writeByte(this.integralCounts ? COUNTS_INT : COUNTS_FLOAT);
+
+    for (int i = 0; i < this.numDocs; ++i) {
+      out.writeLong(this.docIds[i]);
+    }
+
+    for (int i = 0; i < this.numDocs; ++i) {
+      out.writeInt(this.docLengths[i]);
+    }
+
+    for (int i = 0; i < this.numTokens; ++i) {
+      out.writeInt(this.tokenIds[i]);
+    }
+
+    if (this.integralCounts) {
+      for (int i = 0; i < this.numTokens; ++i) {
+        out.writeInt((int) this.counts[i]);
+      }
+    } else {
+      for (int i = 0; i < this.numTokens; ++i) {
+        out.writeFloat(this.counts[i]);
+      }
+    }
+  }
+
+  /**
+   * Deserialize the block from the first length bytes of the buffer.
+   * Replaces the current content of the block.
+   */
+  public void read(final byte[] bytes, final int length) {
+
+    final ByteBuffer buf = ByteBuffer.wrap(bytes, 0, length);
+
+    this.numDocs = buf.getInt();
+    this.numTokens = buf.getInt();
+    this.integralCounts = buf.get() == COUNTS_INT;
+
+    if (this.docIds.length < this.numDocs) {
+      this.docIds = new long[this.numDocs];
+      this.docLengths = new int[this.numDocs];
+    }
+
+    if (this.tokenIds.length < this.numTokens) {
+      this.tokenIds = new int[this.numTokens];
+      this.counts = new float[this.numTokens];
+    }
+
+    buf.asLongBuffer().get(this.docIds, 0, this.numDocs);
+    buf.position(buf.position() + 8 * this.numDocs);
+
+    buf.asIntBuffer().get(this.docLengths, 0, this.numDocs);
+    buf.position(buf.position() + 4 * this.numDocs);
+
+    buf.asIntBuffer().get(this.tokenIds, 0, this.numTokens);
+    buf.position(buf.position() + 4 * this.numTokens);
+
+    if (this.integralCounts) {
+      for (int i = 0; i < this.numTokens; ++i) {
+        this.counts[i] = buf.getInt();
+      }
+    } else {
+      buf.asFloatBuffer().get(this.counts, 0, this.numTokens);
+    }
+  }
+
+  /**
+   * Copy document number docNo of the block into the given Document object.
+   *
+   * @param docNo document index within the block.
+   * @param firstToken index of the first token of that document within the block.
+   * @param doc document to populate.
+   * @return index of the first token of the next document.
+   */
+  public int get(final int docNo, final int firstToken, final Document doc) {
+
+    final int size = this.docLengths[docNo];
+    doc.clearTokens(this.docIds[docNo], size);
+
+    final int end = firstToken + size;
+    for (int i = firstToken; i < end; ++i) {
+      doc.add(this.tokenIds[i], this.counts[i]);
+    }
+
+    return end;
+  }
+
+  public long getDocId(final int docNo) {
+    return this.docIds[docNo];
+  }
+}
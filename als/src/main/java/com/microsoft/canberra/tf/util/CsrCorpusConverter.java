@@ -0,0 +1,173 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.util;
+
+import com.microsoft.canberra.tf.Launch;
+import com.microsoft.canberra.tf.task.Document;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+
+import org.apache.reef.tang.Configuration;
+import org.apache.reef.tang.Injector;
+import org.apache.reef.tang.Tang;
+import org.apache.reef.tang.annotations.Name;
+import org.apache.reef.tang.annotations.NamedParameter;
+import org.apache.reef.tang.exceptions.BindException;
+import org.apache.reef.tang.exceptions.InjectionException;
+import org.apache.reef.tang.formats.CommandLine;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One-off converter of the text corpus (lines of tab-separated id:frequency pairs,
+ * as read by SparseVectorInputFormat) into the binary CSR format read by CsrCorpusInputFormat.
+ * Usage: CsrCorpusConverter -input text_corpus_path -output binary_corpus_file [-block_size N]
+ */
+public final class CsrCorpusConverter {
+
+  private static final Logger LOG = Logger.getLogger(CsrCorpusConverter.class.getName());
+
+  @NamedParameter(short_name = "block_size", default_value = "4096",
+      doc = "Number of documents per CSR block")
+  public static final class BlockSize implements Name<Integer> {
+  }
+
+  private final JobConf jobConf = new JobConf();
+  private final int blockSize;
+
+  public CsrCorpusConverter(final int blockSize) {
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * Read all documents from the text corpus and write them into a single binary CSR file.
+   *
+   * @param inputPath path to the text corpus (file, directory, or wildcard).
+   * @param outputPath path to the binary corpus file to create.
+   * @return number of documents converted.
+   */
+  public long convert(final String inputPath, final String outputPath) throws IOException {
+
+    LOG.log(Level.INFO, "Convert corpus: {0} -> {1}", new Object[] { inputPath, outputPath });
+
+    FileInputFormat.setInputPaths(this.jobConf, inputPath);
+
+    final SparseVectorInputFormat textFormat = new SparseVectorInputFormat();
+    textFormat.configure(this.jobConf);
+
+    final CsrCorpusBlock block = new CsrCorpusBlock();
+    final DataOutputBuffer buffer = new DataOutputBuffer();
+    final LongWritable blockKey = new LongWritable();
+    final BytesWritable blockBytes = new BytesWritable();
+
+    long numDocs = 0;
+
+    try (final SequenceFile.Writer writer = SequenceFile.createWriter(this.jobConf,
+        SequenceFile.Writer.file(new Path(outputPath)),
+        SequenceFile.Writer.keyClass(LongWritable.class),
+        SequenceFile.Writer.valueClass(BytesWritable.class))) {
+
+      for (final InputSplit split : textFormat.getSplits(this.jobConf, 1)) {
+
+        final RecordReader<LongWritable, Document> reader =
+            textFormat.getRecordReader(split, this.jobConf, Reporter.NULL);
+
+        try {
+
+          final LongWritable docId = reader.createKey();
+          final Document doc = reader.createValue();
+
+          while (reader.next(docId, doc)) {
+
+            if (block.numDocuments() == 0) {
+              blockKey.set(docId.get());
+            }
+
+            block.add(doc);
+            ++numDocs;
+
+            if (block.numDocuments() >= this.blockSize) {
+              writeBlock(writer, block, buffer, blockKey, blockBytes);
+            }
+          }
+
+        } finally {
+          reader.close();
+        }
+      }
+
+      if (block.numDocuments() > 0) {
+        writeBlock(writer, block, buffer, blockKey, blockBytes);
+      }
+    }
+
+    LOG.log(Level.INFO, "Converted {0} documents", numDocs);
+
+    return numDocs;
+  }
+
+  private static void writeBlock(
+      final SequenceFile.Writer writer, final CsrCorpusBlock block, final DataOutputBuffer buffer,
+      final LongWritable blockKey, final BytesWritable blockBytes) throws IOException {
+
+    buffer.reset();
+    block.write(buffer);
+    blockBytes.set(buffer.getData(), 0, buffer.getLength());
+    writer.append(blockKey, blockBytes);
+    block.clear();
+  }
+
+  public static void main(final String[] args) {
+
+    try {
+
+      final Configuration commandLineConfig = new CommandLine()
+          .registerShortNameOfClass(Launch.Input.class)
+          .registerShortNameOfClass(Launch.Output.class)
+          .registerShortNameOfClass(BlockSize.class)
+          .processCommandLine(args)
+          .getBuilder().build();
+
+      final Injector injector = Tang.Factory.getTang().newInjector(commandLineConfig);
+
+      new CsrCorpusConverter(injector.getNamedInstance(BlockSize.class)).convert(
+          injector.getNamedInstance(Launch.Input.class),
+          injector.getNamedInstance(Launch.Output.class));
+
+    } catch (final BindException | InjectionException | IOException ex) {
+      LOG.log(Level.SEVERE, "Corpus conversion error", ex);
+    }
+  }
+}
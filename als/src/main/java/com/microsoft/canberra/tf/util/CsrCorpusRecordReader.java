@@ -0,0 +1,106 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.util;
+
+import com.microsoft.canberra.tf.task.Document;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapred.RecordReader;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hadoop MapReduce record reader that unpacks blocks of the binary CSR corpus
+ * into individual documents.
+ */
+public final class CsrCorpusRecordReader implements RecordReader<LongWritable, Document> {
+
+  private static final Logger LOG = Logger.getLogger(CsrCorpusRecordReader.class.getName());
+
+  private final RecordReader<LongWritable, BytesWritable> seqRecordReader;
+
+  private final LongWritable blockKey;
+  private final BytesWritable blockBytes;
+  private final CsrCorpusBlock block = new CsrCorpusBlock();
+
+  private int docNo = 0;
+  private int tokenNo = 0;
+
+  public CsrCorpusRecordReader(final RecordReader<LongWritable, BytesWritable> seqRecordReader) {
+    this.seqRecordReader = seqRecordReader;
+    this.blockKey = this.seqRecordReader.createKey();
+    this.blockBytes = this.seqRecordReader.createValue();
+  }
+
+  @Override
+  public boolean next(final LongWritable recordId, final Document data) throws IOException {
+
+    while (this.docNo >= this.block.numDocuments()) {
+
+      if (!this.seqRecordReader.next(this.blockKey, this.blockBytes)) {
+        return false;
+      }
+
+      this.block.read(this.blockBytes.getBytes(), this.blockBytes.getLength());
+      this.docNo = 0;
+      this.tokenNo = 0;
+
+      LOG.log(Level.FINEST, "RecordReader: block {0} :: {1} documents",
+          new Object[] { this.blockKey, this.block.numDocuments() });
+    }
+
+    recordId.set(this.block.getDocId(this.docNo));
+    this.tokenNo = this.block.get(this.docNo, this.tokenNo, data);
+    ++this.docNo;
+
+    return true;
+  }
+
+  @Override
+  public LongWritable createKey() {
+    return new LongWritable();
+  }
+
+  @Override
+  public Document createValue() {
+    return new Document();
+  }
+
+  @Override
+  public long getPos() throws IOException {
+    return this.seqRecordReader.getPos();
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.seqRecordReader.close();
+  }
+
+  @Override
+  public float getProgress() throws IOException {
+    return this.seqRecordReader.getProgress();
+  }
+}
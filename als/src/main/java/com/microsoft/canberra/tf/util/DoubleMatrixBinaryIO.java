@@ -0,0 +1,351 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.util;
+
+import com.microsoft.canberra.tf.Launch;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
+import org.apache.reef.tang.annotations.Parameter;
+import org.jblas.DoubleMatrix;
+
+import javax.inject.Inject;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Read and write jBLAS DoubleMatrix to/from HDFS in a compact binary format.
+ * All numbers are little-endian. The file starts with a 16 byte header:
+ * <ul>
+ *   <li>magic bytes "TFMX";</li>
+ *   <li>format version (1 byte, currently 1);</li>
+ *   <li>data type of the elements (1 byte): 0 for float64, 1 for float32;</li>
+ *   <li>compression (1 byte): 0 for none, 1 for deflate;</li>
+ *   <li>reserved (1 byte, 0);</li>
+ *   <li>number of rows and number of columns (4 byte int each).</li>
+ * </ul>
+ * The header is followed by the matrix elements in row-major order.
+ * Compressed data is split into blocks of whole rows, and each block is prefixed
+ * with its uncompressed and compressed size in bytes (4 byte int each).
+ * The reader detects the data type and compression from the header,
+ * and can read a range of rows without decoding the rest of the file.
+ */
+public final class DoubleMatrixBinaryIO implements DoubleMatrixIO {
+
+  private static final Logger LOG = Logger.getLogger(DoubleMatrixBinaryIO.class.getName());
+
+  private static final int MAGIC = 0x584D4654; // "TFMX" read as little-endian int
+  private static final byte VERSION = 1;
+
+  private static final byte TYPE_FLOAT64 = 0;
+  private static final byte TYPE_FLOAT32 = 1;
+
+  private static final byte COMPRESSION_NONE = 0;
+  private static final byte COMPRESSION_DEFLATE = 1;
+
+  private static final int HEADER_SIZE = 16;
+  private static final int BLOCK_HEADER_SIZE = 8;
+
+  /** Approximate size of the uncompressed data block, bytes. */
+  private static final int BLOCK_SIZE = 1 << 20;
+
+  private final FileSystem fileSystem;
+  private final byte dataType;
+  private final boolean deflate;
+
+  /**
+   * @param dataType element type to write: float64 or float32.
+   * @param deflate if true, write deflate-compressed blocks.
+   * @throws IllegalArgumentException if the data type is unknown.
+   */
+  @Inject
+  public DoubleMatrixBinaryIO(
+      final @Parameter(Launch.OutputDataType.class) String dataType,
+      final @Parameter(Launch.OutputDeflate.class) boolean deflate) throws IOException {
+
+    switch (dataType) {
+    case "float64":
+      this.dataType = TYPE_FLOAT64;
+      break;
+    case "float32":
+      this.dataType = TYPE_FLOAT32;
+      break;
+    default:
+      throw new IllegalArgumentException("Unknown output data type: " + dataType);
+    }
+
+    this.deflate = deflate;
+
+    final YarnConfiguration yarnConf = new YarnConfiguration();
+    yarnConf.set("fs.hdfs.impl", DistributedFileSystem.class.getName());
+    yarnConf.set("fs.file.impl", LocalFileSystem.class.getName());
+    this.fileSystem = FileSystem.newInstance(yarnConf);
+  }
+
+  @Override
+  public DoubleMatrix readMatrix(final String path) {
+    return this.readMatrix(path, 0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Read a range of rows of the matrix. Uncompressed files are read starting
+   * directly at fromRow; in compressed files, blocks before fromRow are skipped
+   * without decompression.
+   */
+  @Override
+  public DoubleMatrix readMatrix(final String path, final int fromRow, final int toRow) {
+
+    LOG.log(Level.FINER, "Read binary matrix from: {0} rows {1}-{2}", new Object[] { path, fromRow, toRow });
+
+    try (final FSDataInputStream stream = this.fileSystem.open(new Path(path));
+         final ReadableByteChannel channel = Channels.newChannel(stream)) {
+
+      final ByteBuffer header = readFully(channel, newBuffer(HEADER_SIZE), HEADER_SIZE);
+
+      if (header.getInt() != MAGIC || header.get() != VERSION) {
+        throw new IOException("Not a binary matrix file: " + path);
+      }
+
+      final byte type = header.get();
+      final byte compression = header.get();
+      header.get();
+      final int rows = header.getInt();
+      final int columns = header.getInt();
+
+      final int elementSize = elementSize(type);
+      final int rowSize = columns * elementSize;
+      final int rowsPerBlock = rowsPerBlock(rowSize);
+
+      final int endRow = Math.min(toRow, rows);
+      final DoubleMatrix matrix = new DoubleMatrix(Math.max(0, endRow - fromRow), columns);
+      final ByteBuffer block = newBuffer(rowsPerBlock * rowSize);
+
+      if (compression == COMPRESSION_NONE) {
+
+        if (matrix.rows > 0) {
+          stream.seek(HEADER_SIZE + (long) fromRow * rowSize);
+        }
+        for (int i = 0; i < matrix.rows; i += rowsPerBlock) {
+          final int numRows = Math.min(rowsPerBlock, matrix.rows - i);
+          readFully(channel, block, numRows * rowSize);
+          decodeRows(block, type, matrix, i, numRows);
+        }
+
+      } else if (compression == COMPRESSION_DEFLATE) {
+
+        final ByteBuffer blockHeader = newBuffer(BLOCK_HEADER_SIZE);
+        final Inflater inflater = new Inflater();
+        byte[] compressed = new byte[0];
+
+        try {
+          for (int startRow = 0; startRow < endRow; startRow += rowsPerBlock) {
+
+            final int numRows = Math.min(rowsPerBlock, rows - startRow);
+            final int size = numRows * rowSize;
+
+            readFully(channel, blockHeader, BLOCK_HEADER_SIZE);
+            final int rawSize = blockHeader.getInt();
+            final int compressedSize = blockHeader.getInt();
+            if (rawSize != size) {
+              throw new IOException("Corrupt block at row " + startRow + " in: " + path);
+            }
+
+            if (startRow + numRows <= fromRow) {
+              stream.seek(stream.getPos() + compressedSize);
+              continue;
+            }
+
+            if (compressed.length < compressedSize) {
+              compressed = new byte[compressedSize];
+            }
+            readFully(channel, ByteBuffer.wrap(compressed), compressedSize);
+            inflater.reset();
+            inflater.setInput(compressed, 0, compressedSize);
+            if (inflater.inflate(block.array(), 0, size) != size) {
+              throw new IOException("Corrupt block at row " + startRow + " in: " + path);
+            }
+
+            final int firstRow = Math.max(fromRow, startRow);
+            final int lastRow = Math.min(endRow, startRow + numRows);
+            block.clear().position((firstRow - startRow) * rowSize);
+            decodeRows(block, type, matrix, firstRow - fromRow, lastRow - firstRow);
+          }
+        } finally {
+          inflater.end();
+        }
+
+      } else {
+        throw new IOException("Unknown compression " + compression + " in: " + path);
+      }
+
+      return matrix;
+
+    } catch (final IOException | DataFormatException ex) {
+      LOG.log(Level.SEVERE, "Cannot decode matrix from: " + path, ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  /**
+   * Read numRows rows from the buffer into the matrix, starting at the given matrix row.
+   */
+  private static void decodeRows(final ByteBuffer block, final byte type,
+                                 final DoubleMatrix matrix, final int firstRow, final int numRows) {
+    for (int i = firstRow; i < firstRow + numRows; ++i) {
+      for (int j = 0; j < matrix.columns; ++j) {
+        matrix.put(i, j, type == TYPE_FLOAT64 ? block.getDouble() : block.getFloat());
+      }
+    }
+  }
+
+  @Override
+  public void writeMatrix(final DoubleMatrix matrix, final String outputPath) {
+
+    LOG.log(Level.FINER, "Write binary matrix to: {0}", outputPath);
+
+    try (final WritableByteChannel channel =
+             Channels.newChannel(this.fileSystem.create(new Path(outputPath)))) {
+
+      final ByteBuffer header = newBuffer(HEADER_SIZE);
+      header.putInt(MAGIC)
+            .put(VERSION)
+            .put(this.dataType)
+            .put(this.deflate ? COMPRESSION_DEFLATE : COMPRESSION_NONE)
+            .put((byte) 0)
+            .putInt(matrix.rows)
+            .putInt(matrix.columns)
+            .flip();
+      writeFully(channel, header);
+
+      final int rowSize = matrix.columns * elementSize(this.dataType);
+      final int rowsPerBlock = rowsPerBlock(rowSize);
+
+      final ByteBuffer block = newBuffer(rowsPerBlock * rowSize);
+      final Deflater deflater = this.deflate ? new Deflater(Deflater.BEST_SPEED) : null;
+      final ByteBuffer compressed = this.deflate
+          ? newBuffer(BLOCK_HEADER_SIZE + block.capacity() + (block.capacity() >> 8) + 64) : null;
+
+      try {
+        for (int startRow = 0; startRow < matrix.rows; startRow += rowsPerBlock) {
+
+          final int endRow = Math.min(startRow + rowsPerBlock, matrix.rows);
+
+          block.clear();
+          for (int i = startRow; i < endRow; ++i) {
+            for (int j = 0; j < matrix.columns; ++j) {
+              if (this.dataType == TYPE_FLOAT64) {
+                block.putDouble(matrix.get(i, j));
+              } else {
+                block.putFloat((float) matrix.get(i, j));
+              }
+            }
+          }
+          block.flip();
+
+          if (deflater == null) {
+            writeFully(channel, block);
+          } else {
+            deflater.reset();
+            deflater.setInput(block.array(), 0, block.limit());
+            deflater.finish();
+            compressed.clear();
+            final int compressedSize = deflater.deflate(
+                compressed.array(), BLOCK_HEADER_SIZE, compressed.capacity() - BLOCK_HEADER_SIZE);
+            if (!deflater.finished()) {
+              throw new IOException("Compression buffer overflow at row " + startRow);
+            }
+            compressed.putInt(block.limit()).putInt(compressedSize);
+            compressed.position(0).limit(BLOCK_HEADER_SIZE + compressedSize);
+            writeFully(channel, compressed);
+          }
+        }
+      } finally {
+        if (deflater != null) {
+          deflater.end();
+        }
+      }
+
+    } catch (final IOException ex) {
+      LOG.log(Level.SEVERE, "Cannot write matrix to: " + outputPath, ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  private static ByteBuffer newBuffer(final int size) {
+    return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static int elementSize(final byte dataType) throws IOException {
+    switch (dataType) {
+    case TYPE_FLOAT64:
+      return 8;
+    case TYPE_FLOAT32:
+      return 4;
+    default:
+      throw new IOException("Unknown matrix data type: " + dataType);
+    }
+  }
+
+  /**
+   * @return number of rows in one data block: at least one row, even if it is longer than BLOCK_SIZE.
+   */
+  private static int rowsPerBlock(final int rowSize) {
+    return rowSize == 0 ? BLOCK_SIZE : Math.max(1, BLOCK_SIZE / rowSize);
+  }
+
+  /**
+   * Read exactly size bytes from the channel into the buffer and flip it for reading.
+   */
+  private static ByteBuffer readFully(
+      final ReadableByteChannel channel, final ByteBuffer buffer, final int size) throws IOException {
+    buffer.clear().limit(size);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        throw new EOFException();
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static void writeFully(final WritableByteChannel channel, final ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.util;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * Read and write jBLAS DoubleMatrix objects to/from HDFS in some file format.
+ */
+public interface DoubleMatrixIO {
+
+  /**
+   * Read the entire matrix from a single file on HDFS.
+   * @param path Path to the file on HDFS that contains a matrix.
+   * @return jBLAS matrix.
+   */
+  DoubleMatrix readMatrix(final String path);
+
+  /**
+   * Read a range of rows of the matrix from a single file on HDFS.
+   * @param path Path to the file on HDFS that contains a matrix.
+   * @param fromRow index of the first row to read (inclusive).
+   * @param toRow index of the last row to read (exclusive);
+   * clipped to the number of rows in the file.
+   * @return jBLAS matrix with rows fromRow .. toRow - 1 of the matrix in the file.
+   */
+  DoubleMatrix readMatrix(final String path, final int fromRow, final int toRow);
+
+  /**
+   * Save the matrix into a single file on HDFS that does not exist yet.
+   * @param matrix jBLAS matrix to write to the file system.
+   * @param outputPath HDFS path to the file to write the matrix to.
+   */
+  void writeMatrix(final DoubleMatrix matrix, final String outputPath);
+}
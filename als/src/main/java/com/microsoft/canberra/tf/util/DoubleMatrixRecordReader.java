@@ -36,6 +36,7 @@ import java.util.logging.Logger;
 /**
  * Hadoop MapReduce record reader that parses one line of tab-separated text
  * into jBLAS DoubleMatrix vector.
+ * Scans the bytes of the input line in place, without splitting it into strings.
  */
 public final class DoubleMatrixRecordReader implements RecordReader<IntWritable, DoubleMatrix> {
 
@@ -44,6 +45,7 @@ public final class DoubleMatrixRecordReader implements RecordReader<IntWritable,
   private final RecordReader<LongWritable, Text> textRecordReader;
   private final LongWritable offset;
   private final Text text;
+  private final TextScanner scanner = new TextScanner();
 
   public DoubleMatrixRecordReader(final RecordReader<LongWritable, Text> textRecordReader) {
     this.textRecordReader = textRecordReader;
@@ -60,17 +62,21 @@ public final class DoubleMatrixRecordReader implements RecordReader<IntWritable,
 
     LOG.log(Level.FINEST, "RecordReader: {0} :: {1}", new Object[] { this.offset, this.text });
 
-    final String[] fields = this.text.toString().split("\\s+");
+    this.scanner.reset(this.text);
 
-    if (fields.length <= 1) {
+    final int numFields = this.scanner.countTokens();
+    if (numFields <= 1) {
       return false;
     }
 
-    rowId.set(Integer.parseInt(fields[0]));
-    matrixRow.resize(fields.length - 1, 1);
+    rowId.set(this.scanner.nextInt());
 
-    for (int i = 1; i < fields.length; ++i) {
-      matrixRow.put(i - 1, Double.parseDouble(fields[i]));
+    if (matrixRow.length != numFields - 1) {
+      matrixRow.resize(numFields - 1, 1);
+    }
+
+    for (int i = 0; i < matrixRow.length; ++i) {
+      matrixRow.data[i] = this.scanner.nextDouble();
     }
 
     return true;
@@ -27,13 +27,14 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.LineReader;
 import org.apache.hadoop.yarn.conf.YarnConfiguration;
 import org.jblas.DoubleMatrix;
 
 import javax.inject.Inject;
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,7 +42,7 @@ import java.util.logging.Logger;
  * Utility methods to read and write jBLAS DoubleMatrix to/from HDFS.
  * This object is injected into the TF Driver.
  */
-public final class DoubleMatrixTextIO {
+public final class DoubleMatrixTextIO implements DoubleMatrixIO {
 
   private static final Logger LOG = Logger.getLogger(DoubleMatrixTextIO.class.getName());
 
@@ -69,65 +70,142 @@ public final class DoubleMatrixTextIO {
    * Rows are separated by newlines, columns are separated by tabs.
    * First column is an integer row number (starting from 0);
    * second column can be either blank or contain lambda values;
-   * remaining columns are floating point numbers for the matrix.
-   * First and second columns (i.e. row number and lambda) are ignored.
+   * third column contains comma-separated floating point numbers for the matrix.
+   * First and second columns (i.e. row number and lambda) are ignored,
+   * and so are any columns after the third one.
    * @param pathA Path to the text file on HDFS that contains a matrix.
    * @return jBLAS matrix.
    */
+  @Override
   public DoubleMatrix readMatrix(final String pathA) {
+    return this.readMatrix(pathA, 0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Read a range of lines of the text file from HDFS into jBLAS DoubleMatrix object,
+   * in one pass over the file. Lines before fromRow are skipped without parsing.
+   * The format is the same as in readMatrix(path) above.
+   * @param pathA Path to the text file on HDFS that contains a matrix.
+   * @param fromRow index of the first line to read (inclusive).
+   * @param toRow index of the last line to read (exclusive).
+   * @return jBLAS matrix.
+   */
+  @Override
+  public DoubleMatrix readMatrix(final String pathA, final int fromRow, final int toRow) {
+
+    LOG.log(Level.FINER, "Read matrix from: {0} rows {1}-{2}", new Object[] { pathA, fromRow, toRow });
 
-    LOG.log(Level.FINER, "Read matrix from: {0}", pathA);
+    final Text line = new Text();
+    final TextScanner scanner = new TextScanner().setSeparator(',');
 
-    DoubleMatrix matrix = null;
+    // Matrix elements in row-major order; the array grows geometrically.
+    double[] values = new double[1024];
+    int numValues = 0;
+    int rows = 0;
+    int columns = -1;
 
-    try (final BufferedReader reader = this.hdfsReader(pathA)) {
+    try (final InputStream in = this.fileSystem.open(new Path(pathA))) {
 
-      for (String ln = reader.readLine(); ln != null; ln = reader.readLine()) {
+      final LineReader reader = new LineReader(in);
 
-        final String[] tabFields = ln.split("\t");
+      for (int row = 0; row < toRow && reader.readLine(line) > 0; ++row) {
 
-        final int i = Integer.parseInt(tabFields[0]);
+        if (row < fromRow) {
+          continue;
+        }
+
+        final byte[] bytes = line.getBytes();
+        final int length = line.getLength();
+
+        // Skip the row number and lambda columns.
+        int start = 0;
+        for (int tabs = 0; tabs < 2 && start < length; ++start) {
+          if (bytes[start] == '\t') {
+            ++tabs;
+          }
+        }
+
+        // Values are the third column only; anything after the next tab is ignored.
+        int end = start;
+        while (end < length && bytes[end] != '\t') {
+          ++end;
+        }
 
-        final List<Double> rowList = new ArrayList<>();
-        for (final String valStr : tabFields[2].split(",")) {
+        scanner.reset(bytes, start, end);
+
+        final int rowStart = numValues;
+        while (scanner.hasNext()) {
+          if (numValues == values.length) {
+            values = Arrays.copyOf(values, 2 * values.length);
+          }
           try {
-            rowList.add(Double.valueOf(valStr));
+            values[numValues] = scanner.nextDouble();
+            ++numValues;
           } catch (final NumberFormatException ex) {
-            // ignore trailing comma etc.
-            LOG.log(Level.FINEST, "Cannot parse number: {0}", valStr);
+            // ignore malformed numbers, as in the original format.
+            LOG.log(Level.FINEST, "Cannot parse number in line {0}", row);
           }
         }
 
-        final DoubleMatrix row = new DoubleMatrix(rowList);
-        matrix = matrix == null ? row : DoubleMatrix.concatHorizontally(matrix, row);
-      }
+        if (columns < 0) {
+          columns = numValues - rowStart;
+        } else if (numValues - rowStart != columns) {
+          throw new IOException("Line " + row + " has " + (numValues - rowStart)
+              + " values instead of " + columns + " in: " + pathA);
+        }
 
-      return matrix == null ? DoubleMatrix.EMPTY : matrix.transpose();
+        ++rows;
+      }
 
     } catch (final IOException ex) {
       LOG.log(Level.SEVERE, "Cannot decode matrix", ex);
       throw new RuntimeException(ex);
     }
+
+    if (rows == 0) {
+      return DoubleMatrix.EMPTY;
+    }
+
+    final DoubleMatrix matrix = new DoubleMatrix(rows, columns);
+    for (int i = 0; i < rows; ++i) {
+      for (int j = 0; j < columns; ++j) {
+        matrix.data[i + j * rows] = values[i * columns + j];
+      }
+    }
+
+    return matrix;
   }
 
   /**
-   * Save the jBLAS DoubleMatrix object into a text file on HDFS.
+   * Save the jBLAS DoubleMatrix object into a text file on HDFS,
+   * in the same format that readMatrix() reads.
    * Output path must always be a single file on HDFS that does not exists yet.
    * Rows are separated by newlines, columns are separated by tabs.
    * First column is an integer row number (starting from 0);
-   * remaining columns are floating point numbers of the matrix.
+   * second column (lambda) is blank;
+   * third column contains comma-separated floating point numbers of the matrix,
+   * printed with enough digits to be read back exactly.
    * @param matrix jBLAS matrix to write to the file system.
    * @param outputPath HDFS path to the file to write the matrix to.
    */
+  @Override
   public void writeMatrix(final DoubleMatrix matrix, final String outputPath) {
 
     LOG.log(Level.FINER, "Write matrix to: {0}", outputPath);
 
     try (final BufferedWriter writer = this.hdfsWriter(outputPath)) {
 
+      final StringBuilder line = new StringBuilder();
       for (int i = 0; i < matrix.rows; ++i) {
-        writer.write(String.format("%d\t%s\n",
-            i, matrix.getRow(i).toString("%f", "", "", "\t", "\n")));
+        line.setLength(0);
+        line.append(i).append("\t\t");
+        for (int j = 0; j < matrix.columns; ++j) {
+          if (j > 0) {
+            line.append(',');
+          }
+          line.append(matrix.get(i, j));
+        }
+        writer.write(line.append('\n').toString());
       }
 
     } catch (final IOException ex) {
@@ -0,0 +1,130 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.util;
+
+import java.util.Arrays;
+
+/**
+ * Map from arbitrary int keys to dense indices 0 .. size() - 1, assigned in the order
+ * the keys are added. Open addressing with linear probing over primitive arrays,
+ * so the memory is proportional to the number of distinct keys, not to the largest key.
+ * Callers keep their per-key values in plain arrays indexed by the dense index.
+ */
+public final class IntIndexMap {
+
+  private static final int EMPTY = -1;
+
+  /** Dense index of the key in each slot, EMPTY if the slot is free. */
+  private int[] slots;
+  /** Keys indexed by their dense index. */
+  private int[] keys;
+  private int size = 0;
+
+  public IntIndexMap() {
+    this(16);
+  }
+
+  /** @param capacity expected number of distinct keys. */
+  public IntIndexMap(final int capacity) {
+    int numSlots = 16;
+    while (numSlots < 2 * capacity) {
+      numSlots *= 2;
+    }
+    this.slots = new int[numSlots];
+    Arrays.fill(this.slots, EMPTY);
+    this.keys = new int[Math.max(capacity, 1)];
+  }
+
+  public int size() {
+    return this.size;
+  }
+
+  /** @return key of the given dense index. */
+  public int key(final int index) {
+    assert(index < this.size);
+    return this.keys[index];
+  }
+
+  /** @return dense index of the key, or -1 if it has not been added. */
+  public int indexOf(final int key) {
+    final int mask = this.slots.length - 1;
+    for (int s = hash(key) & mask; ; s = (s + 1) & mask) {
+      final int index = this.slots[s];
+      if (index == EMPTY) {
+        return -1;
+      }
+      if (this.keys[index] == key) {
+        return index;
+      }
+    }
+  }
+
+  /** @return dense index of the key; a new key gets index size() - 1 after the call. */
+  public int add(final int key) {
+    final int mask = this.slots.length - 1;
+    int s = hash(key) & mask;
+    for (; this.slots[s] != EMPTY; s = (s + 1) & mask) {
+      if (this.keys[this.slots[s]] == key) {
+        return this.slots[s];
+      }
+    }
+    if (this.size == this.keys.length) {
+      this.keys = Arrays.copyOf(this.keys, 2 * this.size);
+    }
+    this.keys[this.size] = key;
+    this.slots[s] = this.size;
+    if (2 * ++this.size > this.slots.length) {
+      rehash(2 * this.slots.length);
+    }
+    return this.size - 1;
+  }
+
+  /** @return keys in the order of their dense indices. */
+  public int[] keys() {
+    return Arrays.copyOf(this.keys, this.size);
+  }
+
+  private void rehash(final int numSlots) {
+    this.slots = new int[numSlots];
+    Arrays.fill(this.slots, EMPTY);
+    final int mask = numSlots - 1;
+    for (int index = 0; index < this.size; ++index) {
+      int s = hash(this.keys[index]) & mask;
+      while (this.slots[s] != EMPTY) {
+        s = (s + 1) & mask;
+      }
+      this.slots[s] = index;
+    }
+  }
+
+  /** MurmurHash3 finalizer: word IDs are often sequential or strided. */
+  private static int hash(int key) {
+    key ^= key >>> 16;
+    key *= 0x85ebca6b;
+    key ^= key >>> 13;
+    key *= 0xc2b2ae35;
+    key ^= key >>> 16;
+    return key;
+  }
+}
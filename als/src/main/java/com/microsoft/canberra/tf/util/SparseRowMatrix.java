@@ -0,0 +1,248 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.util;
+
+import org.jblas.DoubleMatrix;
+
+import java.io.Serializable;
+
+/**
+ * Row-sparse rows*columns matrix: only the rows that have nonzero elements are stored,
+ * as a sorted array of their row indices and the packed row-major array of their values.
+ * Used to send matrices with few nonzero rows, e.g. the rows of Y for the words that
+ * occur in one data partition, without the zero rows of all other words.
+ *
+ * Values can be stored in single precision to halve the size of the messages;
+ * the sum of two single precision matrices is also single precision, but it is
+ * computed in double. Dense results are always double.
+ */
+public final class SparseRowMatrix implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final int rows;
+  private final int columns;
+
+  /** Indices of the stored rows, in increasing order. */
+  private final int[] rowIds;
+
+  /**
+   * Elements of the stored rows: element j of the row rowIds[i] is at i * columns + j.
+   * Exactly one of the arrays is not null.
+   */
+  private final double[] data;
+  private final float[] floatData;
+
+  private SparseRowMatrix(final int rows, final int columns, final int[] rowIds,
+                          final double[] data, final float[] floatData) {
+    assert((data == null) != (floatData == null));
+    assert((data != null ? data.length : floatData.length) == (long) rowIds.length * columns);
+    this.rows = rows;
+    this.columns = columns;
+    this.rowIds = rowIds;
+    this.data = data;
+    this.floatData = floatData;
+  }
+
+  /**
+   * @return nonzero rows of the given matrix.
+   */
+  public static SparseRowMatrix fromRows(final DoubleMatrix matrix, final boolean single) {
+    return fromTransposed(matrix.transpose(), single);
+  }
+
+  /**
+   * Same as fromRows(matrixT.transpose()), without the transposition:
+   * rows of the result are the nonzero columns of matrixT.
+   * @param single if true, store the values in single precision.
+   */
+  public static SparseRowMatrix fromTransposed(final DoubleMatrix matrixT, final boolean single) {
+
+    final int columns = matrixT.rows;
+    final int rows = matrixT.columns;
+    final double[] src = matrixT.data;
+
+    int numStored = 0;
+    final boolean[] nonZero = new boolean[rows];
+    for (int i = 0; i < rows; ++i) {
+      for (int j = 0, pos = i * columns; j < columns; ++j, ++pos) {
+        if (src[pos] != 0) {
+          nonZero[i] = true;
+          ++numStored;
+          break;
+        }
+      }
+    }
+
+    final int[] rowIds = new int[numStored];
+    final double[] data = single ? null : new double[numStored * columns];
+    final float[] floatData = single ? new float[numStored * columns] : null;
+
+    for (int i = 0, n = 0; i < rows; ++i) {
+      if (nonZero[i]) {
+        rowIds[n] = i;
+        if (single) {
+          for (int j = 0, pos = i * columns, dst = n * columns; j < columns; ++j) {
+            floatData[dst++] = (float) src[pos++];
+          }
+        } else {
+          System.arraycopy(src, i * columns, data, n * columns, columns);
+        }
+        ++n;
+      }
+    }
+
+    return new SparseRowMatrix(rows, columns, rowIds, data, floatData);
+  }
+
+  public int getRows() {
+    return this.rows;
+  }
+
+  public int getColumns() {
+    return this.columns;
+  }
+
+  /**
+   * @return number of stored (nonzero) rows.
+   */
+  public int getStoredRows() {
+    return this.rowIds.length;
+  }
+
+  public boolean isSingle() {
+    return this.floatData != null;
+  }
+
+  /**
+   * @return element at the given position of the packed values.
+   */
+  private double get(final int pos) {
+    return this.data != null ? this.data[pos] : this.floatData[pos];
+  }
+
+  /**
+   * @return new matrix this + other; the stored rows are the union of the stored rows of both.
+   * The result is in single precision if both matrices are.
+   */
+  public SparseRowMatrix add(final SparseRowMatrix other) {
+
+    assert(this.rows == other.rows && this.columns == other.columns);
+
+    final int cols = this.columns;
+    final int[] ids1 = this.rowIds;
+    final int[] ids2 = other.rowIds;
+
+    int numStored = 0;
+    for (int i = 0, j = 0; i < ids1.length || j < ids2.length; ++numStored) {
+      if (j == ids2.length || (i < ids1.length && ids1[i] < ids2[j])) {
+        ++i;
+      } else if (i == ids1.length || ids2[j] < ids1[i]) {
+        ++j;
+      } else {
+        ++i;
+        ++j;
+      }
+    }
+
+    final boolean single = this.isSingle() && other.isSingle();
+    final int[] rowIds = new int[numStored];
+    final double[] data = single ? null : new double[numStored * cols];
+    final float[] floatData = single ? new float[numStored * cols] : null;
+
+    for (int i = 0, j = 0, n = 0; n < numStored; ++n) {
+      final int pos = n * cols;
+      if (j == ids2.length || (i < ids1.length && ids1[i] < ids2[j])) {
+        rowIds[n] = ids1[i];
+        this.copyRow(i++, data, floatData, pos);
+      } else if (i == ids1.length || ids2[j] < ids1[i]) {
+        rowIds[n] = ids2[j];
+        other.copyRow(j++, data, floatData, pos);
+      } else {
+        rowIds[n] = ids1[i];
+        for (int k = 0, pos1 = i * cols, pos2 = j * cols; k < cols; ++k) {
+          final double sum = this.get(pos1++) + other.get(pos2++);
+          if (single) {
+            floatData[pos + k] = (float) sum;
+          } else {
+            data[pos + k] = sum;
+          }
+        }
+        ++i;
+        ++j;
+      }
+    }
+
+    return new SparseRowMatrix(this.rows, cols, rowIds, data, floatData);
+  }
+
+  /**
+   * Copy stored row i into data or floatData (whichever is not null), starting at pos.
+   */
+  private void copyRow(final int i, final double[] data, final float[] floatData, final int pos) {
+    final int cols = this.columns;
+    if (floatData != null) {
+      System.arraycopy(this.floatData, i * cols, floatData, pos, cols);
+    } else if (this.data != null) {
+      System.arraycopy(this.data, i * cols, data, pos, cols);
+    } else {
+      for (int k = 0, src = i * cols; k < cols; ++k) {
+        data[pos + k] = this.floatData[src++];
+      }
+    }
+  }
+
+  /**
+   * @return dense rows*columns matrix.
+   */
+  public DoubleMatrix toDense() {
+    return this.toDenseTransposed().transpose();
+  }
+
+  /**
+   * @return dense transposed columns*rows matrix; stored rows are copied as whole columns.
+   */
+  public DoubleMatrix toDenseTransposed() {
+    final DoubleMatrix matrixT = DoubleMatrix.zeros(this.columns, this.rows);
+    this.addToTransposed(matrixT, null);
+    return matrixT;
+  }
+
+  /**
+   * Add this matrix, transposed and with its rows renumbered, to a dense matrix:
+   * stored row r is added to the column rowMap[r] of matrixT (or column r if rowMap is null).
+   * E.g. rowMap can map the local word IDs of a data partition to the global ones.
+   */
+  public void addToTransposed(final DoubleMatrix matrixT, final int[] rowMap) {
+    assert(matrixT.rows == this.columns && (rowMap == null || rowMap.length == this.rows));
+    final int cols = this.columns;
+    final double[] dst = matrixT.data;
+    for (int i = 0; i < this.rowIds.length; ++i) {
+      final int column = rowMap == null ? this.rowIds[i] : rowMap[this.rowIds[i]];
+      for (int k = 0, pos = column * cols, src = i * cols; k < cols; ++k) {
+        dst[pos++] += this.get(src++);
+      }
+    }
+  }
+}
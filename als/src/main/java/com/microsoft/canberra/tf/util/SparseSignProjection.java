@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.util;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * Sparse random projection matrix with rows generated on demand.
+ * Columns of the matrix are split into nonZeros contiguous blocks of about equal width,
+ * and each row has one nonzero element +/- 1/sqrt(nonZeros) in each block.
+ * Positions and signs are derived from a counter-based hash (SplitMix64) of the row index
+ * and the seed, so any row can be generated in O(nonZeros) time, in any order and
+ * from any thread, without storing the matrix.
+ * With nonZeros = 1 this is the count sketch projection.
+ */
+public final class SparseSignProjection {
+
+  static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+  private final int columns;
+  private final int nonZeros;
+  private final long seed;
+  private final double value;
+
+  /** Indices of the selected rows of the full matrix, or null if all rows are used as is. */
+  private final int[] rowIds;
+
+  public SparseSignProjection(final int columns, final int nonZeros, final long seed) {
+    assert(0 < nonZeros && nonZeros <= columns);
+    this.columns = columns;
+    this.nonZeros = nonZeros;
+    this.seed = mix(seed);
+    this.value = 1.0 / Math.sqrt(nonZeros);
+    this.rowIds = null;
+  }
+
+  private SparseSignProjection(final SparseSignProjection other, final int[] rowIds) {
+    this.columns = other.columns;
+    this.nonZeros = other.nonZeros;
+    this.seed = other.seed;
+    this.value = other.value;
+    this.rowIds = rowIds;
+  }
+
+  /**
+   * @return projection whose row i is the row rowIds[i] of this one.
+   * The array is not copied and must not be modified.
+   */
+  public SparseSignProjection select(final int[] rowIds) {
+    assert(this.rowIds == null);
+    return new SparseSignProjection(this, rowIds);
+  }
+
+  public int getColumns() {
+    return this.columns;
+  }
+
+  /**
+   * Add scale * (row of the matrix) to out[offset .. offset + columns - 1].
+   */
+  public void addRow(final long row, final double scale, final double[] out, final int offset) {
+    final long id = this.rowIds == null ? row : this.rowIds[(int) row];
+    final long state = mix(this.seed + id * GOLDEN_GAMMA);
+    final double v = scale * this.value;
+    for (int b = 0; b < this.nonZeros; ++b) {
+      final long h = mix(state + (b + 1) * GOLDEN_GAMMA);
+      final int from = (int) ((long) this.columns * b / this.nonZeros);
+      final int to = (int) ((long) this.columns * (b + 1) / this.nonZeros);
+      final int col = from + (int) ((h >>> 32) % (to - from));
+      out[offset + col] += (h & 1) == 0 ? v : -v;
+    }
+  }
+
+  /**
+   * @return first rows of the matrix as a dense rows*columns matrix.
+   */
+  public DoubleMatrix toMatrix(final int rows) {
+    final DoubleMatrix matrix = DoubleMatrix.zeros(rows, this.columns);
+    final double[] row = new double[this.columns];
+    for (int i = 0; i < rows; ++i) {
+      this.addRow(i, 1.0, row, 0);
+      for (int j = 0; j < this.columns; ++j) {
+        if (row[j] != 0) {
+          matrix.put(i, j, row[j]);
+          row[j] = 0;
+        }
+      }
+    }
+    return matrix;
+  }
+
+  /**
+   * SplitMix64 finalizer.
+   */
+  static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -33,6 +33,7 @@ import java.util.logging.Logger;
 
 /**
  * Hadoop MapReduce parser that parses a line of tab-separated id:frequency pairs into a map.
+ * Scans the bytes of the input line in place, without splitting it into strings.
  */
 public final class SparseVectorRecordReader implements RecordReader<LongWritable, Document> {
 
@@ -42,6 +43,7 @@ public final class SparseVectorRecordReader implements RecordReader<LongWritable
 
   private final LongWritable offset;
   private final Text text;
+  private final TextScanner scanner = new TextScanner();
 
   public SparseVectorRecordReader(final RecordReader<LongWritable, Text> textRecordReader) {
     this.textRecordReader = textRecordReader;
@@ -58,24 +60,31 @@ public final class SparseVectorRecordReader implements RecordReader<LongWritable
 
     // LOG.log(Level.FINEST, "RecordReader: {0} :: {1}", new Object[] { this.offset, this.text });
 
-    final String[] fields = this.text.toString().split("\\s+");
+    this.scanner.reset(this.text);
 
-    if (fields.length <= 1) {
+    if (!this.scanner.hasNext()) {
       return false;
     }
 
     // First element contains the unique document ID:
-    recordId.set(Long.parseLong(fields[0]));
+    final long docId = this.scanner.nextLong();
 
-    data.clearTokens(recordId.get(), fields.length - 2);
+    if (!this.scanner.hasNext()) {
+      return false;
+    }
+
+    recordId.set(docId);
 
     // Second element contains the number of unique items in the document:
-    // assert(Integer.parseInt(fields[1]) == fields.length - 2);
+    // assert(this.scanner.nextLong() == this.scanner.countTokens());
+    this.scanner.nextLong();
+    data.clearTokens(docId, this.scanner.countTokens());
 
-    for (int i = 2; i < fields.length; ++i) {
+    while (this.scanner.hasNext()) {
       // Each element is colon-separated pair of integers, item_hash:item_frequency
-      final String[] pair = fields[i].split(":", 2);
-      data.add(Integer.valueOf(pair[0]), Double.valueOf(pair[1]));
+      final int id = this.scanner.nextInt();
+      this.scanner.skip(':');
+      data.add(id, this.scanner.nextDouble());
     }
 
     // LOG.log(Level.FINEST, "RecordReader: {0} :: {1}", new Object[] { recordId, data });
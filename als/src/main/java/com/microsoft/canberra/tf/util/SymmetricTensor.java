@@ -0,0 +1,143 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.util;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * Symmetric k*k*k tensor that stores only the entries T[i][j][l] with i <= j <= l:
+ * k (k + 1) (k + 2) / 6 values instead of k^3, in the lexicographic order of (i, j, l).
+ * The values are kept in a column vector, so that the tensor can be reduced and broadcast
+ * as a DoubleMatrix; unpackRows() expands the slices T[i] into the k*k^2 layout used by ALS.
+ */
+public final class SymmetricTensor {
+
+  private final int dimK;
+  private final DoubleMatrix data;
+
+  /**
+   * Create a zero tensor.
+   */
+  public SymmetricTensor(final int dimK) {
+    this(dimK, DoubleMatrix.zeros(size(dimK)));
+  }
+
+  /**
+   * Wrap the packed values, e.g. a tensor received from another task.
+   */
+  public SymmetricTensor(final int dimK, final DoubleMatrix data) {
+    assert(data.length == size(dimK));
+    this.dimK = dimK;
+    this.data = data;
+  }
+
+  /**
+   * @return number of unique entries of a k*k*k symmetric tensor.
+   * @throws IllegalArgumentException if it does not fit in one array.
+   */
+  public static int size(final int dimK) {
+    final long size = tetrahedral(dimK);
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Symmetric tensor of k = " + dimK + " is too large");
+    }
+    return (int) size;
+  }
+
+  public int getDimK() {
+    return this.dimK;
+  }
+
+  /**
+   * @return packed values (size(k)*1); changes to the matrix change the tensor.
+   */
+  public DoubleMatrix getData() {
+    return this.data;
+  }
+
+  /**
+   * @return position of T[i][j][l] in the packed values; indices can be in any order.
+   */
+  public int index(final int i, final int j, final int l) {
+    final int a = Math.min(i, Math.min(j, l));
+    final int c = Math.max(i, Math.max(j, l));
+    final int b = i + j + l - a - c;
+    final long k = this.dimK;
+    return (int) (tetrahedral(k) - tetrahedral(k - a) + triangular(k - a) - triangular(k - b) + c - b);
+  }
+
+  public double get(final int i, final int j, final int l) {
+    return this.data.data[this.index(i, j, l)];
+  }
+
+  /**
+   * T += scale * w x w x w, over the unique entries only.
+   */
+  public void addOuter(final double scale, final double[] w) {
+    final double[] t = this.data.data;
+    int pos = 0;
+    for (int i = 0; i < this.dimK; ++i) {
+      final double wi = scale * w[i];
+      for (int j = i; j < this.dimK; ++j) {
+        final double wij = wi * w[j];
+        for (int l = j; l < this.dimK; ++l) {
+          t[pos++] += wij * w[l];
+        }
+      }
+    }
+  }
+
+  /**
+   * @return slices T[fromRow] .. T[toRow - 1] as a (toRow - fromRow)*k^2 matrix,
+   * with T[i][j][l] in row i - fromRow and column j * k + l.
+   */
+  public DoubleMatrix unpackRows(final int fromRow, final int toRow) {
+    final int rows = toRow - fromRow;
+    final DoubleMatrix slices = new DoubleMatrix(rows, this.dimK * this.dimK);
+    final double[] t = this.data.data;
+    final double[] out = slices.data;
+    for (int j = 0; j < this.dimK; ++j) {
+      for (int l = 0; l < this.dimK; ++l) {
+        final int column = (j * this.dimK + l) * rows;
+        for (int i = fromRow; i < toRow; ++i) {
+          out[column + i - fromRow] = t[this.index(i, j, l)];
+        }
+      }
+    }
+    return slices;
+  }
+
+  /**
+   * @return number of triples 0 <= a <= b <= c < n.
+   */
+  private static long tetrahedral(final long n) {
+    return n * (n + 1) * (n + 2) / 6;
+  }
+
+  /**
+   * @return number of pairs 0 <= b <= c < n.
+   */
+  private static long triangular(final long n) {
+    return n * (n + 1) / 2;
+  }
+}
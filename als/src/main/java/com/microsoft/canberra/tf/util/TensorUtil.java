@@ -24,9 +24,15 @@
 package com.microsoft.canberra.tf.util;
 
 import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
 import org.jblas.Singular;
 
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -54,6 +60,94 @@ public final class TensorUtil {
     return new DoubleMatrix(rows, cols, data);
   }
 
+  /**
+   * Copy the transpose of the matrix (rows*columns) into out, i.e. write its elements
+   * in the row-major order, so that the elements of each row are contiguous.
+   * @param out array of at least rows*columns elements.
+   */
+  public static void transpose(final DoubleMatrix matrix, final double[] out) {
+    final double[] src = matrix.data;
+    final int rows = matrix.rows;
+    final int columns = matrix.columns;
+    for (int j = 0; j < columns; ++j) {
+      for (int i = 0, pos = j * rows; i < rows; ++i, ++pos) {
+        out[i * columns + j] = src[pos];
+      }
+    }
+  }
+
+  /**
+   * Same as transpose(DoubleMatrix, double[]), in single precision.
+   */
+  public static void transpose(final FloatMatrix matrix, final float[] out) {
+    final float[] src = matrix.data;
+    final int rows = matrix.rows;
+    final int columns = matrix.columns;
+    for (int j = 0; j < columns; ++j) {
+      for (int i = 0, pos = j * rows; i < rows; ++i, ++pos) {
+        out[i * columns + j] = src[pos];
+      }
+    }
+  }
+
+  /**
+   * Run the tasks on the executor and wait until all of them complete.
+   * @param executor thread pool, or null to run the tasks one by one on the current thread.
+   * @throws ExecutionException if one of the tasks fails.
+   */
+  public static void invokeAll(final ExecutorService executor, final List<? extends Callable<Void>> tasks)
+      throws InterruptedException, ExecutionException {
+    if (executor == null) {
+      for (final Callable<Void> task : tasks) {
+        try {
+          task.call();
+        } catch (final InterruptedException | RuntimeException | Error ex) {
+          throw ex;
+        } catch (final Exception ex) {
+          throw new ExecutionException(ex);
+        }
+      }
+    } else {
+      for (final Future<Void> future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    }
+  }
+
+  /**
+   * @return the first rows of a Gaussian matrix with rows*cols elements, see gaussianRows(int[], int, long).
+   */
+  public static DoubleMatrix gaussianRows(final int rows, final int cols, final long seed) {
+    final int[] rowIds = new int[rows];
+    for (int i = 0; i < rows; ++i) {
+      rowIds[i] = i;
+    }
+    return gaussianRows(rowIds, cols, seed);
+  }
+
+  /**
+   * Gaussian matrix whose rows are generated independently, each from its own generator seeded
+   * with a counter-based hash (SplitMix64) of the row index and the seed, as in SparseSignProjection.
+   * Any subset of the rows can thus be generated without the others.
+   * @return rowIds.length * cols matrix whose i-th row is the row rowIds[i] of the full matrix.
+   */
+  public static DoubleMatrix gaussianRows(final int[] rowIds, final int cols, final long seed) {
+
+    final DoubleMatrix matrix = new DoubleMatrix(rowIds.length, cols);
+    final double[] data = matrix.data;
+    final long mixedSeed = SparseSignProjection.mix(seed);
+
+    for (int i = 0; i < rowIds.length; ++i) {
+      final Random rand = new Random(
+          SparseSignProjection.mix(mixedSeed + rowIds[i] * SparseSignProjection.GOLDEN_GAMMA));
+      for (int j = 0, pos = i; j < cols; ++j, pos += rowIds.length) {
+        data[pos] = rand.nextGaussian();
+      }
+    }
+
+    return matrix;
+  }
+
   /**
    * Gram-Schmidt orthonormalization. Modifies matrix in place.
    *
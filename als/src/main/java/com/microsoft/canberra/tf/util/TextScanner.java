@@ -0,0 +1,279 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.util;
+
+import org.apache.hadoop.io.Text;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Allocation-free scanner over the UTF-8 bytes of a Hadoop Text object.
+ * Parses whitespace-separated integers and floating point numbers in place,
+ * without creating String objects or boxed numbers for each token.
+ * Whitespace is the same set of characters as regexp \s, i.e. [ \t\n\x0B\f\r].
+ * Optionally, one more character can be set to separate tokens, e.g. a comma.
+ */
+public final class TextScanner {
+
+  /** Exact powers of ten representable as double; used in the fast path of nextDouble(). */
+  private static final double[] POW10 = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+      1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  /** Largest mantissa that can be converted to double exactly: 2^53 */
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+  private byte[] bytes;
+  private int pos;
+  private int end;
+  private byte separator = ' ';
+
+  public TextScanner reset(final Text text) {
+    return this.reset(text.getBytes(), 0, text.getLength());
+  }
+
+  public TextScanner reset(final byte[] bytes, final int start, final int end) {
+    this.bytes = bytes;
+    this.pos = start;
+    this.end = end;
+    return this;
+  }
+
+  /**
+   * Treat the given ASCII character as a token separator, in addition to whitespace.
+   */
+  public TextScanner setSeparator(final char c) {
+    assert(c < 0x80);
+    this.separator = (byte) c;
+    return this;
+  }
+
+  private boolean isSeparator(final byte b) {
+    return b == this.separator
+        || b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f' || b == 0x0B;
+  }
+
+  /**
+   * Skip separators and check if there are more tokens in the buffer.
+   * @return true if there is at least one more token.
+   */
+  public boolean hasNext() {
+    final byte[] buf = this.bytes;
+    int i = this.pos;
+    while (i < this.end && this.isSeparator(buf[i])) {
+      ++i;
+    }
+    this.pos = i;
+    return i < this.end;
+  }
+
+  /**
+   * Count the remaining tokens without consuming them.
+   */
+  public int countTokens() {
+    int count = 0;
+    boolean inToken = false;
+    for (int i = this.pos; i < this.end; ++i) {
+      final boolean ws = this.isSeparator(this.bytes[i]);
+      if (!ws && !inToken) {
+        ++count;
+      }
+      inToken = !ws;
+    }
+    return count;
+  }
+
+  /**
+   * Skip the next character, which must be equal to c.
+   * @throws NumberFormatException if the next character is not c.
+   */
+  public void skip(final char c) {
+    if (this.pos >= this.end || this.bytes[this.pos] != c) {
+      throw error("Expected '" + c + "'", this.pos);
+    }
+    ++this.pos;
+  }
+
+  /**
+   * Parse decimal integer that starts at the current position.
+   * Stops at the first non-digit character.
+   * @throws NumberFormatException if there are no digits or the number overflows.
+   */
+  public long nextLong() {
+
+    this.hasNext();
+
+    final int start = this.pos;
+    final boolean negative = this.pos < this.end && this.bytes[this.pos] == '-';
+    if (negative || (this.pos < this.end && this.bytes[this.pos] == '+')) {
+      ++this.pos;
+    }
+
+    final byte[] buf = this.bytes;
+    final int digitsStart = this.pos;
+    int i = digitsStart;
+    long value = 0;
+    for (; i < this.end; ++i) {
+      final int digit = buf[i] - '0';
+      if (digit < 0 || digit > 9) {
+        break;
+      }
+      if (value < (Long.MIN_VALUE + digit) / 10) {
+        throw error("Number too large", start);
+      }
+      value = value * 10 - digit; // accumulate negative to cover Long.MIN_VALUE
+    }
+    this.pos = i;
+
+    if (this.pos == digitsStart) {
+      throw error("Expected a number", start);
+    }
+
+    if (!negative) {
+      if (value == Long.MIN_VALUE) {
+        throw error("Number too large", start);
+      }
+      value = -value;
+    }
+
+    return value;
+  }
+
+  /**
+   * Same as nextLong(), but also checks that the value fits in int.
+   */
+  public int nextInt() {
+    final int start = this.pos;
+    final long value = this.nextLong();
+    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+      throw error("Number too large", start);
+    }
+    return (int) value;
+  }
+
+  /**
+   * Parse floating point number that spans until the next separator or end of buffer.
+   * Plain decimal numbers with up to 15 significant digits are converted in place
+   * with correct rounding; everything else (e.g. NaN or very long mantissas)
+   * falls back to Double.parseDouble().
+   * @throws NumberFormatException if the token is not a valid number.
+   */
+  public double nextDouble() {
+
+    this.hasNext();
+
+    final byte[] buf = this.bytes;
+    final int start = this.pos;
+
+    int tokenEnd = start;
+    while (tokenEnd < this.end && !this.isSeparator(buf[tokenEnd])) {
+      ++tokenEnd;
+    }
+
+    this.pos = tokenEnd;
+
+    if (start == tokenEnd) {
+      throw error("Expected a number", start);
+    }
+
+    int i = start;
+    final boolean negative = buf[i] == '-';
+    if (negative || buf[i] == '+') {
+      ++i;
+    }
+
+    long mantissa = 0;
+    int exponent = 0;
+    int numDigits = 0;
+    boolean seenDot = false;
+
+    for (; i < tokenEnd; ++i) {
+      final int digit = buf[i] - '0';
+      if (digit >= 0 && digit <= 9) {
+        if (mantissa >= MAX_EXACT_MANTISSA / 10) {
+          return slowParseDouble(start, tokenEnd);
+        }
+        mantissa = mantissa * 10 + digit;
+        ++numDigits;
+      } else if (buf[i] == '.' && !seenDot) {
+        seenDot = true;
+        exponent = numDigits;
+      } else {
+        break;
+      }
+    }
+
+    // Number of digits after the decimal point:
+    exponent = seenDot ? exponent - numDigits : 0;
+
+    if (numDigits == 0) {
+      return slowParseDouble(start, tokenEnd);
+    }
+
+    if (i < tokenEnd) {
+
+      if (buf[i] != 'e' && buf[i] != 'E') {
+        return slowParseDouble(start, tokenEnd);
+      }
+
+      ++i;
+      final boolean negativeExp = i < tokenEnd && buf[i] == '-';
+      if (negativeExp || (i < tokenEnd && buf[i] == '+')) {
+        ++i;
+      }
+
+      if (i == tokenEnd) {
+        return slowParseDouble(start, tokenEnd);
+      }
+
+      int exp = 0;
+      for (; i < tokenEnd; ++i) {
+        final int digit = buf[i] - '0';
+        if (digit < 0 || digit > 9 || exp > 1000) {
+          return slowParseDouble(start, tokenEnd);
+        }
+        exp = exp * 10 + digit;
+      }
+
+      exponent += negativeExp ? -exp : exp;
+    }
+
+    if (exponent < -22 || exponent > 22) {
+      return slowParseDouble(start, tokenEnd);
+    }
+
+    final double value = exponent >= 0 ? mantissa * POW10[exponent] : mantissa / POW10[-exponent];
+    return negative ? -value : value;
+  }
+
+  private double slowParseDouble(final int start, final int end) {
+    return Double.parseDouble(new String(this.bytes, start, end - start, StandardCharsets.UTF_8));
+  }
+
+  private NumberFormatException error(final String message, final int at) {
+    return new NumberFormatException(message + " at position " + at + ": \""
+        + new String(this.bytes, 0, this.end, StandardCharsets.UTF_8) + "\"");
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task;
+
+import com.microsoft.canberra.tf.util.CsrCorpusBlock;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round-trip tests of the corpus storage types: documents read through a cursor
+ * must have the same tokens as the documents added to the builder.
+ * Compressed corpus sorts the tokens of each document by ID, so tokens are compared
+ * as sorted (ID, count) pairs.
+ */
+@RunWith(Parameterized.class)
+public final class CorpusRoundTripTest {
+
+  private static final int NUM_DOCS = 3000;
+
+  /** Index of the document with enough tokens to span several 1 MB pages of the compressed corpus. */
+  private static final int LONG_DOC = 1000;
+  private static final int LONG_DOC_TOKENS = 400000;
+
+  /** Documents per checkpoint of the compressed corpus. */
+  private static final int CHECKPOINT = 64;
+
+  /** Documents per CSR block, as written by CsrCorpusConverter. */
+  private static final int CSR_BLOCK_SIZE = 256;
+
+  private static final float[] COUNTS = { 1, 2, 7, 1e6f, 0.5f, 0.1f, 3.25f, 1e-3f };
+
+  @Parameterized.Parameters(name = "{0}")
+  public static Collection<Object[]> storages() {
+    return Arrays.asList(new Object[][] { { "compressed" }, { "csr" }, { "mapped" } });
+  }
+
+  private final String storage;
+
+  public CorpusRoundTripTest(final String storage) {
+    this.storage = storage;
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+
+    final List<Document> docs = randomDocuments(new Random(6));
+    final Corpus.Builder builder = this.newBuilder();
+    long numTokens = 0;
+    for (final Document doc : docs) {
+      builder.add(doc);
+      numTokens += doc.size();
+    }
+    final Corpus corpus = builder.build();
+
+    assertEquals(NUM_DOCS, corpus.size());
+    assertEquals(numTokens, corpus.numTokens());
+
+    assertCursor(docs, 0, NUM_DOCS, corpus.cursor());
+
+    final int[][] ranges = {
+        { 0, 0 }, { 0, 1 }, { 0, CHECKPOINT }, { 1, CHECKPOINT + 1 },
+        { CHECKPOINT - 1, CHECKPOINT + 1 }, { CHECKPOINT, 2 * CHECKPOINT },
+        { 2 * CHECKPOINT - 1, 5 * CHECKPOINT + 3 },
+        { LONG_DOC, LONG_DOC + 1 }, { LONG_DOC - 1, LONG_DOC + 2 }, { LONG_DOC + 1, LONG_DOC + 70 },
+        { 16 * CHECKPOINT, 17 * CHECKPOINT }, { 1500, 1500 },
+        { NUM_DOCS - 1, NUM_DOCS }, { NUM_DOCS - CHECKPOINT, NUM_DOCS }, { NUM_DOCS, NUM_DOCS }
+    };
+    for (final int[] range : ranges) {
+      assertCursor(docs, range[0], range[1], corpus.cursor(range[0], range[1]));
+    }
+
+    final Random rand = new Random(7);
+    for (int n = 0; n < 100; ++n) {
+      final int fromDoc = rand.nextInt(NUM_DOCS + 1);
+      final int toDoc = fromDoc + rand.nextInt(NUM_DOCS - fromDoc + 1);
+      assertCursor(docs, fromDoc, toDoc, corpus.cursor(fromDoc, toDoc));
+    }
+  }
+
+  @Test
+  public void testEmptyCorpus() throws IOException {
+    final Corpus corpus = this.newBuilder().build();
+    assertEquals(0, corpus.size());
+    assertEquals(0, corpus.numTokens());
+    assertFalse(corpus.cursor().next());
+    assertFalse(corpus.cursor(0, 0).next());
+  }
+
+  private Corpus.Builder newBuilder() {
+    switch (this.storage) {
+    case "compressed":
+      return new CompressedCorpus.Builder();
+    case "csr":
+      return new CsrBuilder();
+    case "mapped":
+      return new MappedCorpus.Builder(null);
+    default:
+      throw new IllegalArgumentException("Unknown storage: " + this.storage);
+    }
+  }
+
+  /**
+   * Passes the documents through the binary CSR block format, as the corpus converter
+   * writes it and CsrCorpusRecordReader reads it, and keeps the decoded documents on the heap.
+   */
+  private static final class CsrBuilder implements Corpus.Builder {
+
+    private final CsrCorpusBlock block = new CsrCorpusBlock();
+    private final DataOutputBuffer buffer = new DataOutputBuffer();
+    private final ArrayCorpus.Builder corpus = new ArrayCorpus.Builder();
+
+    @Override
+    public CsrBuilder add(final Document doc) {
+      this.block.add(doc);
+      if (this.block.numDocuments() == CSR_BLOCK_SIZE) {
+        this.flush();
+      }
+      return this;
+    }
+
+    @Override
+    public Corpus build() {
+      if (this.block.numDocuments() > 0) {
+        this.flush();
+      }
+      return this.corpus.build();
+    }
+
+    private void flush() {
+      try {
+        this.buffer.reset();
+        this.block.write(this.buffer);
+      } catch (final IOException ex) {
+        throw new RuntimeException(ex);
+      }
+      final CsrCorpusBlock decoded = new CsrCorpusBlock();
+      decoded.read(Arrays.copyOf(this.buffer.getData(), this.buffer.getLength()), this.buffer.getLength());
+      assertEquals(this.block.numDocuments(), decoded.numDocuments());
+      final Document doc = new Document();
+      int firstToken = 0;
+      for (int i = 0; i < decoded.numDocuments(); ++i) {
+        firstToken = decoded.get(i, firstToken, doc);
+        this.corpus.add(doc);
+      }
+      this.block.clear();
+    }
+  }
+
+  private static void assertCursor(final List<Document> docs, final int fromDoc, final int toDoc,
+                                   final Corpus.Cursor cursor) {
+    for (int n = fromDoc; n < toDoc; ++n) {
+      assertTrue("document " + n, cursor.next());
+      assertArrayEquals("document " + n, sortedTokens(docs.get(n)), sortedTokens(cursor));
+    }
+    assertFalse("end at " + toDoc, cursor.next());
+  }
+
+  /**
+   * @return (token ID, count bits) pairs of the document, sorted.
+   */
+  private static long[] sortedTokens(final Tokens tokens) {
+    final long[] res = new long[tokens.size()];
+    for (int i = 0; i < res.length; ++i) {
+      res[i] = ((long) tokens.tokenId(i) << 32) | (Float.floatToIntBits(tokens.tokenCount(i)) & 0xFFFFFFFFL);
+    }
+    Arrays.sort(res);
+    return res;
+  }
+
+  /**
+   * @return documents with a mix of empty, short and one very long document; word IDs up to
+   * Integer.MAX_VALUE, in random order and with repetitions; integral, large and fractional counts.
+   */
+  private static List<Document> randomDocuments(final Random rand) {
+
+    final List<Document> docs = new ArrayList<>(NUM_DOCS);
+
+    for (int n = 0; n < NUM_DOCS; ++n) {
+
+      final int size;
+      if (n == LONG_DOC) {
+        size = LONG_DOC_TOKENS;
+      } else if (n % 7 == 0 || n % CHECKPOINT == CHECKPOINT - 1) {
+        size = 0;
+      } else {
+        size = 1 + rand.nextInt(50);
+      }
+
+      // Some documents have only integral counts, which the compressed corpus stores as varints.
+      final boolean integral = n % 3 == 0;
+
+      final Document doc = new Document();
+      doc.clearTokens(n, size);
+      for (int i = 0; i < size; ++i) {
+        final int id;
+        switch (rand.nextInt(4)) {
+        case 0:
+          id = rand.nextInt(100);
+          break;
+        case 1:
+          id = Integer.MAX_VALUE - rand.nextInt(3);
+          break;
+        default:
+          id = rand.nextInt(Integer.MAX_VALUE);
+          break;
+        }
+        final float count = integral ? COUNTS[rand.nextInt(4)] : COUNTS[rand.nextInt(COUNTS.length)];
+        doc.add(id, count);
+      }
+      docs.add(doc);
+    }
+
+    return docs;
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.m1;
+
+import com.microsoft.canberra.tf.task.ArrayCorpus;
+import com.microsoft.canberra.tf.task.Corpus;
+import com.microsoft.canberra.tf.task.Document;
+import com.microsoft.canberra.tf.task.WcMatrix;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.FloatMatrix;
+import org.jblas.MatrixFunctions;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that M1Accumulator with a single precision omega gives exactly the same result
+ * as with that omega converted to double.
+ */
+public final class M1AccumulatorTest {
+
+  private static final int DIM_D = 500;
+  private static final int DIM_K = 7;
+  private static final int NUM_DOCS = 3000;
+
+  @Test
+  public void testFloatOmega() throws Exception {
+
+    final Random rand = new Random(21);
+
+    final FloatMatrix omega = new FloatMatrix(DIM_D, DIM_K);
+    for (int i = 0; i < omega.length; ++i) {
+      omega.data[i] = (float) rand.nextGaussian();
+    }
+    final DoubleMatrix sigma = new DoubleMatrix(DIM_K);
+    for (int j = 0; j < DIM_K; ++j) {
+      sigma.data[j] = 1 + rand.nextDouble();
+    }
+
+    final Corpus.Builder builder = new ArrayCorpus.Builder();
+    for (int n = 0; n < NUM_DOCS; ++n) {
+      final int size = rand.nextInt(20);
+      final Document doc = new Document();
+      doc.clearTokens(n, size);
+      for (int t = 0; t < size; ++t) {
+        doc.add(rand.nextInt(DIM_D), rand.nextBoolean() ? 1 + rand.nextInt(5) : rand.nextFloat());
+      }
+      builder.add(doc);
+    }
+    final Corpus corpus = builder.build();
+
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      for (final String storage : new String[] { "float64", "float32", "direct" }) {
+
+        final M1Accumulator expected = new M1Accumulator(MatrixFunctions.floatToDouble(omega), sigma, storage);
+        final M1Accumulator actual = new M1Accumulator(omega, sigma, storage);
+
+        final DoubleMatrix m1Expected = expected.addAll(corpus, null);
+        final DoubleMatrix m1Actual = actual.addAll(corpus, executor);
+
+        for (int j = 0; j < DIM_K; ++j) {
+          assertEquals(storage + " m1[" + j + "]",
+              Double.doubleToLongBits(m1Expected.get(j)), Double.doubleToLongBits(m1Actual.get(j)));
+        }
+
+        final WcMatrix wcExpected = expected.getWc();
+        final WcMatrix wcActual = actual.getWc();
+        assertEquals(wcExpected.getRows(), wcActual.getRows());
+
+        final double[] rowExpected = new double[DIM_K];
+        final double[] rowActual = new double[DIM_K];
+        for (int n = 0; n < wcExpected.getRows(); ++n) {
+          wcExpected.getRow(n, rowExpected);
+          wcActual.getRow(n, rowActual);
+          assertEquals(wcExpected.getCount(n), wcActual.getCount(n), 0);
+          for (int j = 0; j < DIM_K; ++j) {
+            assertEquals(storage + " wc[" + n + "][" + j + "]",
+                Double.doubleToLongBits(rowExpected[j]), Double.doubleToLongBits(rowActual[j]));
+          }
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.m3;
+
+import com.microsoft.canberra.tf.util.SymmetricTensor;
+
+import org.jblas.DoubleMatrix;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the packed M3Accumulator with the dense k*k^2 loop that it replaced.
+ */
+public final class M3AccumulatorTest {
+
+  private static final double TOLERANCE = 1e-10;
+
+  /**
+   * Dense sum of the contributions of the documents to M3: T[i][j][l] in t[i][j * k + l].
+   */
+  private static double[][] denseM3(final double[][] wcs, final double[] lens, final double[] m1, final double alpha0) {
+
+    final int dimK = m1.length;
+    final double[][] t = new double[dimK][dimK * dimK];
+
+    for (int n = 0; n < wcs.length; ++n) {
+
+      final double[] wc = wcs[n];
+      final double len = lens[n];
+
+      final double scale2fac = alpha0 * (alpha0 + 1) / (2. * len * (len - 1));
+      final double scale3fac = (alpha0 + 1) * (alpha0 + 2) / (2. * len * (len - 1) * (len - 2));
+
+      for (int i = 0; i < dimK; ++i) {
+        for (int j = 0; j < dimK; ++j) {
+          for (int l = 0; l < dimK; ++l) {
+            t[i][j * dimK + l] += scale3fac * wc[i] * wc[j] * wc[l]
+                - scale2fac * m1[i] * wc[j] * wc[l]
+                - scale2fac * wc[i] * m1[j] * wc[l]
+                - scale2fac * wc[i] * wc[j] * m1[l];
+          }
+          t[i][i * dimK + j] += -scale3fac * wc[i] * wc[j] + scale2fac * wc[i] * m1[j];
+          t[i][j * dimK + i] += -scale3fac * wc[i] * wc[j] + scale2fac * wc[i] * m1[j];
+          t[i][j * dimK + j] += -scale3fac * wc[i] * wc[j] + scale2fac * m1[i] * wc[j];
+          t[i][i * dimK + i] += 2.0 * scale3fac * wc[i];
+        }
+      }
+    }
+
+    return t;
+  }
+
+  @Test
+  public void testMatchesDenseLoop() {
+
+    final int dimK = 7;
+    final int numDocs = 50;
+    final double alpha0 = 0.3;
+    final Random rand = new Random(dimK);
+
+    final double[] m1 = new double[dimK];
+    for (int i = 0; i < dimK; ++i) {
+      m1[i] = rand.nextGaussian();
+    }
+
+    final double[][] wcs = new double[numDocs][dimK];
+    final double[] lens = new double[numDocs];
+    for (int n = 0; n < numDocs; ++n) {
+      for (int i = 0; i < dimK; ++i) {
+        wcs[n][i] = rand.nextGaussian();
+      }
+      lens[n] = 3 + rand.nextInt(100);
+    }
+
+    final M3Accumulator acc = new M3Accumulator(alpha0, new DoubleMatrix(m1));
+    for (int n = 0; n < numDocs; ++n) {
+      acc.add(wcs[n], lens[n]);
+    }
+
+    assertEquals(numDocs, acc.getExamples());
+
+    final SymmetricTensor result = acc.getResult();
+    final DoubleMatrix slices = result.unpackRows(0, dimK);
+    final double[][] expected = denseM3(wcs, lens, m1, alpha0);
+
+    double scale = 0;
+    for (int i = 0; i < dimK; ++i) {
+      for (int c = 0; c < dimK * dimK; ++c) {
+        scale = Math.max(scale, Math.abs(expected[i][c]));
+      }
+    }
+
+    for (int i = 0; i < dimK; ++i) {
+      for (int c = 0; c < dimK * dimK; ++c) {
+        assertEquals("T[" + i + "][" + c + "]", expected[i][c], slices.get(i, c), TOLERANCE * scale);
+      }
+    }
+
+    // getResult() adds the accumulated terms only once.
+    assertEquals(result.getData().sum(), acc.getResult().getData().sum(), 0);
+  }
+}
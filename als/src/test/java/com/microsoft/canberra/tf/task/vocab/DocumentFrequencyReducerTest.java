@@ -0,0 +1,116 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.vocab;
+
+import com.microsoft.canberra.tf.util.IntIndexMap;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the sparse document frequency messages of the vocabulary pass.
+ */
+public final class DocumentFrequencyReducerTest {
+
+  @Test
+  public void testMergeSparseIds() {
+
+    final int[] a = { 3, 0, 1, 7, 2, Integer.MAX_VALUE, 3 };
+    final int[] b = { 5, 7, 4, 1 << 30, 1 };
+    final int[] c = { 0 };
+
+    final int[] expected = { 8, 0, 1, 7, 6, 1 << 30, 1, Integer.MAX_VALUE, 3 };
+    assertArrayEquals(expected, new DocumentFrequencyReducer().apply(Arrays.asList(a, b, c)));
+    assertArrayEquals(expected, new DocumentFrequencyReducer().apply(Arrays.asList(c, b, a)));
+  }
+
+  @Test
+  public void testMergeRandom() {
+
+    final Random rand = new Random(42);
+    final TreeMap<Integer, Integer> total = new TreeMap<>();
+    final int[][] parts = new int[5][];
+    int examples = 0;
+
+    for (int p = 0; p < parts.length; ++p) {
+      final TreeMap<Integer, Integer> df = new TreeMap<>();
+      for (int i = 0; i < 1000; ++i) {
+        df.put(rand.nextInt(3000) * 715827, 1 + rand.nextInt(100));
+      }
+      parts[p] = toMessage(p, df);
+      examples += p;
+      for (final Map.Entry<Integer, Integer> e : df.entrySet()) {
+        final Integer sum = total.get(e.getKey());
+        total.put(e.getKey(), e.getValue() + (sum == null ? 0 : sum));
+      }
+    }
+
+    assertArrayEquals(toMessage(examples, total),
+        new DocumentFrequencyReducer().apply(Arrays.asList(parts)));
+  }
+
+  @Test
+  public void testIntIndexMap() {
+
+    final Random rand = new Random(7);
+    final IntIndexMap map = new IntIndexMap(4);
+    final HashMap<Integer, Integer> expected = new HashMap<>();
+
+    for (int i = 0; i < 100000; ++i) {
+      final int key = rand.nextBoolean() ? rand.nextInt() : rand.nextInt(1000);
+      Integer index = expected.get(key);
+      if (index == null) {
+        index = expected.size();
+        expected.put(key, index);
+      }
+      assertEquals(index.intValue(), map.add(key));
+    }
+
+    assertEquals(expected.size(), map.size());
+    for (final Map.Entry<Integer, Integer> e : expected.entrySet()) {
+      assertEquals(e.getValue().intValue(), map.indexOf(e.getKey()));
+      assertEquals(e.getKey().intValue(), map.key(e.getValue()));
+    }
+    assertEquals(-1, new IntIndexMap().indexOf(0));
+  }
+
+  private static int[] toMessage(final int examples, final TreeMap<Integer, Integer> df) {
+    final int[] res = new int[1 + 2 * df.size()];
+    res[0] = examples;
+    int k = 1;
+    for (final Map.Entry<Integer, Integer> e : df.entrySet()) {
+      res[k++] = e.getKey();
+      res[k++] = e.getValue();
+    }
+    return res;
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.task.whiten;
+
+import com.microsoft.canberra.tf.task.ArrayCorpus;
+import com.microsoft.canberra.tf.task.Corpus;
+import com.microsoft.canberra.tf.task.Document;
+import com.microsoft.canberra.tf.util.SparseSignProjection;
+import com.microsoft.canberra.tf.util.TensorUtil;
+
+import org.jblas.DoubleMatrix;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that SpmmWhitenAccumulator computes the same muX and Y as the row-based WhitenAccumulator,
+ * and that the parallel scans of both engines give the same result as the sequential ones.
+ */
+public final class SpmmWhitenAccumulatorTest {
+
+  private static final int DIM_D = 997;
+  private static final int DIM_KPRIME = 11;
+
+  /** Number of documents: a few blocks of the parallel scan plus a partial one. */
+  private static final int NUM_DOCS = 3000;
+
+  private static final double TOLERANCE = 1e-12;
+
+  private interface Reset {
+    void reset(final WhitenEngine engine);
+  }
+
+  private static Corpus randomCorpus(final Random rand) {
+    final ArrayCorpus.Builder builder = new ArrayCorpus.Builder();
+    final Document doc = new Document();
+    for (int n = 0; n < NUM_DOCS; ++n) {
+      // Include empty and single-token documents, which do not contribute to muX and Y.
+      final int size = rand.nextInt(30);
+      doc.clearTokens(n, size);
+      for (int t = 0; t < size; ++t) {
+        doc.add(rand.nextInt(DIM_D), 1 + rand.nextInt(3));
+      }
+      builder.add(doc);
+    }
+    return builder.build();
+  }
+
+  private static DoubleMatrix[] scan(final WhitenEngine engine, final Reset reset, final Corpus corpus) {
+    reset.reset(engine);
+    final Corpus.Cursor doc = corpus.cursor();
+    while (doc.next()) {
+      engine.add(doc);
+    }
+    return copy(engine.getResult());
+  }
+
+  private static DoubleMatrix[] scan(final WhitenEngine engine, final Reset reset, final Corpus corpus,
+                                     final int numThreads) throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      reset.reset(engine);
+      engine.addAll(corpus, executor, numThreads);
+      return copy(engine.getResult());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static DoubleMatrix[] copy(final DoubleMatrix[] result) {
+    final DoubleMatrix[] res = new DoubleMatrix[result.length];
+    for (int i = 0; i < res.length; ++i) {
+      res[i] = result[i].dup();
+    }
+    return res;
+  }
+
+  private static void check(final Reset reset) throws Exception {
+
+    final Corpus corpus = randomCorpus(new Random(DIM_D));
+
+    final DoubleMatrix[] rows = scan(new WhitenAccumulator(DIM_D, DIM_KPRIME), reset, corpus);
+    final DoubleMatrix[] spmm = scan(new SpmmWhitenAccumulator(DIM_D, DIM_KPRIME), reset, corpus);
+
+    assertEquals(NUM_DOCS, rows[0].get(0), 0);
+    assertEquals(NUM_DOCS, spmm[0].get(0), 0);
+    assertArrayEquals("muX", rows[1].data, spmm[1].data, TOLERANCE);
+    assertArrayEquals("Y", rows[2].data, spmm[2].data, TOLERANCE * rows[2].normmax());
+
+    // Each row is summed in the document order, so the parallel scans are exact.
+    for (final int numThreads : new int[] { 1, 3, 4 }) {
+      final DoubleMatrix[] rowsParallel = scan(new WhitenAccumulator(DIM_D, DIM_KPRIME), reset, corpus, numThreads);
+      final DoubleMatrix[] spmmParallel = scan(new SpmmWhitenAccumulator(DIM_D, DIM_KPRIME), reset, corpus, numThreads);
+      for (int i = 0; i < rows.length; ++i) {
+        assertArrayEquals("rows on " + numThreads + " threads", rows[i].data, rowsParallel[i].data, 0);
+        assertArrayEquals("spmm on " + numThreads + " threads", spmm[i].data, spmmParallel[i].data, 0);
+      }
+    }
+  }
+
+  @Test
+  public void testDoubleOmega() throws Exception {
+    final DoubleMatrix omega = TensorUtil.gaussianRows(DIM_D, DIM_KPRIME, TensorUtil.RANDOM_SEED);
+    check(new Reset() {
+      @Override
+      public void reset(final WhitenEngine engine) {
+        engine.reset(omega);
+      }
+    });
+  }
+
+  @Test
+  public void testFloatOmega() throws Exception {
+    final DoubleMatrix omega = TensorUtil.gaussianRows(DIM_D, DIM_KPRIME, TensorUtil.RANDOM_SEED);
+    check(new Reset() {
+      @Override
+      public void reset(final WhitenEngine engine) {
+        engine.reset(omega.toFloat());
+      }
+    });
+  }
+
+  @Test
+  public void testSparseOmega() throws Exception {
+    final SparseSignProjection omega = new SparseSignProjection(DIM_KPRIME, 3, TensorUtil.RANDOM_SEED);
+    check(new Reset() {
+      @Override
+      public void reset(final WhitenEngine engine) {
+        engine.reset(omega);
+      }
+    });
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.util;
+
+import org.jblas.DoubleMatrix;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Round-trip tests of the binary matrix format on the local file system,
+ * for every combination of the element type and compression.
+ */
+public final class DoubleMatrixBinaryIOTest {
+
+  private static final String[] TYPES = { "float64", "float32" };
+  private static final boolean[] DEFLATE = { false, true };
+
+  /** Wide enough that a 1 MB data block holds 26 rows of float64 or 52 rows of float32. */
+  private static final int WIDE_COLUMNS = 5000;
+
+  @Test
+  public void testSmallMatrix() throws IOException {
+    final DoubleMatrix matrix = randomMatrix(7, 3, 1);
+    for (final String type : TYPES) {
+      for (final boolean deflate : DEFLATE) {
+        final DoubleMatrixBinaryIO io = new DoubleMatrixBinaryIO(type, deflate);
+        final String path = tempPath();
+        io.writeMatrix(matrix, path);
+        final String name = type + (deflate ? " deflate" : "");
+        assertRows(name, matrix, type, io.readMatrix(path), 0, Integer.MAX_VALUE);
+        assertRange(name, io, path, matrix, type, 0, 7);
+        assertRange(name, io, path, matrix, type, 2, 5);
+        assertRange(name, io, path, matrix, type, 6, 100);
+        assertRange(name, io, path, matrix, type, 3, 3);
+        assertRange(name, io, path, matrix, type, 5, 2);
+        assertRange(name, io, path, matrix, type, 7, 10);
+        assertRange(name, io, path, matrix, type, 20, 30);
+      }
+    }
+  }
+
+  @Test
+  public void testRangesAcrossBlocks() throws IOException {
+    final int rows = 120;
+    final DoubleMatrix matrix = randomMatrix(rows, WIDE_COLUMNS, 2);
+    for (final String type : TYPES) {
+      for (final boolean deflate : DEFLATE) {
+        final DoubleMatrixBinaryIO io = new DoubleMatrixBinaryIO(type, deflate);
+        final String path = tempPath();
+        io.writeMatrix(matrix, path);
+        final String name = type + (deflate ? " deflate" : "");
+        assertRows(name, matrix, type, io.readMatrix(path), 0, Integer.MAX_VALUE);
+        // Boundaries of the float64 blocks are at rows 26, 52, 78, 104; float32 at 52, 104.
+        final int[][] ranges = {
+            { 0, rows }, { 0, 26 }, { 25, 27 }, { 26, 52 }, { 51, 53 }, { 20, 110 },
+            { 104, rows }, { 103, Integer.MAX_VALUE }, { rows - 1, rows },
+            { 0, 0 }, { 52, 52 }, { rows, rows + 5 }, { 60, 20 }, { 53, 52 }
+        };
+        for (final int[] range : ranges) {
+          assertRange(name, io, path, matrix, type, range[0], range[1]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testEmptyMatrix() throws IOException {
+    for (final DoubleMatrix matrix : new DoubleMatrix[] {
+        new DoubleMatrix(0, 4), new DoubleMatrix(3, 0), new DoubleMatrix(0, 0) }) {
+      for (final String type : TYPES) {
+        for (final boolean deflate : DEFLATE) {
+          final DoubleMatrixBinaryIO io = new DoubleMatrixBinaryIO(type, deflate);
+          final String path = tempPath();
+          io.writeMatrix(matrix, path);
+          final String name = type + (deflate ? " deflate " : " ") + matrix.rows + "x" + matrix.columns;
+          assertRows(name, matrix, type, io.readMatrix(path), 0, Integer.MAX_VALUE);
+          assertRange(name, io, path, matrix, type, 0, 0);
+          assertRange(name, io, path, matrix, type, 1, 2);
+        }
+      }
+    }
+  }
+
+  private static void assertRange(final String name, final DoubleMatrixBinaryIO io, final String path,
+                                  final DoubleMatrix expected, final String type,
+                                  final int fromRow, final int toRow) {
+    assertRows(name + " rows " + fromRow + "-" + toRow,
+        expected, type, io.readMatrix(path, fromRow, toRow), fromRow, toRow);
+  }
+
+  /**
+   * Check that actual holds rows [fromRow, min(toRow, rows)) of expected, or no rows
+   * if that range is empty. float32 elements must equal the expected values rounded to float.
+   */
+  private static void assertRows(final String name, final DoubleMatrix expected, final String type,
+                                 final DoubleMatrix actual, final int fromRow, final int toRow) {
+    final int numRows = Math.max(0, Math.min(toRow, expected.rows) - fromRow);
+    assertEquals(name + " rows", numRows, actual.rows);
+    assertEquals(name + " columns", expected.columns, actual.columns);
+    for (int i = 0; i < numRows; ++i) {
+      for (int j = 0; j < expected.columns; ++j) {
+        final double value = expected.get(fromRow + i, j);
+        assertEquals(name + " (" + i + ", " + j + ")",
+            Double.doubleToLongBits("float32".equals(type) ? (float) value : value),
+            Double.doubleToLongBits(actual.get(i, j)));
+      }
+    }
+  }
+
+  private static DoubleMatrix randomMatrix(final int rows, final int columns, final long seed) {
+    final Random rand = new Random(seed);
+    final DoubleMatrix matrix = new DoubleMatrix(rows, columns);
+    for (int i = 0; i < matrix.length; ++i) {
+      matrix.data[i] = rand.nextGaussian();
+    }
+    if (matrix.length > 3) {
+      matrix.data[0] = -0.0;
+      matrix.data[1] = Double.NaN;
+      matrix.data[2] = Double.NEGATIVE_INFINITY;
+      matrix.data[3] = 1e300;
+    }
+    return matrix;
+  }
+
+  private static String tempPath() throws IOException {
+    final File file = File.createTempFile("matrix", ".bin");
+    file.deleteOnExit();
+    if (!file.delete()) {
+      throw new IOException("Cannot delete " + file);
+    }
+    return file.getAbsolutePath();
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.util;
+
+import org.jblas.DoubleMatrix;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Round-trip tests of the text matrix format on the local file system.
+ */
+public final class DoubleMatrixTextIOTest {
+
+  @Test
+  public void testWriteRead() throws IOException {
+
+    final DoubleMatrixTextIO io = new DoubleMatrixTextIO();
+    final DoubleMatrix matrix = new DoubleMatrix(new double[][] { { 1, 2, 3 }, { 4, 5, 6 } });
+    final String path = tempPath();
+
+    io.writeMatrix(matrix, path);
+    assertMatrixEquals(matrix, io.readMatrix(path));
+    assertMatrixEquals(matrix.getRange(1, 2, 0, 3), io.readMatrix(path, 1, 2));
+  }
+
+  @Test
+  public void testWriteReadRandom() throws IOException {
+
+    final DoubleMatrixTextIO io = new DoubleMatrixTextIO();
+    final Random rand = new Random(10);
+    final DoubleMatrix matrix = new DoubleMatrix(37, 5);
+    for (int i = 0; i < matrix.length; ++i) {
+      // Values of very different magnitudes must survive the text format bit for bit.
+      matrix.data[i] = rand.nextGaussian() * Math.pow(10, rand.nextInt(40) - 20);
+    }
+    matrix.data[0] = -0.0;
+    matrix.data[1] = Double.MIN_VALUE;
+    matrix.data[2] = Double.MAX_VALUE;
+
+    final String path = tempPath();
+    io.writeMatrix(matrix, path);
+
+    assertMatrixEquals(matrix, io.readMatrix(path));
+    assertMatrixEquals(matrix.getRange(10, 20, 0, 5), io.readMatrix(path, 10, 20));
+    assertEquals(0, io.readMatrix(path, 37, 40).length);
+  }
+
+  @Test
+  public void testExtraColumnsIgnored() throws IOException {
+
+    final String path = tempPath();
+    try (final OutputStream out = new FileOutputStream(path)) {
+      out.write(("0\t0.5\t1,2,3\textra\t7\n"
+          + "1\t\t4,5,6\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    final DoubleMatrix matrix = new DoubleMatrixTextIO().readMatrix(path);
+    assertMatrixEquals(new DoubleMatrix(new double[][] { { 1, 2, 3 }, { 4, 5, 6 } }), matrix);
+  }
+
+  private static void assertMatrixEquals(final DoubleMatrix expected, final DoubleMatrix actual) {
+    assertEquals(expected.rows, actual.rows);
+    assertEquals(expected.columns, actual.columns);
+    for (int i = 0; i < expected.length; ++i) {
+      assertEquals(Double.doubleToLongBits(expected.data[i]), Double.doubleToLongBits(actual.data[i]));
+    }
+  }
+
+  private static String tempPath() throws IOException {
+    final File file = File.createTempFile("matrix", ".txt");
+    file.deleteOnExit();
+    if (!file.delete()) {
+      throw new IOException("Cannot delete " + file);
+    }
+    return file.getAbsolutePath();
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.util;
+
+import org.jblas.DoubleMatrix;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the packed layout of SymmetricTensor.
+ */
+public final class SymmetricTensorTest {
+
+  private static final double TOLERANCE = 1e-12;
+
+  @Test
+  public void testIndexRoundTrip() {
+    for (final int dimK : new int[] { 1, 2, 3, 7, 20 }) {
+      final SymmetricTensor t = new SymmetricTensor(dimK);
+      int expected = 0;
+      for (int i = 0; i < dimK; ++i) {
+        for (int j = i; j < dimK; ++j) {
+          for (int l = j; l < dimK; ++l) {
+            // Unique entries are packed in the lexicographic order of (i, j, l), i <= j <= l.
+            assertEquals("index(" + i + ", " + j + ", " + l + ")", expected, t.index(i, j, l));
+            assertEquals(expected, t.index(i, l, j));
+            assertEquals(expected, t.index(j, i, l));
+            assertEquals(expected, t.index(j, l, i));
+            assertEquals(expected, t.index(l, i, j));
+            assertEquals(expected, t.index(l, j, i));
+            ++expected;
+          }
+        }
+      }
+      assertEquals("size(" + dimK + ")", expected, SymmetricTensor.size(dimK));
+    }
+  }
+
+  @Test
+  public void testUnpackRowsSymmetry() {
+
+    final int dimK = 6;
+    final Random rand = new Random(dimK);
+    final SymmetricTensor t = new SymmetricTensor(dimK);
+    final double[] w = new double[dimK];
+
+    for (int n = 0; n < 5; ++n) {
+      for (int i = 0; i < dimK; ++i) {
+        w[i] = rand.nextGaussian();
+      }
+      t.addOuter(rand.nextDouble(), w);
+    }
+
+    final DoubleMatrix slices = t.unpackRows(0, dimK);
+    assertEquals(dimK, slices.rows);
+    assertEquals(dimK * dimK, slices.columns);
+
+    for (int i = 0; i < dimK; ++i) {
+      for (int j = 0; j < dimK; ++j) {
+        for (int l = 0; l < dimK; ++l) {
+          final double value = slices.get(i, j * dimK + l);
+          assertEquals(t.get(i, j, l), value, 0);
+          assertEquals(value, slices.get(i, l * dimK + j), 0);
+          assertEquals(value, slices.get(j, i * dimK + l), 0);
+          assertEquals(value, slices.get(j, l * dimK + i), 0);
+          assertEquals(value, slices.get(l, i * dimK + j), 0);
+          assertEquals(value, slices.get(l, j * dimK + i), 0);
+        }
+      }
+    }
+
+    // A range of slices is the same as the corresponding rows of all slices.
+    final DoubleMatrix middle = t.unpackRows(2, 5);
+    for (int i = 2; i < 5; ++i) {
+      for (int c = 0; c < dimK * dimK; ++c) {
+        assertEquals(slices.get(i, c), middle.get(i - 2, c), 0);
+      }
+    }
+  }
+
+  @Test
+  public void testAddOuter() {
+
+    final int dimK = 4;
+    final double[] w = { 1.5, -2, 0.25, 3 };
+    final SymmetricTensor t = new SymmetricTensor(dimK);
+    t.addOuter(2, w);
+
+    for (int i = 0; i < dimK; ++i) {
+      for (int j = 0; j < dimK; ++j) {
+        for (int l = 0; l < dimK; ++l) {
+          assertEquals(2 * w[i] * w[j] * w[l], t.get(i, j, l), TOLERANCE);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2014-2015 Microsoft
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.microsoft.canberra.tf.util;
+
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of TextScanner against the JDK parsers.
+ */
+public final class TextScannerTest {
+
+  private static final String[] DOUBLES = {
+      "0", "-0", "+0", "0.0", "-0.0", "0e10", "-0e-10", "00012", "0.000",
+      "1", "-1", "+3", ".5", "-.5", "5.", "-5.", "1.5e3", "1.5E-3", "1e+3", "2.e2", ".5e1",
+      "0.1", "0.2", "0.3", "3.14159", "1e22", "1e23", "-1e22", "1e-22", "1e-23", "9e22", "9e-22",
+      "123456789012345", "1234567890123456", "12345678901234567", "12345678901234567890",
+      "9007199254740991", "9007199254740992", "9007199254740993",
+      "0.123456789012345", "0.1234567890123456", "1.234567890123456e-5",
+      "900719925474099.1", "4.35679e-300",
+      "1e308", "1.7976931348623157e308", "1e309", "-1e309", "1e-400",
+      "4.9e-324", "2.2250738585072014E-308", "2.2250738585072011e-308", "1e-310", "2.5e-320",
+      "NaN", "-Infinity", "Infinity", "0x1p3", "1d", "2f",
+      "0.000000000000000000000000000001", "100000000000000000000000",
+      "1e0000000000000000000000000000000000000000000000000000000000001"
+  };
+
+  @Test
+  public void testNextDoubleEdgeCases() {
+    for (final String token : DOUBLES) {
+      assertParsesLikeJdk(token);
+    }
+  }
+
+  @Test
+  public void testNextDoubleFuzz() {
+    final Random rand = new Random(2);
+    for (int n = 0; n < 200000; ++n) {
+      final double value;
+      switch (n % 4) {
+      case 0:
+        value = Double.longBitsToDouble(rand.nextLong());
+        break;
+      case 1:
+        value = rand.nextGaussian() * Math.pow(10, rand.nextInt(60) - 30);
+        break;
+      case 2:
+        value = Float.intBitsToFloat(rand.nextInt());
+        break;
+      default:
+        value = (rand.nextInt(2000000) - 1000000) / Math.pow(10, rand.nextInt(12));
+        break;
+      }
+      assertParsesLikeJdk(Double.toString(value));
+      assertParsesLikeJdk(String.format(Locale.ROOT, "%." + rand.nextInt(18) + "f", value));
+      assertParsesLikeJdk(String.format(Locale.ROOT, "%." + rand.nextInt(18) + "e", value));
+      assertParsesLikeJdk(randomDecimal(rand));
+    }
+  }
+
+  @Test
+  public void testNextDoubleMalformed() {
+    for (final String token : new String[] { "-", "+", ".", "-.", "1e", "1e+", "e5", "1.2.3", "1x", "--1" }) {
+      try {
+        new TextScanner().reset(new Text(token)).nextDouble();
+        fail("Parsed malformed number: " + token);
+      } catch (final NumberFormatException ex) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testNextLong() {
+    for (final long value : new long[] {
+        0, 1, -1, 9, 10, Integer.MAX_VALUE, Integer.MIN_VALUE,
+        Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE - 1, Long.MIN_VALUE + 1 }) {
+      assertEquals(value, new TextScanner().reset(new Text(Long.toString(value))).nextLong());
+    }
+    assertEquals(7, new TextScanner().reset(new Text("+7")).nextLong());
+    assertEquals(12, new TextScanner().reset(new Text("  0012 ")).nextLong());
+
+    for (final String token : new String[] {
+        "9223372036854775808", "-9223372036854775809", "99999999999999999999", "", "-", "+", "x" }) {
+      assertThrows(token, false);
+    }
+  }
+
+  @Test
+  public void testNextInt() {
+    for (final int value : new int[] { 0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE }) {
+      assertEquals(value, new TextScanner().reset(new Text(Integer.toString(value))).nextInt());
+    }
+    for (final String token : new String[] {
+        "2147483648", "-2147483649", "9223372036854775807", "9223372036854775808", "" }) {
+      assertThrows(token, true);
+    }
+  }
+
+  @Test
+  public void testTokens() {
+
+    final TextScanner scanner = new TextScanner().reset(new Text(" 12\t3:1.5  \r\n-4:2e1 "));
+    assertEquals(3, scanner.countTokens());
+    assertEquals(12, scanner.nextInt());
+    assertEquals(2, scanner.countTokens());
+    assertEquals(3, scanner.nextInt());
+    scanner.skip(':');
+    assertEquals(1.5, scanner.nextDouble(), 0);
+    assertEquals(-4, scanner.nextLong());
+    scanner.skip(':');
+    assertEquals(20, scanner.nextDouble(), 0);
+    assertEquals(0, scanner.countTokens());
+    assertFalse(scanner.hasNext());
+
+    assertEquals(0, new TextScanner().reset(new Text("")).countTokens());
+    assertEquals(0, new TextScanner().reset(new Text(" \t ")).countTokens());
+    assertEquals(1, new TextScanner().reset(new Text("x")).countTokens());
+  }
+
+  @Test
+  public void testSeparator() {
+
+    final TextScanner scanner = new TextScanner().setSeparator(',');
+
+    scanner.reset(new Text("1.5,-2,,3e2, 4 ,5"));
+    assertEquals(5, scanner.countTokens());
+    final double[] expected = { 1.5, -2, 300, 4, 5 };
+    for (final double value : expected) {
+      assertTrue(scanner.hasNext());
+      assertEquals(value, scanner.nextDouble(), 0);
+    }
+    assertFalse(scanner.hasNext());
+
+    scanner.reset(new Text("7,8"));
+    assertEquals(7, scanner.nextInt());
+    assertEquals(8, scanner.nextInt());
+
+    // Only the range given to reset() is scanned.
+    final byte[] bytes = new Text("0\t\t1,2\t3").getBytes();
+    scanner.reset(bytes, 3, 6);
+    assertEquals(2, scanner.countTokens());
+    assertEquals(1, scanner.nextDouble(), 0);
+    assertEquals(2, scanner.nextDouble(), 0);
+    assertFalse(scanner.hasNext());
+
+    // Without a separator, a comma is a part of the token.
+    try {
+      new TextScanner().reset(new Text("1,2")).nextDouble();
+      fail("Parsed 1,2 without a separator");
+    } catch (final NumberFormatException ex) {
+      // expected
+    }
+  }
+
+  private static void assertParsesLikeJdk(final String token) {
+    final TextScanner scanner = new TextScanner();
+    final double expected = Double.parseDouble(token);
+    for (final String text : new String[] { token, " " + token + "\t", "\t" + token + "\n9" }) {
+      assertEquals(token, Double.doubleToRawLongBits(expected),
+          Double.doubleToRawLongBits(scanner.reset(new Text(text)).nextDouble()));
+    }
+  }
+
+  private static void assertThrows(final String token, final boolean isInt) {
+    try {
+      final TextScanner scanner = new TextScanner().reset(new Text(token));
+      final long value = isInt ? scanner.nextInt() : scanner.nextLong();
+      fail("Parsed " + token + " as " + value);
+    } catch (final NumberFormatException ex) {
+      // expected
+    }
+  }
+
+  /** @return random decimal with up to 20 digits, a decimal point and an exponent. */
+  private static String randomDecimal(final Random rand) {
+    final StringBuilder s = new StringBuilder();
+    if (rand.nextBoolean()) {
+      s.append('-');
+    }
+    final int digits = 1 + rand.nextInt(20);
+    final int dot = rand.nextInt(digits + 1);
+    for (int i = 0; i < digits; ++i) {
+      if (i == dot) {
+        s.append('.');
+      }
+      s.append((char) ('0' + rand.nextInt(10)));
+    }
+    if (rand.nextBoolean()) {
+      s.append('e').append(rand.nextInt(60) - 30);
+    }
+    return s.toString();
+  }
+}